@@ -3,9 +3,17 @@ package com.atlach.TrafficDataAggregator;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.atlach.TrafficDataAggregator.DataObjects.*;
+import com.atlach.TrafficDataAggregator.LineDataCodec.LineDataBuffer;
 
 /* 	Copyright (C) 2013	Francis T., Zara P.
  * 
@@ -39,14 +47,19 @@ public class DataFileManager {
 	public static final int STATUS_OK = 0;
 	public static final int STATUS_FAILED = -1;
 
-	private List<String> datesCoveredList = null;
-	private boolean hasTriggeredDebugFlag = false;
+	/* Number of parsing threads, can be overridden with -Dmmda.ingest.threads=N */
+	public static final String INGEST_THREADS_PROPERTY = "mmda.ingest.threads";
+
+	private DateIntervalSet datesCovered = null;
 	private String tagsetFileName = "tags.txt";
 	private FileSystemInterface fsi;
+	private int parallelism = 1;
 
 	public DataFileManager() {
 		fsi = new FileSystemInterface();
-		datesCoveredList = new ArrayList<String>();
+		datesCovered = new DateIntervalSet();
+		setParallelism(Integer.getInteger(INGEST_THREADS_PROPERTY, Runtime
+				.getRuntime().availableProcessors()));
 	}
 
 	/*****************************************************************************************/
@@ -56,8 +69,12 @@ public class DataFileManager {
 	 * Parses all Traffic Data Files in a given folder and creates a list of
 	 * HistData objects.
 	 * 
-	 * </br><b>TODO</b>: This large method should be broken up into individual parts in the
-	 * future
+	 * </br></br>Files are grouped by date and each date is parsed on its own
+	 * thread (see setParallelism()). Files within a date are always merged in
+	 * time order and the dates are added to the list in date order, so the
+	 * result does not depend on the number of threads. </br></br>The
+	 * directory may use either the flat or the sharded layout (see
+	 * TrafficRecordStore).
 	 * 
 	 * @param directoryStr
 	 *            - Pathname of the target directory
@@ -82,52 +99,49 @@ public class DataFileManager {
 			return STATUS_FAILED;
 		}
 
-		File[] fList = directory.listFiles(new FileDateFilter(datesFilter));
-		ArrayList<File> fileNames = new ArrayList<File>();
 		/*
-		 * Create a list of filenames ending with "TrafficRec.txt" References:
-		 * http://java.dzone.com/articles/java-example-list-all-files OR
-		 * http://docs.oracle.com/javase/tutorial/essential/io/dirs.html#listdir
+		 * Group the traffic data files by date. Each date only ever touches
+		 * its own HistData object, so the dates can be parsed independently
+		 * of each other. Within a date, the files are kept in time order since
+		 * merging line data strings depends on the order of the merges.
 		 */
-		for (int i = 0; i < fList.length; i++) {
-			if (fList[i].getName().contains("TrafficRec.txt")) {
-
-				if (fileNames.size() == 0) {
-					fileNames.add(fList[i]);
-					continue;
-				}
-
-				String fileNameSplit[] = fList[i].getName().split("_");
-				int insIdx = 0;
-				int dateVal = Integer.parseInt(fileNameSplit[0]);
-
-				String compFileSplit[] = fileNames.get(0).getName().split("_");
-
-				int compVal = Integer.parseInt(compFileSplit[0]);
-
-				int j = 0;
-
-				while (dateVal > compVal) {
-					insIdx = j;
-
-					if (j >= fileNames.size()) {
-						insIdx = -1;
-						break;
-					}
+		List<File> fList = null;
+		try {
+			fList = TrafficRecordStore.listTrafficRecords(directory,
+					new FileDateFilter(datesFilter));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return STATUS_FAILED;
+		}
 
-					compFileSplit = fileNames.get(j++).getName().split("_");
-					compVal = Integer.parseInt(compFileSplit[0]);
-				}
+		/*
+		 * The date and time are read off each file name only once, here. e.g.
+		 * "20130901_0130_TrafficRec.txt" ---> 15949 (days), 90 (minutes)
+		 */
+		TreeMap<Integer, List<RecordFile>> dateFilesMap = new TreeMap<Integer, List<RecordFile>>();
+		for (int i = 0; i < fList.size(); i++) {
+			String fileName = fList.get(i).getName();
+			int firstSep = fileName.indexOf('_');
+			int secondSep = fileName.indexOf('_', firstSep + 1);
+
+			int epochDay = Integer.MIN_VALUE;
+			if (firstSep == 8) {
+				epochDay = DateIntervalSet.toEpochDay(fileName, 0);
+			}
+			int minuteOfDay = LineInfo.toMinuteOfDay(fileName, firstSep + 1,
+					secondSep);
+			if ((epochDay == Integer.MIN_VALUE)
+					|| (minuteOfDay == LineInfo.INVALID_TIME)) {
+				System.out.println("Warning: Invalid file name: " + fileName);
+				continue;
+			}
 
-				if (insIdx >= 0) {
-					fileNames.add(insIdx, fList[i]);
-				} else {
-					fileNames.add(fList[i]);
-				}
-			} else {
-				System.out.println("NOT added to file list: "
-						+ fList[i].getName());
+			List<RecordFile> dateFiles = dateFilesMap.get(epochDay);
+			if (dateFiles == null) {
+				dateFiles = new ArrayList<RecordFile>();
+				dateFilesMap.put(epochDay, dateFiles);
 			}
+			dateFiles.add(new RecordFile(fList.get(i), minuteOfDay));
 		}
 
 		/* Load the tagset file to be used */
@@ -139,210 +153,100 @@ public class DataFileManager {
 			return STATUS_FAILED;
 		}
 
-		HistData hd = null;
-		LineDataList tempDataList = null;
-
-		/* Run parseFileContents(...) for each listed filename */
-		for (int i = 0; i < fileNames.size(); i++) {
-			/* Initialize our holder variables */
-			tempDataList = null;
-			hd = null;
-
-			/*
-			 * Initialize the flag for indicating whether we are using a new
-			 * HistData object (which should be added to the masterList at the
-			 * end of the loop) or reusing an old one (no more need to add it
-			 * again to the masterList).
-			 * 
-			 * HISTORY: Without this, the original files being created were
-			 * insanely large (on the order of ~1.6MB/660KB) in comparison to
-			 * when we have this boolean flag (~54.9KB/18.1KB).
-			 * 
-			 * Basically, there were lots of duplicate data.
-			 */
-			boolean usesNewHistDataObject = false;
-
-			/*
-			 * Extract date associated with this file name. e.g.
-			 * "20130901_0000_TrafficRec.txt" ---> "20130901"
-			 */
-			String deconStr[] = fileNames.get(i).getName().split("_");
-			String dateStr = deconStr[0];
-			String timeStr = deconStr[1];
-			if (timeStr.length() < 4) {
-				timeStr += "0";
-			}
-
-			/*
-			 * Check if we already have a HistData object that can hold this new
-			 * data
-			 */
-			for (int k = 0; k < histDataList.size(); k++) {
-				if (histDataList.get(k).date.equals(dateStr)) {
-					hd = histDataList.get(k);
-					break;
-				}
-			}
-
-			/* If we don't have a HistData object yet, just create a new one */
-			if (hd == null) {
-				hd = new HistData(dateStr);
-				usesNewHistDataObject = true;
-			}
-
-			/* Load traffic data file information into a temporary list */
-			tempDataList = fsi.loadTrafficDataFile(fileNames.get(i));
-
-			/* Catch the case where the tempDataList is empty */
-			if (tempDataList == null) {
-				/* Skip this file then */
-				continue;
+		/*
+		 * Setup one DateParseResult for each date, reusing any HistData
+		 * object we already have for that date
+		 */
+		Map<Integer, HistData> histDataMap = new HashMap<Integer, HistData>();
+		for (int i = 0; i < histDataList.size(); i++) {
+			if (histDataMap.containsKey(histDataList.get(i).epochDay) == false) {
+				histDataMap.put(histDataList.get(i).epochDay,
+						histDataList.get(i));
 			}
+		}
 
-			/*
-			 * Create the Line Data String we are going to store in the HistData
-			 * object
-			 */
-			/*
-			 * What we're doing here basically is taking the traffic values
-			 * stored in each LineData object stored in tempDataList and mapping
-			 * them to their appropriate ASCII64/Base64 values.
-			 * 
-			 * NOTE: Since we're using each traffic data value byte to store the
-			 * last four traffic conditions associated with each line, there
-			 * doesn't seem to be any significant memory/space savings as a
-			 * result. That said, we might be better off storing this as a full
-			 * binary file instead of converting it to text first.
-			 * 
-			 * NOTE: The ASCII64/Base64 encoding system used here is currently
-			 * incorrect
-			 */
-			String lineDataStr = createLineDataString(tempDataList);
-
-			/*
-			 * Check if we already have LineInfo entry in the HistData object
-			 * which has the same hour as the data we are going to be parsing in
-			 */
-			/* Derive the hour and minute substrings */
-			int hour = Integer.parseInt(timeStr.substring(0, 2));
-			int mins = Integer.parseInt(timeStr.substring(2, 4));
-			String augTimeStr = "";
-			String hourStr = "";
-			LineInfo lineInfo = null;
-			int k = -1;
+		DateParseResult results[] = new DateParseResult[dateFilesMap.size()];
+		int resultIdx = 0;
+		for (Map.Entry<Integer, List<RecordFile>> entry : dateFilesMap
+				.entrySet()) {
+			List<RecordFile> dateFiles = entry.getValue();
+			Collections.sort(dateFiles, new FileTimeComparator());
 
 			/*
-			 * Setup the final time string depending on the hour and minute
-			 * values we currently have
+			 * A file can show up in both the flat and the sharded layout if a
+			 * migration was interrupted. Only merge it in once.
 			 */
-			if (mins >= 30) {
-				hourStr = ((hour + 1 < 10) ? "0" : "")
-						+ Integer.toString(hour + 1);
-			} else {
-				hourStr = ((hour < 10) ? "0" : "") + Integer.toString(hour);
-			}
-			augTimeStr = hourStr + "00";
-
-			for (k = 0; k < hd.dataList.size(); k++) {
-				int compHour = Integer.parseInt(hd.dataList.get(k).timestamp
-						.substring(0, 2));
-				/*
-				 * In case of the latter half of an hour, this will be factored
-				 * in to the next hour instead of this one (unless we are at
-				 * hour 23)
-				 */
-				if ((hour < 23) && (mins >= 30)) {
-					if ((hour + 1) == compHour) {
-						lineInfo = hd.dataList.get(k);
-
-						augTimeStr = (((compHour < 10) ? "0" : "")
-								+ Integer.toString(compHour) + "00");
-						break;
-					}
-				} else {
-					if (hour == compHour) {
-						lineInfo = hd.dataList.get(k);
-						break;
-					}
+			for (int i = dateFiles.size() - 1; i > 0; i--) {
+				if (dateFiles.get(i).file.getName()
+						.equals(dateFiles.get(i - 1).file.getName())) {
+					System.out.println("Skipped duplicate file: "
+							+ dateFiles.get(i).file);
+					dateFiles.remove(i);
 				}
 			}
 
-			String finalStr = null;
-			if (lineInfo != null) {
-				/*
-				 * If we already have a particular LineInfo object to write to,
-				 * (possibly due to the previous step) then attempt to merge the
-				 * line data strings
-				 */
-				String oldStr = decompressString(lineInfo.lineDataStr);
-				String mergedStr = mergeLineDataStrings(oldStr, lineDataStr);
+			results[resultIdx++] = new DateParseResult(entry.getKey(),
+					dateFiles, histDataMap.get(entry.getKey()));
+		}
 
-				if (mergedStr.equals("") == false) {
-					finalStr = compressString(mergedStr);
-				} else {
-					/* Fall back to the original plan if merging fails */
-					System.out
-							.println("Warning: Failed to merge to an existing line data string!");
-					if (!hasTriggeredDebugFlag) {
-						System.out.println("   NEW: " + lineDataStr);
-						System.out.println("   OLD: " + oldStr);
-						System.out.println("MERGED: " + mergedStr);
-					}
-					finalStr = compressString(oldStr);
-				}
+		/* Parse the dates in parallel */
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new ParseDatesTask(results, 0, results.length));
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			return STATUS_FAILED;
+		} finally {
+			pool.shutdown();
+		}
 
-				lineInfo.lineDataStr = finalStr;
+		/*
+		 * Combine the results in date order so that the HistData list and the
+		 * dates covered list come out the same no matter how the dates were
+		 * scheduled
+		 */
+		for (int i = 0; i < results.length; i++) {
+			DateParseResult result = results[i];
+			if (result.hasInsertedData == false) {
 				continue;
-			} else {
-				/* Compress the string and create a new LineInfo object for it */
-				finalStr = compressString(lineDataStr);
-
-				lineInfo = new LineInfo(augTimeStr, finalStr);
 			}
 
 			/* Lookup tag information from the tagInfoList */
 			/* Skip the tag addition step if we dont have valid tag information */
 			if (tagInfoList != null) {
 				for (int j = 0; j < tagInfoList.size(); j++) {
-					String compDate = tagInfoList.get(j).date;
-
-					if (hd.date.equals(compDate)) {
-						hd.tagset = tagInfoList.get(j).tagset;
+					if (result.hd.epochDay == tagInfoList.get(j).epochDay) {
+						result.hd.tagset = tagInfoList.get(j).tagset;
 						break;
 					}
 				}
 			}
 
-			/*
-			 * Attempt to add this date to the running datesCoveredList if it
-			 * isnt there yet
-			 */
-			boolean existsInDateList = false;
-			for (int j = 0; j < datesCoveredList.size(); j++) {
-				if (dateStr.equals(datesCoveredList.get(j)) == true) {
-					existsInDateList = true;
-					break;
-				}
-			}
-			if (existsInDateList == false) {
-				addToDatesCoveredList(dateStr);
-			}
-
-			/* Some kind of mechanism to insert this properly to the data list */
-			insertToDataList(lineInfo, hd.dataList);
+			/* Add this date to the running set of covered dates */
+			datesCovered.add(result.epochDay);
+			System.out.println("Added to date list: "
+					+ result.hd.getDateString());
 
 			/* Finally, add the HistData object to the masterList */
-			if (usesNewHistDataObject) {
-				histDataList.add(hd);
+			if (result.usesNewHistDataObject) {
+				histDataList.add(result.hd);
 			}
-
-			if (hasTriggeredDebugFlag) // DEBUG
-				break; // DEBUG
 		}
 
 		return STATUS_OK;
 	}
 
+	/**
+	 * Sets the number of threads used for parsing traffic data files and
+	 * normalizing HistData lists.
+	 * 
+	 * @param parallelism
+	 *            - the number of threads to use (at least 1)
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+	}
+
 	/**
 	 * Normalizes the line data strings for all elements in the given HistData
 	 * list.
@@ -352,13 +256,23 @@ public class DataFileManager {
 	 * @return an integer indicating the exit status for this method
 	 */
 	public int normalizeHistDataList(List<HistData> hdList) {
+		/*
+		 * Every LineInfo object is normalized on its own, so just gather them
+		 * all up and split them across the pool
+		 */
+		List<LineInfo> lineInfoList = new ArrayList<LineInfo>();
 		for (int i = 0; i < hdList.size(); i++) {
-			HistData hd = hdList.get(i);
-			for (int j = 0; j < hd.dataList.size(); j++) {
-				LineInfo li = hd.dataList.get(j);
-				String tmpStr = decompressString(li.lineDataStr);
-				li.lineDataStr = compressString(normalizeLineDataString(tmpStr));
-			}
+			lineInfoList.addAll(hdList.get(i).getDataList());
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new NormalizeTask(lineInfoList, 0, lineInfoList.size()));
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			return STATUS_FAILED;
+		} finally {
+			pool.shutdown();
 		}
 		return STATUS_OK;
 	}
@@ -375,21 +289,22 @@ public class DataFileManager {
 	public int savePartialData(String partFileName, LineDataList dataList) {
 		int result = STATUS_OK;
 		/* Create the line data string from the dataList */
-		String initLineDataStr = createLineDataString(dataList);
+		LineDataBuffer initLineData = new LineDataBuffer();
+		LineDataCodec.encode(dataList, initLineData);
 
 		/** [DEBUG] 2013-10-06 **/
-		if (initLineDataStr.length() != 284) {
+		if (initLineData.length != LineDataCodec.LINE_DATA_LENGTH) {
 			System.out
 					.println("[savePartialData] Weird line data string length prior to "
-							+ "compression! (" + initLineDataStr.length() + ")");
+							+ "compression! (" + initLineData.length + ")");
 			System.out
 					.println("[savePartialData] Printing out dataList contents ("
-							+ dataList.data.size() + ")...");
+							+ dataList.size() + ")...");
 
-			for (int i = 0; i < dataList.data.size(); i++) {
+			for (int i = 0; i < dataList.size(); i++) {
 				try {
 					System.out.println("[" + i + "] "
-							+ dataList.data.get(i).toString());
+							+ dataList.get(i).toString());
 				} catch (Exception e) {
 					System.out.println(e.getMessage());
 				}
@@ -397,13 +312,16 @@ public class DataFileManager {
 		}
 		/** [DEBUG] 2013-10-06 **/
 
-		String lineDataStr = compressString(initLineDataStr);
+		LineDataBuffer compLineData = new LineDataBuffer();
+		LineDataCodec.compress(initLineData, compLineData);
+		String lineDataStr = compLineData.toString();
 		String timestamp = dataList.timestamp;
 
-		if (decompressString(lineDataStr).length() != 284) {
+		LineDataCodec.decompress(lineDataStr, compLineData);
+		if (compLineData.length != LineDataCodec.LINE_DATA_LENGTH) {
 			System.out
 					.println("[savePartialData] Weird line data string length caught on "
-							+ "decompress! (" + initLineDataStr.length() + ")");
+							+ "decompress! (" + initLineData.length + ")");
 		}
 
 		try {
@@ -431,49 +349,36 @@ public class DataFileManager {
 			return STATUS_FAILED;
 		}
 
-		for (int i = 0; i < oldHistData.dataList.size(); i++) {
-			String oldTimeStr = oldHistData.dataList.get(i).timestamp;
-			String oldLineDataStr = decompressString(oldHistData.dataList
-					.get(i).lineDataStr);
-
-			for (int j = 0; j < newHistData.dataList.size(); j++) {
-				String newTimeStr = newHistData.dataList.get(j).timestamp;
-				if (oldTimeStr.equals(newTimeStr)) {
-					String newLineDataStr = decompressString(newHistData.dataList
-							.get(j).lineDataStr);
-
-					String mergedStr = mergeLineDataStrings(oldLineDataStr,
-							newLineDataStr);
-
-					if (mergedStr.equals("")) {
-						System.out
-								.println("[mergeHistData] Warning: Returned merged string is "
-										+ "empty!");
-						mergedStr = oldLineDataStr;
-					}
-					oldHistData.dataList.get(i).lineDataStr = compressString(mergedStr);
-				}
+		LineDataBuffer oldLineData = new LineDataBuffer();
+		LineDataBuffer newLineData = new LineDataBuffer();
+		LineDataBuffer mergedLineData = new LineDataBuffer();
+		LineDataBuffer compLineData = new LineDataBuffer();
+
+		for (int hour = 0; hour < HistData.HOUR_SLOTS; hour++) {
+			LineInfo newLineInfo = newHistData.getLineInfo(hour);
+			if (newLineInfo == null) {
+				continue;
 			}
-		}
 
-		/*
-		 * Cycle through the list again and merge together whichever entries are
-		 * mergeable
-		 */
-		for (int i = 0; i < newHistData.dataList.size(); i++) {
-			boolean hasNoMergeables = true;
-			String newTimeStr = newHistData.dataList.get(i).timestamp;
-			for (int j = 0; j < oldHistData.dataList.size(); j++) {
-				String oldTimeStr = oldHistData.dataList.get(j).timestamp;
-				if (newTimeStr.equals(oldTimeStr)) {
-					hasNoMergeables = false;
-				}
+			/* Hours we have no old data for are simply added */
+			LineInfo oldLineInfo = oldHistData.getLineInfo(hour);
+			if (oldLineInfo == null) {
+				oldHistData.hourSlots[hour] = newLineInfo;
+				continue;
 			}
 
-			if (hasNoMergeables) {
-				insertToDataList(newHistData.dataList.get(i),
-						oldHistData.dataList);
+			LineDataCodec.decompress(oldLineInfo.lineDataStr, oldLineData);
+			LineDataCodec.decompress(newLineInfo.lineDataStr, newLineData);
+
+			if (LineDataCodec.merge(oldLineData, newLineData, mergedLineData)) {
+				LineDataCodec.compress(mergedLineData, compLineData);
+			} else {
+				System.out
+						.println("[mergeHistData] Warning: Returned merged string is "
+								+ "empty!");
+				LineDataCodec.compress(oldLineData, compLineData);
 			}
+			oldLineInfo.lineDataStr = compLineData.toString();
 		}
 
 		return STATUS_OK;
@@ -489,98 +394,62 @@ public class DataFileManager {
 	 * @return the dates covered string
 	 */
 	public String getDatesCoveredString() {
-		String datesStr = "";
-
-		if (datesCoveredList.size() == 0) {
-			return datesStr;
-		}
-
-		int prevMonth = Integer.parseInt(datesCoveredList.get(0)
-				.substring(4, 6));
-		int prevDay = Integer.parseInt(datesCoveredList.get(0).substring(6, 8));
-
-		datesStr += datesCoveredList.get(0);
-
-		for (int i = 1; i < datesCoveredList.size(); i++) {
-			int month = Integer.parseInt(datesCoveredList.get(i)
-					.substring(4, 6));
-			int day = Integer.parseInt(datesCoveredList.get(i).substring(6, 8));
-
-			/*
-			 * If value of this day does not immediately follow that of the day
-			 * before, and we're still in the same month, then we must have
-			 * skipped some days.
-			 */
-			if ((day != prevDay + 1) && (month == prevMonth)) {
-				datesStr += "-";
-				datesStr += datesCoveredList.get(i - 1);
-				datesStr += ",";
-
-				datesStr += datesCoveredList.get(i);
-			}
-
-			/* If were at the tail end of the list, do this */
-			if (i + 1 >= datesCoveredList.size()) {
-				if ((day == prevDay + 1) && (month == prevMonth)) {
-					datesStr += "-";
-					datesStr += datesCoveredList.get(i);
-				} else {
-					datesStr += ", ";
-					datesStr += datesCoveredList.get(i);
-				}
-			}
-
-			prevDay = day;
-			prevMonth = month;
-		}
+		return datesCovered.toString();
+	}
 
-		return datesStr.trim();
+	/**
+	 * Gets the set of dates covered by the last parseTrafficDataFiles()
+	 * operation.
+	 * 
+	 * @return the dates covered
+	 */
+	public DateIntervalSet getDatesCovered() {
+		return datesCovered;
 	}
 
 	/**
 	 * Reduces the amount of data obtained from the Traffic Data Part File by
-	 * merging together LineData entries for the same hour.
+	 * merging together LineData entries for the same hour. Entries are merged
+	 * in the order they appear in the list.
 	 * 
-	 * @param histData
-	 *            - HistData object containing the list of LineData obtained
-	 *            from the Traffic Data Part File
+	 * @param partDataList
+	 *            - the list of LineInfo objects obtained from the Traffic Data
+	 *            Part File
 	 * @return the reduced HistData object
 	 */
-	public HistData reducePartHistData(HistData histData) {
-		HistData redHistData = new HistData(histData.date);
-
-		for (int i = 0; i < histData.dataList.size(); i++) {
-			LineInfo outerLineInfo = histData.dataList.get(i);
-			String outerTimeStr = outerLineInfo.timestamp;
-
-			boolean wasMerged = false;
-			for (int j = 0; j < redHistData.dataList.size(); j++) {
-				LineInfo innerLineInfo = redHistData.dataList.get(j);
-				String innerTimeStr = innerLineInfo.timestamp;
-
-				/*
-				 * Means that we have encountered this LineInfo object before.
-				 * Therefore, merge.
-				 */
-				if (innerTimeStr.equals(outerTimeStr)) {
-					String oldStr = decompressString(innerLineInfo.lineDataStr);
-					String newStr = decompressString(outerLineInfo.lineDataStr);
-					String mergeStr = mergeLineDataStrings(oldStr, newStr);
-
-					if (mergeStr.equals("") == false) {
-						innerLineInfo.lineDataStr = compressString(mergeStr);
-					} else {
-						innerLineInfo.lineDataStr = compressString(oldStr);
-					}
-					wasMerged = true;
-					break;
-				}
+	public HistData reducePartHistData(List<LineInfo> partDataList) {
+		HistData redHistData = new HistData(HistData.UNKNOWN_DATE);
+		LineDataBuffer oldLineData = new LineDataBuffer();
+		LineDataBuffer newLineData = new LineDataBuffer();
+		LineDataBuffer compLineData = new LineDataBuffer();
+
+		for (int i = 0; i < partDataList.size(); i++) {
+			LineInfo newLineInfo = partDataList.get(i);
+			int hour = HistData.getHourSlot(newLineInfo.minuteOfDay);
+			if (hour < 0) {
+				System.out.println("[reducePartHistData] Invalid time: "
+						+ newLineInfo.minuteOfDay);
+				continue;
 			}
 
-			/* If this was not merged, then add it to the reduced data list. */
-			if (!wasMerged) {
-				insertToDataList(outerLineInfo, redHistData.dataList);
+			/* If this is the first entry for this hour, just add it */
+			LineInfo oldLineInfo = redHistData.getLineInfo(hour);
+			if (oldLineInfo == null) {
+				redHistData.hourSlots[hour] = newLineInfo;
+				continue;
 			}
+
+			/*
+			 * Means that we have encountered this hour before. Therefore,
+			 * merge.
+			 */
+			LineDataCodec.decompress(oldLineInfo.lineDataStr, oldLineData);
+			LineDataCodec.decompress(newLineInfo.lineDataStr, newLineData);
+
+			/* Merge in place, the old data is kept if this fails */
+			LineDataCodec.merge(oldLineData, newLineData, oldLineData);
+			LineDataCodec.compress(oldLineData, compLineData);
+			oldLineInfo.lineDataStr = compLineData.toString();
 		}
 
 		return redHistData;
@@ -589,28 +458,6 @@ public class DataFileManager {
 	/*****************************************************************************************/
 	/** PUBLIC STATIC METHODS **/
 	/*****************************************************************************************/
-	/**
-	 * Inserts a Line Info object into the running Line Info list. This method
-	 * basically ensures that the Line Info list elements are in chronological
-	 * order based on their LineInfo.timestamp values
-	 * 
-	 * @param lineInfo
-	 *            - LineInfo object to be added to the dataList
-	 * @param dataList
-	 *            - list which should contain the LineInfo object
-	 * @return an integer indicating the exit status for this method
-	 */
-	public static int insertToDataList(LineInfo lineInfo,
-			List<LineInfo> dataList) {
-		int insertId = getDataListInsertionIndex(lineInfo.timestamp, dataList);
-		if (insertId != -1) {
-			dataList.add(insertId, lineInfo);
-		} else {
-			dataList.add(lineInfo);
-		}
-		return STATUS_OK;
-	}
-
 	/**
 	 * Compresses a given string by removing adjacent repeating characters. The
 	 * resulting string may later be fed into the decompressString() utility to
@@ -621,67 +468,7 @@ public class DataFileManager {
 	 * @return the compressed String
 	 */
 	public static String compressString(String str) {
-		String newStr = "";
-		char next = 0;
-		boolean isCompressing = false;
-		boolean shouldSupressCompression = false;
-		byte sameCounter = 1;
-
-		for (int i = 0; i < str.length(); i++) {
-			char c = str.charAt(i);
-
-			if (i + 1 < str.length()) {
-				next = str.charAt(i + 1);
-
-				/* Determine if compressing this is worth it */
-				if ((i + 2 < str.length()) && (!isCompressing)) {
-					/*
-					 * If this repeating character is only two characters long,
-					 * don't bother trying to compress it since we're
-					 * effectively adding 50% more to its uncompressed size
-					 * instead.
-					 */
-					if (c != str.charAt(i + 2)) {
-						shouldSupressCompression = true;
-					} else {
-						shouldSupressCompression = false;
-					}
-				}
-			} else {
-				next = 0;
-			}
-
-			if ((c == next) && (!shouldSupressCompression)) {
-				if (!isCompressing) {
-					sameCounter++;
-					isCompressing = true;
-					newStr += ".";
-				} else {
-					if (sameCounter < Constants.base64chars.length() - 1) {
-						sameCounter++;
-					} else {
-						/* Have to prematurely break the compression */
-						isCompressing = false;
-						newStr += Constants.base64chars.charAt(sameCounter);
-						sameCounter = 1;
-						newStr += c;
-					}
-				}
-			} else {
-				if (isCompressing) {
-					isCompressing = false;
-					newStr += Constants.base64chars.charAt(sameCounter);
-					sameCounter = 1;
-				}
-				newStr += c;
-			}
-
-			/* Reset suppress compression value if it has been set */
-			if (shouldSupressCompression) {
-				shouldSupressCompression = false;
-			}
-		}
-		return newStr;
+		return LineDataCodec.compressString(str);
 	}
 
 	/**
@@ -693,37 +480,7 @@ public class DataFileManager {
 	 * @return the decompressed String
 	 */
 	public static String decompressString(String str) {
-		String newStr = "";
-
-		boolean shouldDecompress = false;
-		byte decompVal = 0;
-		for (int i = 0; i < str.length(); i++) {
-			char c = str.charAt(i);
-			if (c == '.') {
-				shouldDecompress = true;
-				continue;
-			}
-			if (shouldDecompress) {
-				if (decompVal == 0) {
-					decompVal = (byte) (Constants.base64chars.indexOf(c));
-				} else {
-					for (int j = 0; j < decompVal; j++) {
-						newStr += c;
-					}
-					shouldDecompress = false;
-					decompVal = 0;
-				}
-			} else {
-				newStr += c;
-			}
-		}
-
-		if (newStr.length() != 284) {
-			System.out
-					.println("[decompressString] Warning: Invalid decompressed string "
-							+ "length: " + newStr.length());
-		}
-		return newStr;
+		return LineDataCodec.decompressString(str);
 	}
 
 	/**
@@ -735,334 +492,300 @@ public class DataFileManager {
 	 * @return a String containing Line Data information
 	 */
 	public static String createLineDataString(LineDataList dataList) {
-		String lineDataStr = "";
-		for (int j = 0; j < dataList.data.size(); j++) {
-			byte b[] = new byte[2];
-
-			b[0] = (byte) ((dataList.data.get(j).trafficSB) % 7);
-			b[1] = (byte) ((dataList.data.get(j).trafficNB) % 7);
-
-			lineDataStr += Constants.base64chars.charAt(b[0]);
-			lineDataStr += Constants.base64chars.charAt(b[1]);
-
-			// System.out.println("Generated String: " + lineDataStr );
-		}
-
-		if (lineDataStr.length() != 284) {
-			System.out
-					.println("[createLineDataString] Warning: Possibly invalid line "
-							+ "data string w/ length: "
-							+ lineDataStr.length()
-							+ " !");
-			System.out
-					.println("[createLineDataString] 			> Data List Elements: "
-							+ dataList.data.size());
-		}
-		return lineDataStr;
+		return LineDataCodec.createLineDataString(dataList);
 	}
 
 	/*****************************************************************************************/
 	/** PRIVATE METHODS **/
 	/*****************************************************************************************/
 	/**
-	 * Merges two Line Data strings together. This method is used for updating
-	 * the encoded traffic data in the older string.
+	 * Parses all traffic data files for a single date and merges them into
+	 * the HistData object for that date. Files are processed in the order they
+	 * are listed in the given DateParseResult.
 	 * 
-	 * @param oldStr
-	 *            - the old line data string
-	 * @param newStr
-	 *            - the new line data string
-	 * @return the merged line data string or a blank string if the merge could
-	 *         not be performed
+	 * @param result
+	 *            - holds the date and files to parse and receives the HistData
+	 *            object they were merged into
 	 */
-	private String mergeLineDataStrings(String oldStr, String newStr) {
-		String mergedStr = "";
-		byte oldByte = 0;
-		byte newByte = 0;
-		int i = 0;
+	private void parseDateFiles(DateParseResult result) {
+		/*
+		 * Initialize the flag for indicating whether we are using a new
+		 * HistData object (which should be added to the masterList once we're
+		 * done) or reusing an old one (no more need to add it again to the
+		 * masterList).
+		 * 
+		 * HISTORY: Without this, the original files being created were
+		 * insanely large (on the order of ~1.6MB/660KB) in comparison to when
+		 * we have this boolean flag (~54.9KB/18.1KB).
+		 * 
+		 * Basically, there were lots of duplicate data.
+		 */
+		if (result.hd == null) {
+			result.hd = new HistData(result.epochDay);
+			result.usesNewHistDataObject = true;
+		}
+		HistData hd = result.hd;
+
+		LineDataBuffer newLineData = new LineDataBuffer();
+		LineDataBuffer oldLineData = new LineDataBuffer();
+		LineDataBuffer mergedLineData = new LineDataBuffer();
+		LineDataBuffer compLineData = new LineDataBuffer();
+
+		for (int i = 0; i < result.files.size(); i++) {
+			RecordFile recordFile = result.files.get(i);
+
+			/* Load traffic data file information into a temporary list */
+			LineDataList tempDataList = fsi
+					.loadTrafficDataFile(recordFile.file);
+
+			/* Catch the case where the tempDataList is empty */
+			if (tempDataList == null) {
+				/* Skip this file then */
+				continue;
+			}
 
-		try {
 			/*
-			 * Check if the length of the new line data string is sane. Since
-			 * there are usually 142 distinct lines, the length of this string
-			 * should approximately be 284 characters since we are counting
-			 * differently for both northbound and southbound traffic
+			 * Create the Line Data String we are going to store in the HistData
+			 * object
 			 */
-			if (newStr.length() != 284) {
-				System.out
-						.println("[mergeLineDataStrings] Warning: Weird line data string length: "
-								+ newStr.length());
-				return mergedStr;
-			}
+			/*
+			 * What we're doing here basically is taking the traffic values
+			 * stored in each LineData object stored in tempDataList and mapping
+			 * them to their appropriate ASCII64/Base64 values.
+			 * 
+			 * NOTE: Since we're using each traffic data value byte to store the
+			 * last four traffic conditions associated with each line, there
+			 * doesn't seem to be any significant memory/space savings as a
+			 * result. That said, we might be better off storing this as a full
+			 * binary file instead of converting it to text first.
+			 * 
+			 * NOTE: The ASCII64/Base64 encoding system used here is currently
+			 * incorrect
+			 */
+			LineDataCodec.encode(tempDataList, newLineData);
 
-			/* Check that both strings have the same length */
-			if (oldStr.length() != newStr.length()) {
-				return mergedStr;
+			/*
+			 * Check if we already have LineInfo entry in the HistData object
+			 * which has the same hour as the data we are going to be parsing in
+			 */
+			/* Derive the hour and minutes */
+			int hour = recordFile.minuteOfDay / 60;
+			int mins = recordFile.minuteOfDay % 60;
+
+			/*
+			 * In case of the latter half of an hour, this will be factored in
+			 * to the next hour instead of this one (unless we are at hour 23)
+			 */
+			int slot = hour;
+			if ((hour < 23) && (mins >= 30)) {
+				slot = hour + 1;
+			}
+			if ((slot < 0) || (slot >= HistData.HOUR_SLOTS)) {
+				System.out.println("Warning: Invalid file time: "
+						+ recordFile.file.getName());
+				continue;
 			}
+			LineInfo lineInfo = hd.getLineInfo(slot);
 
-			for (i = 0; i < oldStr.length(); i++) {
+			if (lineInfo != null) {
 				/*
-				 * Get the old byte from the old string and shift it to the left
-				 * by two places.
+				 * If we already have a particular LineInfo object to write to,
+				 * (possibly due to the previous step) then attempt to merge the
+				 * line data strings
 				 */
-				oldByte = (byte) ((Constants.base64chars.indexOf(oldStr
-						.charAt(i)) << 2) & 63);
-				/* Get the new byte from the new string */
-				newByte = (byte) (Constants.base64chars.indexOf(newStr
-						.charAt(i)) & 3);
+				LineDataCodec.decompress(lineInfo.lineDataStr, oldLineData);
 
-				/*
-				 * Merge together the old and new bytes to generate a new
-				 * character which will be pushed into the merged string.
-				 */
-				mergedStr += Constants.base64chars
-						.charAt(((oldByte + newByte) & 63));
-			}
-		} catch (StringIndexOutOfBoundsException e) {
-			if (!hasTriggeredDebugFlag) {
-				System.out.println("StringIndexOutOfBoundsException occurred!");
-				System.out.println("OldByte: " + oldByte + ", NewByte: "
-						+ newByte);
-				System.out
-						.println("Shifted: "
-								+ (Constants.base64chars.indexOf(oldStr
-										.charAt(i)) << 2));
-				System.out.println("UnShifted: "
-						+ (Constants.base64chars.indexOf(oldStr.charAt(i))));
-				System.out.println("Original: " + oldStr.charAt(i));
-				System.out.println("  OLD:" + oldStr);
-				System.out.println("  NEW:" + newStr);
-				System.out.println("MERGE:" + mergedStr);
-				hasTriggeredDebugFlag = true;
-				System.out.println("=========================================");
+				if (LineDataCodec.merge(oldLineData, newLineData,
+						mergedLineData)) {
+					LineDataCodec.compress(mergedLineData, compLineData);
+				} else {
+					/* Fall back to the original plan if merging fails */
+					System.out
+							.println("Warning: Failed to merge to an existing line data string!");
+					System.out.println("   NEW: " + newLineData);
+					System.out.println("   OLD: " + oldLineData);
+					LineDataCodec.compress(oldLineData, compLineData);
+				}
+				lineInfo.lineDataStr = compLineData.toString();
+				continue;
 			}
-			e.printStackTrace();
+
+			/* Compress the string and create a new LineInfo object for it */
+			LineDataCodec.compress(newLineData, compLineData);
+			hd.hourSlots[slot] = new LineInfo(slot * 60,
+					compLineData.toString());
+			result.hasInsertedData = true;
 		}
-		return mergedStr;
 	}
 
+	/*****************************************************************************************/
+	/** UNUSED/RESERVED METHODS **/
+	/*****************************************************************************************/
 	/**
-	 * Adds a date string to the list of covered dates for the current
-	 * parseTrafficDataFiles() operation.
-	 * 
-	 * TODO: Consider replacing this with a method that just draws all dates
-	 * from a HistData list instead.
+	 * Unused utility function for extracting line data from a line data string
 	 * 
-	 * @param dateStr
-	 *            - the date string to be added to the list
+	 * @param lineDataStr
+	 *            - line data string from which line data will be extracted
+	 * @return a list of LineData objects
 	 */
-	private void addToDatesCoveredList(String dateStr) {
-		if (datesCoveredList.size() == 0) {
-			System.out.println("Added to date list: " + dateStr);
-			datesCoveredList.add(dateStr);
-			return;
-		}
-
-		int insIdx = 0;
-		int dateVal = Integer.parseInt(dateStr);
-		int compVal = Integer.parseInt(datesCoveredList.get(0));
+	public List<LineData> extractLineData(String lineDataStr) {
+		List<LineData> ld = new ArrayList<LineData>();
 
-		int j = 1;
+		short locCount = 0;
 
-		while (dateVal > compVal) {
-			insIdx = j;
+		String extStr = decompressString(lineDataStr);
 
-			if (j >= datesCoveredList.size()) {
-				insIdx = -1;
-				break;
-			}
+		/* Convert each pair of characters back to bytes */
+		for (int i = 0; i + 1 < extStr.length(); i += 2) {
+			byte sb = (byte) (Constants.base64chars.indexOf(extStr.charAt(i)));
+			byte nb = (byte) (Constants.base64chars.indexOf(extStr
+					.charAt(i + 1)));
 
-			compVal = Integer.parseInt(datesCoveredList.get(j++));
+			ld.add(new LineData(locCount++, sb, nb));
 		}
 
-		if (insIdx >= 0) {
-			datesCoveredList.add(insIdx, dateStr);
-			System.out.println("Added to date list: " + dateStr);
-		} else {
-			datesCoveredList.add(dateStr);
-			System.out.println("Added to date list: " + dateStr);
-		}
+		return ld;
 	}
 
+	/*****************************************************************************************/
+	/** INTERNAL CLASSES **/
+	/*****************************************************************************************/
 	/**
-	 * Gets the proper data list insertion index for a new element with a
-	 * particular timestamp string. This method is part of the mechanism which
-	 * basically ensures that
+	 * <b>DateParseResult Object</b> </br>Holds the traffic data files for a
+	 * single date along with the HistData object they get merged into.
+	 * 
+	 * @author francis
 	 * 
-	 * @param timeStr
-	 * @param dataList
-	 * @return
 	 */
-	private static int getDataListInsertionIndex(String timeStr,
-			List<LineInfo> dataList) {
-		int timeVal = Integer.parseInt(timeStr);
-		int guessVal = 0;
-
-		int floorId = 0;
-		int ceilId = dataList.size() - 1;
-		int guessId = ceilId;
-		int insId = 0;
-
-		if (dataList.size() > 0) {
-			guessVal = Integer.parseInt(dataList.get(guessId).timestamp);
-		} else {
-			return -1;
-		}
-
-		if (timeVal > guessVal) {
-			return -1;
+	static class DateParseResult {
+		public int epochDay;
+		public List<RecordFile> files;
+		public HistData hd;
+		public boolean usesNewHistDataObject = false;
+		public boolean hasInsertedData = false;
+
+		public DateParseResult(int epochDay, List<RecordFile> files,
+				HistData hd) {
+			this.epochDay = epochDay;
+			this.files = files;
+			this.hd = hd;
 		}
+	}
 
-		while (dataList.size() > 0) {
-			if (timeVal < guessVal) {
-				if ((guessId - floorId) == 1) {
-					if (Integer.parseInt(dataList.get(floorId).timestamp) > timeVal) {
-						insId = floorId;
-					} else {
-						insId = guessId;
-					}
-					break;
-				}
-
-				if (ceilId == floorId) {
-					break;
-				}
-
-				ceilId = guessId;
-				guessId = ((ceilId - floorId) / 2) + floorId;
-				guessVal = Integer.parseInt(dataList.get(guessId).timestamp);
-
-			} else { /* timeVal > guessVal */
-				if ((ceilId - guessId) == 1) {
-					if (Integer.parseInt(dataList.get(ceilId).timestamp) < timeVal) {
-						insId = guessId;
-					} else {
-						insId = ceilId;
-					}
-					insId = ceilId;
-					break;
-				}
-
-				if (ceilId == floorId) {
-					break;
-				}
-
-				floorId = guessId;
-				guessId = (((ceilId - floorId) / 2) + floorId);
-				guessVal = Integer.parseInt(dataList.get(guessId).timestamp);
+	/**
+	 * <b>RecordFile Object</b> </br>A traffic data file along with the time
+	 * read off its name.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class RecordFile {
+		public File file;
+		public int minuteOfDay;
 
-			}
+		public RecordFile(File file, int minuteOfDay) {
+			this.file = file;
+			this.minuteOfDay = minuteOfDay;
 		}
-		return insId;
 	}
 
 	/**
-	 * Normalizes the traffic condition values inside a Line Data string. This
-	 * method basically gets the average of all traffic condition values
-	 * previously 'merged' into the line data string. This is usually done after
-	 * parsing in multiple traffic data files and we want to obtain the average
-	 * traffic condition to be used as reference for future merge-ins.
+	 * Fork/join task which parses a range of dates, splitting the range until
+	 * only a single date is left for each task
+	 * 
+	 * @author francis
 	 * 
-	 * @param lineDataStr
-	 *            - the line data string to be normalized
-	 * @return the normalized line data string
 	 */
-	private String normalizeLineDataString(String lineDataStr) {
-		String normalizedStr = "";
-		int i = 0;
+	class ParseDatesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
 
-		/*
-		 * Check if the length of the new line data string is sane. Since there
-		 * are usually 142 distinct lines, the length of this string should
-		 * approximately be 284 characters since we are counting differently for
-		 * both northbound and southbound traffic
-		 */
-		if (lineDataStr.length() != 284) {
-			System.out
-					.println("[normalizeLineDataString] Warning: Weird line data "
-							+ "string length: " + lineDataStr.length());
-			return normalizedStr;
+		private DateParseResult results[];
+		private int start;
+		private int end;
+
+		public ParseDatesTask(DateParseResult results[], int start, int end) {
+			this.results = results;
+			this.start = start;
+			this.end = end;
 		}
 
-		for (i = 0; i < lineDataStr.length(); i++) {
-			byte b[] = new byte[4];
-
-			int charIdx = Constants.base64chars.indexOf(lineDataStr.charAt(i));
-			b[0] = (byte) ((charIdx >> 6) & 3);
-			b[1] = (byte) ((charIdx >> 4) & 3);
-			b[2] = (byte) ((charIdx >> 2) & 3);
-			b[3] = (byte) (charIdx & 3);
-
-			int weighedSum = 0;
-			float finDiv = 0.0f;
-			for (int j = 0; j < b.length; j++) {
-				weighedSum += b[j] * (j + 1);
-				if (b[j] != 0) {
-					finDiv += (float) (j + 1);
+		@Override
+		protected void compute() {
+			if (end - start <= 1) {
+				if (start < end) {
+					parseDateFiles(results[start]);
 				}
+				return;
 			}
 
-			int finInt = Math.round(weighedSum / finDiv);
-
-			normalizedStr += Constants.base64chars.charAt(finInt == 0 ? 1
-					: finInt);
+			int mid = (start + end) >>> 1;
+			invokeAll(new ParseDatesTask(results, start, mid),
+					new ParseDatesTask(results, mid, end));
 		}
-		return normalizedStr;
 	}
 
-	/*****************************************************************************************/
-	/** UNUSED/RESERVED METHODS **/
-	/*****************************************************************************************/
 	/**
-	 * Unused utility function for extracting line data from a line data string
+	 * Fork/join task which normalizes the line data strings of a range of
+	 * LineInfo objects
+	 * 
+	 * @author francis
 	 * 
-	 * @param lineDataStr
-	 *            - line data string from which line data will be extracted
-	 * @return a list of LineData objects
 	 */
-	public List<LineData> extractLineData(String lineDataStr) {
-		List<LineData> ld = new ArrayList<LineData>();
-
-		short locCount = 0;
-
-		int startIdx = 0;
-		int endIdx = 2;
-
-		String extStr = decompressString(lineDataStr);
-
-		while (startIdx < extStr.length()) {
-			/* Get two characters */
-			String sub = extStr.substring(startIdx, endIdx);
-
-			/* Convert them back to bytes */
-			char c[] = new char[sub.length()];
-			for (int i = 0; i < c.length; i++) {
-				c[i] = sub.charAt(i);
-			}
-
-			byte sb = (byte) (Constants.base64chars.indexOf(c[0]));
-			byte nb = (byte) (Constants.base64chars.indexOf(c[1]));
-
-			ld.add(new LineData(locCount++, sb, nb));
-
-			/* Increment the indices */
-			startIdx += 2;
-			endIdx += 2;
-
-			if (startIdx >= extStr.length()) {
-				break;
-			}
-
-			if (endIdx > extStr.length()) {
-				endIdx = extStr.length();
+	class NormalizeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		/* Number of LineInfo objects below which we stop splitting */
+		private static final int THRESHOLD = 8;
+
+		private List<LineInfo> lineInfoList;
+		private int start;
+		private int end;
+
+		public NormalizeTask(List<LineInfo> lineInfoList, int start, int end) {
+			this.lineInfoList = lineInfoList;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= THRESHOLD) {
+				LineDataBuffer lineData = new LineDataBuffer();
+				LineDataBuffer compLineData = new LineDataBuffer();
+				for (int i = start; i < end; i++) {
+					LineInfo li = lineInfoList.get(i);
+					LineDataCodec.decompress(li.lineDataStr, lineData);
+
+					/* Weird line data strings are dropped */
+					if (LineDataCodec.normalize(lineData, lineData)) {
+						LineDataCodec.compress(lineData, compLineData);
+						li.lineDataStr = compLineData.toString();
+					} else {
+						li.lineDataStr = "";
+					}
+				}
+				return;
 			}
 
+			int mid = (start + end) >>> 1;
+			invokeAll(new NormalizeTask(lineInfoList, start, mid),
+					new NormalizeTask(lineInfoList, mid, end));
 		}
+	}
 
-		for (int i = 0; i < ld.size(); i++) {
-			System.out.println(ld.get(i).toString());
+	/**
+	 * Comparator for ordering traffic data files of the same date by time
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class FileTimeComparator implements Comparator<RecordFile> {
+		@Override
+		public int compare(RecordFile f1, RecordFile f2) {
+			if (f1.minuteOfDay != f2.minuteOfDay) {
+				return (f1.minuteOfDay < f2.minuteOfDay) ? -1 : 1;
+			}
+			return f1.file.getName().compareTo(f2.file.getName());
 		}
-
-		return ld;
 	}
 }
@@ -3,6 +3,8 @@ package com.atlach.TrafficDataAggregator.DataObjects;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.atlach.TrafficDataAggregator.DateIntervalSet;
+
 /* 	Copyright (C) 2013	Francis T., Zara P.
  * 
  * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
@@ -23,27 +25,115 @@ import java.util.List;
 
 /**
  * <b>HistData Object</b> </br>Object used to represent Historical Traffic Data
- * for a set of Lines
+ * for a set of Lines. </br></br>The data is kept in 24 hour slots, one
+ * LineInfo object for each hour of the day, so data for a given hour is looked
+ * up, inserted or merged directly. The slot of a LineInfo object is taken from
+ * the hour of its time; hour 24 (the last half hour of the day rounded up)
+ * goes into the slot for hour 23. </br></br>The date is kept as days since
+ * 1970-01-01, or UNKNOWN_DATE once the object no longer stands for a single
+ * date.
  * 
  * @author francis
  * 
  */
 public class HistData {
+	public static final int HOUR_SLOTS = 24;
+	public static final int UNKNOWN_DATE = Integer.MIN_VALUE;
+
 	/* Fields */
-	public List<LineInfo> dataList;
-	public String date;
+	public LineInfo hourSlots[];
+	public int epochDay;
 	public String tagset;
 	public boolean hasChanged = false;
 
 	/* Constructor */
-	public HistData(String d) {
-		dataList = new ArrayList<LineInfo>();
-		date = d;
+	public HistData(int d) {
+		hourSlots = new LineInfo[HOUR_SLOTS];
+		epochDay = d;
 	}
 
-	public HistData(String d, String t) {
-		dataList = new ArrayList<LineInfo>();
-		date = d;
+	public HistData(int d, String t) {
+		hourSlots = new LineInfo[HOUR_SLOTS];
+		epochDay = d;
 		tagset = t;
 	}
+
+	/**
+	 * Gets the date of this HistData object as a string
+	 * 
+	 * @return the date string (e.g. "20130901") or "UNKNOWN"
+	 */
+	public String getDateString() {
+		if (epochDay == UNKNOWN_DATE) {
+			return "UNKNOWN";
+		}
+		return DateIntervalSet.toDateString(epochDay);
+	}
+
+	/**
+	 * Gets the LineInfo object for an hour of the day
+	 * 
+	 * @param hour
+	 *            - the hour slot (0 to 23)
+	 * @return the LineInfo object or null if there is no data for that hour
+	 */
+	public LineInfo getLineInfo(int hour) {
+		return hourSlots[hour];
+	}
+
+	/**
+	 * Puts a LineInfo object into the slot for the hour of its time,
+	 * replacing whatever was there
+	 * 
+	 * @param lineInfo
+	 *            - the LineInfo object to add
+	 * @return false if the time is not a valid time of day, in which case
+	 *         nothing is changed
+	 */
+	public boolean putLineInfo(LineInfo lineInfo) {
+		int hour = getHourSlot(lineInfo.minuteOfDay);
+		if (hour < 0) {
+			System.out.println("Warning: Invalid time! ("
+					+ lineInfo.minuteOfDay + ")");
+			return false;
+		}
+
+		hourSlots[hour] = lineInfo;
+		return true;
+	}
+
+	/**
+	 * Gets the LineInfo objects held by this HistData object in chronological
+	 * order. The list is a copy; changing it does not change this object.
+	 * 
+	 * @return a List of LineInfo objects
+	 */
+	public List<LineInfo> getDataList() {
+		List<LineInfo> dataList = new ArrayList<LineInfo>(HOUR_SLOTS);
+		for (int i = 0; i < HOUR_SLOTS; i++) {
+			if (hourSlots[i] != null) {
+				dataList.add(hourSlots[i]);
+			}
+		}
+		return dataList;
+	}
+
+	/**
+	 * Gets the hour slot for a time of day
+	 * 
+	 * @param minuteOfDay
+	 *            - the minutes since midnight
+	 * @return the hour slot (0 to 23) or -1 if the time is invalid
+	 */
+	public static int getHourSlot(int minuteOfDay) {
+		if (minuteOfDay < 0) {
+			return -1;
+		}
+
+		int hour = minuteOfDay / 60;
+		if (hour == HOUR_SLOTS) {
+			return HOUR_SLOTS - 1;
+		}
+		return (hour < HOUR_SLOTS) ? hour : -1;
+	}
 }
@@ -24,12 +24,41 @@ import com.atlach.TrafficDataAggregator.Constants;
 
 /**
  * <b>LineData Object</b> </br>Object used to represent Traffic Data for a
- * single Line (i.e. segment of road)
+ * single Line (i.e. segment of road). </br></br>A traffic byte holds the last
+ * four traffic conditions (2 bits each), so there are only 256 possible
+ * weighted averages. These are worked out once into a lookup table which is
+ * shared with LineDataList.
  * 
  * @author francis
  * 
  */
 public class LineData {
+	/* Weighted average (and its display string) for each traffic byte */
+	private static final float TRAFFIC_AVE_TABLE[] = new float[256];
+	private static final String TRAFFIC_AVE_STR_TABLE[] = new String[256];
+
+	static {
+		for (int i = 0; i < TRAFFIC_AVE_TABLE.length; i++) {
+			int weighedSum = 0;
+			float finDiv = 0.0f;
+			for (int j = 0; j < 4; j++) {
+				int b = (i >> (j * 2)) & 0x03;
+				weighedSum += b * (j + 1);
+				if (b != 0) {
+					finDiv += (float) (j + 1);
+				}
+			}
+
+			float ave = (weighedSum / finDiv);
+			TRAFFIC_AVE_TABLE[i] = ave;
+			if (Float.isNaN(ave)) {
+				TRAFFIC_AVE_STR_TABLE[i] = "NaN";
+			} else {
+				TRAFFIC_AVE_STR_TABLE[i] = roundDecimal(ave, 2).toString();
+			}
+		}
+	}
+
 	/* Fields */
 	public byte locNameCode;
 	public byte trafficSB;
@@ -43,57 +72,50 @@ public class LineData {
 	}
 
 	public BigDecimal round(float d, int decimalPlace) {
-		BigDecimal bd = new BigDecimal(Float.toString(d));
-		bd = bd.setScale(decimalPlace, BigDecimal.ROUND_HALF_UP);
-		return bd;
+		return roundDecimal(d, decimalPlace);
 	}
 
 	public float getSBTrafficAve() {
-		byte b[] = new byte[4];
-		b[0] = (byte) (trafficSB & 0x03);
-		b[1] = (byte) ((trafficSB & 0x0C) >> 2);
-		b[2] = (byte) ((trafficSB & 0x30) >> 4);
-		b[3] = (byte) ((trafficSB & 0xC0) >> 6);
-
-		int weighedSum = 0;
-		float finDiv = 0.0f;
-		for (int j = 0; j < b.length; j++) {
-			weighedSum += b[j] * (j + 1);
-			if (b[j] != 0) {
-				finDiv += (float) (j + 1);
-			}
-		}
-
-		return (weighedSum / finDiv);
+		return getTrafficAve(trafficSB);
 	}
 
 	public float getNBTrafficAve() {
-		byte b[] = new byte[4];
-		b[0] = (byte) (trafficNB & 0x03);
-		b[1] = (byte) ((trafficNB & 0x0C) >> 2);
-		b[2] = (byte) ((trafficNB & 0x30) >> 4);
-		b[3] = (byte) ((trafficNB & 0xC0) >> 6);
+		return getTrafficAve(trafficNB);
+	}
 
-		int weighedSum = 0;
-		float finDiv = 0.0f;
-		for (int j = 0; j < b.length; j++) {
-			weighedSum += b[j] * (j + 1);
-			if (b[j] != 0) {
-				finDiv += (float) (j + 1);
-			}
-		}
+	/**
+	 * Gets the weighted average of the traffic conditions held in a traffic
+	 * byte. Bytes holding no conditions at all give NaN.
+	 * 
+	 * @param traffic
+	 *            - the traffic byte
+	 * @return the weighted average
+	 */
+	public static float getTrafficAve(byte traffic) {
+		return TRAFFIC_AVE_TABLE[traffic & 0xFF];
+	}
 
-		return (weighedSum / finDiv);
+	/**
+	 * Gets the weighted average of a traffic byte rounded to two decimal
+	 * places, as shown by toString()
+	 * 
+	 * @param traffic
+	 *            - the traffic byte
+	 * @return the rounded weighted average as a String
+	 */
+	public static String getTrafficAveString(byte traffic) {
+		return TRAFFIC_AVE_STR_TABLE[traffic & 0xFF];
 	}
 
 	public String toString() {
 		return ("loc: " + Constants.locStr[locNameCode + 128] + ", sb:"
-				+ round(getSBTrafficAve(), 2) +
-				// "(" + (String.format("%6s",
-				// Integer.toBinaryString(trafficSB)).replace(' ', '0')) + ")" +
-				", nb:" + round(getNBTrafficAve(), 2) +
-		// "(" + (String.format("%6s",
-		// Integer.toBinaryString(trafficNB)).replace(' ', '0')) +
-		")");
+				+ getTrafficAveString(trafficSB) + ", nb:"
+				+ getTrafficAveString(trafficNB) + ")");
+	}
+
+	private static BigDecimal roundDecimal(float d, int decimalPlace) {
+		BigDecimal bd = new BigDecimal(Float.toString(d));
+		bd = bd.setScale(decimalPlace, BigDecimal.ROUND_HALF_UP);
+		return bd;
 	}
 }
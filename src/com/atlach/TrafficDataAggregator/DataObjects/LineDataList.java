@@ -1,6 +1,8 @@
 package com.atlach.TrafficDataAggregator.DataObjects;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.atlach.TrafficDataAggregator.Constants;
 
 /* 	Copyright (C) 2013	Francis T., Zara P.
  * 
@@ -22,19 +24,69 @@ import java.util.ArrayList;
 
 /**
  * <b>LineDataList Object</b> </br>Object used to represent Traffic Data for a
- * set of Lines (i.e. segment of road) using a Timestamp value and a list of
- * LineData objects
+ * set of Lines (i.e. segment of road) using a Timestamp value and the traffic
+ * bytes of each Line. </br></br>The southbound and northbound traffic bytes are
+ * kept in two byte arrays indexed by location code, so a list holding every
+ * known location only takes up a few hundred bytes. Lines are added in order
+ * of their location code.
  * 
  * @author francis
  * 
  */
 public class LineDataList {
 	/* Fields */
-	public ArrayList<LineData> data;
+	public byte trafficSB[];
+	public byte trafficNB[];
+	public int size = 0;
 	public String timestamp;
 
 	/* Constructor */
 	public LineDataList() {
-		data = new ArrayList<LineData>();
+		trafficSB = new byte[Constants.locStr.length];
+		trafficNB = new byte[Constants.locStr.length];
+	}
+
+	/**
+	 * Adds the traffic bytes of the next Line
+	 * 
+	 * @param sb
+	 *            - the southbound traffic byte
+	 * @param nb
+	 *            - the northbound traffic byte
+	 */
+	public void add(byte sb, byte nb) {
+		if (size == trafficSB.length) {
+			trafficSB = Arrays.copyOf(trafficSB, size * 2);
+			trafficNB = Arrays.copyOf(trafficNB, size * 2);
+		}
+		trafficSB[size] = sb;
+		trafficNB[size] = nb;
+		size++;
+	}
+
+	/**
+	 * @return the number of Lines held in this list
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Creates a LineData object for one of the Lines in this list
+	 * 
+	 * @param idx
+	 *            - the index (location code) of the Line
+	 * @return a new LineData object
+	 */
+	public LineData get(int idx) {
+		return new LineData((short) idx, trafficSB[idx], trafficNB[idx]);
+	}
+
+	public float getSBTrafficAve(int idx) {
+		return LineData.getTrafficAve(trafficSB[idx]);
+	}
+
+	public float getNBTrafficAve(int idx) {
+		return LineData.getTrafficAve(trafficNB[idx]);
 	}
 }
@@ -20,24 +20,106 @@ package com.atlach.TrafficDataAggregator.DataObjects;
 
 /**
  * <b>LineInfo Object</b> </br>Object used to represent Traffic Data for a set
- * of Lines (i.e. segment of road) using a timestamp value and a Line Data
- * string. This is essentially a condensed version of the LineDataList which
- * does not allow for compression of Line Data (since it uses a hard List)
+ * of Lines (i.e. segment of road) using a time value and a Line Data string.
+ * This is essentially a condensed version of the LineDataList which does not
+ * allow for compression of Line Data (since it uses a hard List) </br></br>The
+ * time is kept as minutes since midnight; the "HHmm" string form is only used
+ * when reading and writing files.
  * 
  * @author francis
  * 
  */
 public class LineInfo {
-	public String timestamp;
+	public static final int INVALID_TIME = -1;
+
+	public int minuteOfDay;
 	public String lineDataStr;
 
 	/* Constructor */
-	public LineInfo(String dateTime, String lineData) {
-		timestamp = dateTime;
+	public LineInfo(int minuteOfDay, String lineData) {
+		this.minuteOfDay = minuteOfDay;
 		lineDataStr = lineData;
 
 		if (lineDataStr.equals(""))
 			System.out.println("Warning: Blank line data string! ("
-					+ this.timestamp + ")");
+					+ getTimeString() + ")");
+	}
+
+	/**
+	 * Gets the time of this LineInfo object as a string
+	 * 
+	 * @return the time string (e.g. "1300")
+	 */
+	public String getTimeString() {
+		return toTimeString(minuteOfDay);
+	}
+
+	/**
+	 * Converts a time in "HHmm" form to minutes since midnight. Missing
+	 * trailing minute digits count as zeroes (e.g. "123" is 12:30 and "12" is
+	 * 12:00). Anything after the fourth character is ignored. Hour 24 is
+	 * accepted since it shows up as the end of the day.
+	 * 
+	 * @param src
+	 *            - the characters holding the time
+	 * @param start
+	 *            - index of the first digit of the time
+	 * @param end
+	 *            - index just past the last character of the time
+	 * @return the minutes since midnight or INVALID_TIME if it is not a valid
+	 *         time
+	 */
+	public static int toMinuteOfDay(CharSequence src, int start, int end) {
+		int len = Math.min(end - start, 4);
+		if (len < 2) {
+			return INVALID_TIME;
+		}
+
+		int val = 0;
+		for (int i = 0; i < 4; i++) {
+			int digit = 0;
+			if (i < len) {
+				digit = src.charAt(start + i) - '0';
+				if ((digit < 0) || (digit > 9)) {
+					return INVALID_TIME;
+				}
+			}
+			val = (val * 10) + digit;
+		}
+
+		int hour = val / 100;
+		int mins = val % 100;
+		if ((hour > 24) || (mins > 59)) {
+			return INVALID_TIME;
+		}
+		return (hour * 60) + mins;
+	}
+
+	/**
+	 * Converts a time in "HHmm" form to minutes since midnight
+	 * 
+	 * @param timeStr
+	 *            - the time string (e.g. "1300")
+	 * @return the minutes since midnight or INVALID_TIME if it is not a valid
+	 *         time
+	 */
+	public static int toMinuteOfDay(String timeStr) {
+		return toMinuteOfDay(timeStr, 0, timeStr.length());
+	}
+
+	/**
+	 * Converts minutes since midnight to a time string
+	 * 
+	 * @param minuteOfDay
+	 *            - the minutes since midnight
+	 * @return the time string (e.g. "1300")
+	 */
+	public static String toTimeString(int minuteOfDay) {
+		int hour = minuteOfDay / 60;
+		int mins = minuteOfDay % 60;
+		char timeChars[] = { (char) ('0' + (hour / 10)),
+				(char) ('0' + (hour % 10)), (char) ('0' + (mins / 10)),
+				(char) ('0' + (mins % 10)) };
+		return new String(timeChars);
 	}
 }
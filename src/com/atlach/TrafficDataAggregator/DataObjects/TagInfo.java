@@ -19,17 +19,18 @@ package com.atlach.TrafficDataAggregator.DataObjects;
  */
 
 /**
- * <b>TagInfo Object</b> </br>Object used to represent tag information
+ * <b>TagInfo Object</b> </br>Object used to represent tag information. The
+ * date is kept as days since 1970-01-01.
  * 
  * @author francis
  * 
  */
 public class TagInfo {
 	public String tagset = "";
-	public String date = "";
+	public int epochDay;
 
-	public TagInfo(String d, String t) {
-		date = d;
+	public TagInfo(int d, String t) {
+		epochDay = d;
 		tagset = t;
 	}
 }
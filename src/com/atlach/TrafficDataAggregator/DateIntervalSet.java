@@ -0,0 +1,425 @@
+package com.atlach.TrafficDataAggregator;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>DateIntervalSet Class</b> </br>A set of dates such as the "DatesCovered"
+ * tag of a Historical Data File. Dates are kept as days since 1970-01-01 in a
+ * bitmap, one bit per day, so membership tests take constant time and
+ * adjacent dates merge into ranges across month and year boundaries.
+ * </br></br>The string form is the one used by the Historical Data File
+ * header, i.e. comma-separated dates ("20130901") and date ranges
+ * ("20130901-20130915"). Entries with only a year ("2013") or a year and
+ * month ("201309") cover the whole year or month.
+ * 
+ * @author francis
+ * 
+ */
+public class DateIntervalSet {
+	/* Cumulative day counts at the start of each month for a non-leap year */
+	private static final int MONTH_START_DAYS[] = { 0, 31, 59, 90, 120, 151,
+			181, 212, 243, 273, 304, 334, 365 };
+
+	/* Epoch day of the first bit in the bitmap (always a multiple of 64) */
+	private int baseDay = 0;
+	private long words[] = new long[0];
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Parses a dates covered string. Malformed entries are reported and
+	 * skipped.
+	 * 
+	 * @param datesStr
+	 *            - the dates covered string (e.g. "20130901-20130915,20130920")
+	 * @return the parsed DateIntervalSet
+	 */
+	public static DateIntervalSet parse(String datesStr) {
+		DateIntervalSet dateSet = new DateIntervalSet();
+		if (datesStr == null) {
+			return dateSet;
+		}
+
+		String entries[] = datesStr.split(",");
+		for (int i = 0; i < entries.length; i++) {
+			String entry = entries[i].trim();
+			if (entry.equals("")) {
+				continue;
+			}
+
+			int rangeIdx = entry.indexOf('-');
+			String lowStr = (rangeIdx < 0) ? entry : entry.substring(0,
+					rangeIdx).trim();
+			String highStr = (rangeIdx < 0) ? entry : entry.substring(
+					rangeIdx + 1).trim();
+
+			int lowDay = parseEntry(lowStr, false);
+			int highDay = parseEntry(highStr, true);
+			if ((lowDay == Integer.MIN_VALUE) || (highDay == Integer.MIN_VALUE)) {
+				System.out.println("[DateIntervalSet] Skipped invalid entry: "
+						+ entry);
+				continue;
+			}
+			dateSet.addRange(lowDay, highDay);
+		}
+
+		return dateSet;
+	}
+
+	/**
+	 * Adds a single date to the set
+	 * 
+	 * @param epochDay
+	 *            - the date in days since 1970-01-01
+	 */
+	public void add(int epochDay) {
+		ensureCapacity(epochDay, epochDay);
+		int bit = epochDay - baseDay;
+		words[bit >>> 6] |= (1L << bit);
+	}
+
+	/**
+	 * Adds a date string to the set
+	 * 
+	 * @param dateStr
+	 *            - the date string (e.g. "20130901")
+	 * @return false if the date string is invalid
+	 */
+	public boolean add(String dateStr) {
+		int epochDay = toEpochDay(dateStr, 0);
+		if (epochDay == Integer.MIN_VALUE) {
+			return false;
+		}
+		add(epochDay);
+		return true;
+	}
+
+	/**
+	 * Adds a range of dates to the set
+	 * 
+	 * @param fromDay
+	 *            - the first date in days since 1970-01-01
+	 * @param toDay
+	 *            - the last date in days since 1970-01-01 (inclusive)
+	 */
+	public void addRange(int fromDay, int toDay) {
+		if (fromDay > toDay) {
+			return;
+		}
+
+		ensureCapacity(fromDay, toDay);
+		int fromBit = fromDay - baseDay;
+		int toBit = toDay - baseDay;
+		int fromWord = fromBit >>> 6;
+		int toWord = toBit >>> 6;
+
+		for (int i = fromWord; i <= toWord; i++) {
+			long mask = -1L;
+			if (i == fromWord) {
+				mask &= (-1L << fromBit);
+			}
+			if (i == toWord) {
+				mask &= (-1L >>> (63 - (toBit & 63)));
+			}
+			words[i] |= mask;
+		}
+	}
+
+	/**
+	 * Adds all dates of another set to this one
+	 * 
+	 * @param other
+	 *            - the set to add
+	 */
+	public void addAll(DateIntervalSet other) {
+		for (int i = 0; i < other.words.length; i++) {
+			long word = other.words[i];
+			while (word != 0) {
+				int bit = Long.numberOfTrailingZeros(word);
+				add(other.baseDay + (i << 6) + bit);
+				word &= (word - 1);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a date is in the set
+	 * 
+	 * @param epochDay
+	 *            - the date in days since 1970-01-01
+	 * @return true if the date is in the set
+	 */
+	public boolean contains(int epochDay) {
+		int bit = epochDay - baseDay;
+		if ((bit < 0) || ((bit >>> 6) >= words.length)) {
+			return false;
+		}
+		return ((words[bit >>> 6] & (1L << bit)) != 0);
+	}
+
+	/**
+	 * Checks whether every date in a range is in the set
+	 * 
+	 * @param fromDay
+	 *            - the first date in days since 1970-01-01
+	 * @param toDay
+	 *            - the last date in days since 1970-01-01 (inclusive)
+	 * @return true if all dates in the range are in the set
+	 */
+	public boolean containsRange(int fromDay, int toDay) {
+		for (int day = fromDay; day <= toDay; day++) {
+			if (!contains(day)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the set has no dates at all
+	 * 
+	 * @return true if the set is empty
+	 */
+	public boolean isEmpty() {
+		for (int i = 0; i < words.length; i++) {
+			if (words[i] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the dates covered string for this set. Adjacent dates are written
+	 * as date ranges.
+	 * 
+	 * @return the dates covered string (e.g. "20130901-20130915,20130920")
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		int totalBits = words.length << 6;
+		int bit = nextBit(0, true);
+
+		while (bit < totalBits) {
+			int endBit = nextBit(bit, false) - 1;
+
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(toDateString(baseDay + bit));
+			if (endBit > bit) {
+				sb.append('-');
+				sb.append(toDateString(baseDay + endBit));
+			}
+
+			bit = nextBit(endBit + 1, true);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * Converts a date in "yyyyMMdd" form to days since 1970-01-01
+	 * 
+	 * @param src
+	 *            - the characters holding the date
+	 * @param start
+	 *            - index of the first digit of the date
+	 * @return the date in days since 1970-01-01 or Integer.MIN_VALUE if it is
+	 *         not a valid date
+	 */
+	public static int toEpochDay(CharSequence src, int start) {
+		if (src.length() - start < 8) {
+			return Integer.MIN_VALUE;
+		}
+
+		int val = 0;
+		for (int i = start; i < start + 8; i++) {
+			char c = src.charAt(i);
+			if ((c < '0') || (c > '9')) {
+				return Integer.MIN_VALUE;
+			}
+			val = (val * 10) + (c - '0');
+		}
+
+		int year = val / 10000;
+		int month = (val / 100) % 100;
+		int day = val % 100;
+		if ((month < 1) || (month > 12) || (day < 1)
+				|| (day > getDaysInMonth(year, month))) {
+			return Integer.MIN_VALUE;
+		}
+
+		return toEpochDay(year, month, day);
+	}
+
+	/**
+	 * Converts a date to days since 1970-01-01
+	 * 
+	 * @param year
+	 *            - the year (e.g. 2013)
+	 * @param month
+	 *            - the month (1 to 12)
+	 * @param day
+	 *            - the day of the month (1 to 31)
+	 * @return the date in days since 1970-01-01
+	 */
+	public static int toEpochDay(int year, int month, int day) {
+		/* Count years from March so that leap days come at the end */
+		int y = (month <= 2) ? year - 1 : year;
+		int era = ((y >= 0) ? y : y - 399) / 400;
+		int yearOfEra = y - (era * 400);
+		int dayOfYear = ((153 * (month + ((month > 2) ? -3 : 9))) + 2) / 5
+				+ day - 1;
+		int dayOfEra = (yearOfEra * 365) + (yearOfEra / 4) - (yearOfEra / 100)
+				+ dayOfYear;
+		return (era * 146097) + dayOfEra - 719468;
+	}
+
+	/**
+	 * Converts days since 1970-01-01 to a date string
+	 * 
+	 * @param epochDay
+	 *            - the date in days since 1970-01-01
+	 * @return the date string (e.g. "20130901")
+	 */
+	public static String toDateString(int epochDay) {
+		int z = epochDay + 719468;
+		int era = ((z >= 0) ? z : z - 146096) / 146097;
+		int dayOfEra = z - (era * 146097);
+		int yearOfEra = (dayOfEra - (dayOfEra / 1460) + (dayOfEra / 36524) - (dayOfEra / 146096)) / 365;
+		int dayOfYear = dayOfEra
+				- ((365 * yearOfEra) + (yearOfEra / 4) - (yearOfEra / 100));
+		int mp = ((5 * dayOfYear) + 2) / 153;
+		int day = dayOfYear - (((153 * mp) + 2) / 5) + 1;
+		int month = mp + ((mp < 10) ? 3 : -9);
+		int year = yearOfEra + (era * 400) + ((month <= 2) ? 1 : 0);
+
+		return Integer.toString((year * 10000) + (month * 100) + day);
+	}
+
+	/**
+	 * Gets the number of days in a month
+	 * 
+	 * @param year
+	 *            - the year (e.g. 2013)
+	 * @param month
+	 *            - the month (1 to 12)
+	 * @return the number of days in the month
+	 */
+	public static int getDaysInMonth(int year, int month) {
+		int days = MONTH_START_DAYS[month] - MONTH_START_DAYS[month - 1];
+		if ((month == 2) && isLeapYear(year)) {
+			days++;
+		}
+		return days;
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Parses a single date of a dates covered entry. Year and month entries
+	 * give their first or last date depending on isEnd.
+	 * 
+	 * @return the date in days since 1970-01-01 or Integer.MIN_VALUE if the
+	 *         entry is invalid
+	 */
+	private static int parseEntry(String str, boolean isEnd) {
+		if (str.length() == 8) {
+			return toEpochDay(str, 0);
+		}
+
+		if ((str.length() != 4) && (str.length() != 6)) {
+			return Integer.MIN_VALUE;
+		}
+
+		for (int i = 0; i < str.length(); i++) {
+			if ((str.charAt(i) < '0') || (str.charAt(i) > '9')) {
+				return Integer.MIN_VALUE;
+			}
+		}
+
+		int year = Integer.parseInt(str.substring(0, 4));
+		if (str.length() == 4) {
+			return isEnd ? toEpochDay(year, 12, 31) : toEpochDay(year, 1, 1);
+		}
+
+		int month = Integer.parseInt(str.substring(4, 6));
+		if ((month < 1) || (month > 12)) {
+			return Integer.MIN_VALUE;
+		}
+		return isEnd ? toEpochDay(year, month, getDaysInMonth(year, month))
+				: toEpochDay(year, month, 1);
+	}
+
+	private static boolean isLeapYear(int year) {
+		return ((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0));
+	}
+
+	/**
+	 * Grows the bitmap so that it covers the given range of dates
+	 */
+	private void ensureCapacity(int fromDay, int toDay) {
+		if (words.length == 0) {
+			baseDay = fromDay & ~63;
+			words = new long[((toDay - baseDay) >>> 6) + 1];
+			return;
+		}
+
+		int newBaseDay = Math.min(baseDay, fromDay & ~63);
+		int endDay = Math.max(baseDay + (words.length << 6) - 1, toDay);
+		int newLength = ((endDay - newBaseDay) >>> 6) + 1;
+		if ((newBaseDay == baseDay) && (newLength == words.length)) {
+			return;
+		}
+
+		long newWords[] = new long[newLength];
+		System.arraycopy(words, 0, newWords, (baseDay - newBaseDay) >>> 6,
+				words.length);
+		baseDay = newBaseDay;
+		words = newWords;
+	}
+
+	/**
+	 * Finds the next bit at or after the given one which is set (or cleared)
+	 * 
+	 * @return the index of the bit or the total number of bits if there is
+	 *         none
+	 */
+	private int nextBit(int fromBit, boolean isSet) {
+		int totalBits = words.length << 6;
+		if (fromBit >= totalBits) {
+			return totalBits;
+		}
+
+		int wordIdx = fromBit >>> 6;
+		long word = (isSet ? words[wordIdx] : ~words[wordIdx])
+				& (-1L << fromBit);
+		while (word == 0) {
+			if (++wordIdx >= words.length) {
+				return totalBits;
+			}
+			word = isSet ? words[wordIdx] : ~words[wordIdx];
+		}
+		return (wordIdx << 6) + Long.numberOfTrailingZeros(word);
+	}
+}
@@ -25,56 +25,72 @@ import java.io.FileFilter;
  * <b>FileDateFilter Class</b> </br> Used to filter out Raw Traffic Data Files
  * which should no longer be included when we are (re)generating a Traffic
  * Historical Data File from scratch. Basically, all files falling within the
- * "DatesCovered" tag of the HistData file are avoided.
+ * "DatesCovered" tag of the HistData file are avoided. </br></br>The tag is
+ * parsed once into a DateIntervalSet, so checking a file only needs to read
+ * the date off its name.
  * 
  * @author francis
  * 
  */
 public class FileDateFilter implements FileFilter {
+	private static final String RECORD_FILE_SUFFIX = "_TrafficRec.txt";
 
-	private String filterStr[];
+	private DateIntervalSet excludedDates;
 
 	public FileDateFilter(String f) {
-		filterStr = f.split(",");
+		excludedDates = DateIntervalSet.parse(f);
+	}
+
+	public FileDateFilter(DateIntervalSet excludedDates) {
+		this.excludedDates = excludedDates;
 	}
 
 	@Override
 	public boolean accept(File file) {
 		String fnStr = file.getName();
 
-		if (fnStr.contains("_TrafficRec.txt") == false) {
+		if (fnStr.endsWith(RECORD_FILE_SUFFIX) == false) {
 			return false;
 		}
 
-		String fnSplit[] = fnStr.split("_");
-
-		if (fnSplit.length != 3) {
+		/* Expect exactly "[date]_[time]_TrafficRec.txt" */
+		int firstSep = fnStr.indexOf('_');
+		int secondSep = fnStr.indexOf('_', firstSep + 1);
+		if (secondSep != fnStr.length() - RECORD_FILE_SUFFIX.length()) {
 			return false;
 		}
 
-		for (int i = 0; i < filterStr.length; i++) {
-			if (filterStr[i].equals("")) {
-				continue;
-			}
-
-			if (filterStr[i].contains("-")) {
-				String rangeStr[] = filterStr[i].split("-");
-
-				/* Perform range test */
-				int highRange = Integer.parseInt(rangeStr[1].trim());
-				int lowRange = Integer.parseInt(rangeStr[0].trim());
-				int compVal = Integer.parseInt(fnSplit[0].trim());
-
-				if ((compVal >= lowRange) && (compVal <= highRange)) {
-					return false;
-				}
-			} else {
-				if (fnSplit[0].contains(filterStr[i])) {
-					return false;
-				}
-			}
+		if (firstSep != 8) {
+			return true;
 		}
+		return (excludedDates.contains(DateIntervalSet.toEpochDay(fnStr, 0)) == false);
+	}
+
+	/**
+	 * Checks whether a date falls within the filter
+	 * 
+	 * @param dateStr
+	 *            - the date string (e.g. "20130901")
+	 * @return true if files for this date should be avoided
+	 */
+	public boolean isDateExcluded(String dateStr) {
+		return excludedDates.contains(DateIntervalSet.toEpochDay(dateStr, 0));
+	}
 
-		return true;
+	/**
+	 * Checks whether every date of a month falls within the filter, in which
+	 * case there is no need to look at the files for that month at all
+	 * 
+	 * @param year
+	 *            - the year (e.g. 2013)
+	 * @param month
+	 *            - the month (1 to 12)
+	 * @return true if files for the whole month should be avoided
+	 */
+	public boolean isMonthExcluded(int year, int month) {
+		return excludedDates.containsRange(
+				DateIntervalSet.toEpochDay(year, month, 1),
+				DateIntervalSet.toEpochDay(year, month,
+						DateIntervalSet.getDaysInMonth(year, month)));
 	}
 }
@@ -1,20 +1,48 @@
 package com.atlach.TrafficDataAggregator;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.PushbackInputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.zip.DeflaterOutputStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 import com.atlach.TrafficDataAggregator.DataObjects.*;
+import com.atlach.TrafficDataAggregator.LineDataCodec.LineDataBuffer;
 
 /* 	Copyright (C) 2013	Francis T., Zara P.
  * 
@@ -36,7 +64,10 @@ import com.atlach.TrafficDataAggregator.DataObjects.*;
 
 /**
  * <b>FileSystemInterface Class</b> </br> Handles all interactions involving the
- * various files used by the program and the filesystem itself
+ * various files used by the program and the filesystem itself. </br></br>Line
+ * data in Part and Hist Data files is written either as compressed line data
+ * strings (the default) or as packed records (see LineDataCodec). Both can be
+ * read back regardless of the setting, even when mixed within one file.
  * 
  * @author francis
  * 
@@ -45,9 +76,209 @@ public class FileSystemInterface {
 	public static final int STATUS_OK = 0;
 	public static final int STATUS_FAILED = -1;
 
+	/* Write packed records, can be turned on with -Dmmda.records.packed=true */
+	public static final String PACKED_RECORDS_PROPERTY = "mmda.records.packed";
+
+	/* Packed records may hold any byte, so these files are read byte-for-char */
+	private static final Charset RECORD_CHARSET = Charset.forName("ISO-8859-1");
+
+	/* Hist Data File format to write, can be picked with -Dmmda.hist.format=2 */
+	public static final String HIST_FORMAT_PROPERTY = "mmda.hist.format";
+	public static final int HIST_FORMAT_V1 = 1;
+	public static final int HIST_FORMAT_V2 = 2;
+
+	/* v2 files start with these bytes, which neither kind of v1 file can */
+	private static final byte HIST_V2_MAGIC[] = { 'M', 'M', 'H', 'D' };
+	private static final int HIST_V2_VERSION = 2;
+	private static final int HIST_V2_BLOCK_LENGTH = HistData.HOUR_SLOTS
+			* LineDataCodec.LINE_DATA_LENGTH;
+
+	/* Number of Deflate/Inflate threads, can be set with -Dmmda.hist.threads=N */
+	public static final String HIST_THREADS_PROPERTY = "mmda.hist.threads";
+
+	/* Preset Deflate dictionary, can be set with -Dmmda.hist.dictionary=FILE */
+	public static final String HIST_DICTIONARY_PROPERTY = "mmda.hist.dictionary";
+
+	/* zlib stream header, the same as DeflaterOutputStream's default Deflater */
+	private static final byte ZLIB_HEADER[] = { (byte) 0x78, (byte) 0x9C };
+	/* Header of a file written with a preset dictionary, not a zlib stream */
+	private static final byte HIST_DICTIONARY_MAGIC[] = { 'M', 'M', 'H', 'Z' };
+	private static final int HIST_DICTIONARY_VERSION = 1;
+
+	private boolean usePackedRecords = false;
+	private int histFormat = HIST_FORMAT_V1;
+	private int parallelism = 1;
+	private byte histDictionary[] = null;
+	private int histDictionaryId = 0;
+
+	public FileSystemInterface() {
+		usePackedRecords = Boolean.getBoolean(PACKED_RECORDS_PROPERTY);
+		setHistDataFormat(Integer.getInteger(HIST_FORMAT_PROPERTY,
+				HIST_FORMAT_V1));
+		setParallelism(Integer.getInteger(HIST_THREADS_PROPERTY, Runtime
+				.getRuntime().availableProcessors()));
+
+		String dictionaryFileName = System
+				.getProperty(HIST_DICTIONARY_PROPERTY);
+		if (dictionaryFileName != null) {
+			try {
+				byte dictionary[] = loadHistDataDictionary(dictionaryFileName);
+				setHistDataDictionary(dictionary);
+			} catch (IOException e) {
+				System.out
+						.println("Warning: Could not load Hist Data dictionary: "
+								+ dictionaryFileName);
+				e.printStackTrace();
+			}
+		}
+	}
+
 	/*****************************************************************************************/
 	/** PUBLIC METHODS **/
 	/*****************************************************************************************/
+	/**
+	 * Selects the format used when writing line data to Part and Hist Data
+	 * files
+	 * 
+	 * @param shouldPack
+	 *            - true to write packed records, false to write compressed line
+	 *            data strings
+	 */
+	public void setPackedRecords(boolean shouldPack) {
+		usePackedRecords = shouldPack;
+	}
+
+	/**
+	 * @return true if line data is written to Part and Hist Data files as
+	 *         packed records
+	 */
+	public boolean isUsingPackedRecords() {
+		return usePackedRecords;
+	}
+
+	/**
+	 * Selects the format used when writing Hist Data Files. Files in either
+	 * format can always be read. </br></br>HIST_FORMAT_V1 is the original
+	 * line-oriented text format, Deflate compressed as a whole if asked to.
+	 * HIST_FORMAT_V2 is a binary format: a header, a directory giving the
+	 * offset and length of each tag's block, then one block of 24 fixed-width
+	 * hourly records (LINE_DATA_LENGTH bytes each) per tag, so a single tag can
+	 * be loaded with one seek and one read. v2 files are never Deflate
+	 * compressed.
+	 * 
+	 * @param format
+	 *            - HIST_FORMAT_V1 or HIST_FORMAT_V2
+	 */
+	public void setHistDataFormat(int format) {
+		if ((format != HIST_FORMAT_V1) && (format != HIST_FORMAT_V2)) {
+			System.out.println("Warning: Unknown Hist Data File format: "
+					+ format + "!");
+			format = HIST_FORMAT_V1;
+		}
+		histFormat = format;
+	}
+
+	/**
+	 * @return the format used when writing Hist Data Files
+	 */
+	public int getHistDataFormat() {
+		return histFormat;
+	}
+
+	/**
+	 * Sets the number of threads used for compressing the tag blocks of a
+	 * Hist Data File when it is written, and for inflating and parsing them
+	 * when the whole file is loaded.
+	 * 
+	 * @param parallelism
+	 *            - the number of threads to use (at least 1)
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = Math.max(parallelism, 1);
+	}
+
+	/**
+	 * Sets a preset Deflate dictionary for compressed v1 Hist Data Files (see
+	 * HistDataDictionaryTrainer). </br></br>Files written with a dictionary
+	 * are not zlib streams: they start with their own header carrying the
+	 * dictionary ID (the Adler-32 of the dictionary), and have each tag block
+	 * deflated as a complete raw stream of its own, primed with the
+	 * dictionary. Reading them back needs the same dictionary.
+	 * 
+	 * @param dictionary
+	 *            - the dictionary, or null to write files without one
+	 */
+	public void setHistDataDictionary(byte dictionary[]) {
+		histDictionary = dictionary;
+		histDictionaryId = (dictionary != null) ? getDictionaryId(dictionary)
+				: 0;
+	}
+
+	/**
+	 * @return the ID of the preset Deflate dictionary, or 0 if there is none
+	 */
+	public int getHistDataDictionaryId() {
+		return histDictionaryId;
+	}
+
+	/**
+	 * Reads a preset Deflate dictionary from a file
+	 * 
+	 * @param dictionaryFileName
+	 *            - the name of the dictionary file
+	 * @return the dictionary
+	 * @throws IOException
+	 */
+	public static byte[] loadHistDataDictionary(String dictionaryFileName)
+			throws IOException {
+		return Files.readAllBytes(new File(dictionaryFileName).toPath());
+	}
+
+	/**
+	 * Computes the ID of a preset Deflate dictionary the way zlib does
+	 * 
+	 * @param dictionary
+	 *            - the dictionary
+	 * @return the Adler-32 of the dictionary
+	 */
+	public static int getDictionaryId(byte dictionary[]) {
+		Adler32 adler = new Adler32();
+		adler.update(dictionary);
+		return (int) adler.getValue();
+	}
+
+	/**
+	 * Checks which format a Hist Data File is in
+	 * 
+	 * @param histDataFileName
+	 *            - the name of the Hist Data File
+	 * @return HIST_FORMAT_V2 if the file starts with the v2 header,
+	 *         HIST_FORMAT_V1 otherwise (including when there is no such file)
+	 */
+	public static int getHistDataFileFormat(String histDataFileName) {
+		File histDataFile = new File(histDataFileName);
+		if (histDataFile.length() < HIST_V2_MAGIC.length) {
+			return HIST_FORMAT_V1;
+		}
+
+		byte magic[] = new byte[HIST_V2_MAGIC.length];
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(
+					histDataFile));
+			try {
+				in.readFully(magic);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return HIST_FORMAT_V1;
+		}
+
+		return Arrays.equals(magic, HIST_V2_MAGIC) ? HIST_FORMAT_V2
+				: HIST_FORMAT_V1;
+	}
+
 	/**
 	 * Extracts a particular tag string for the given date
 	 * 
@@ -162,8 +393,17 @@ public class FileSystemInterface {
 				continue;
 			}
 
+			/* Dates are only kept as strings in the file itself */
+			String dateStr = lineStr[0].trim();
+			int epochDay = DateIntervalSet.toEpochDay(dateStr, 0);
+			if ((dateStr.length() != 8) || (epochDay == Integer.MIN_VALUE)) {
+				System.out.println("[loadTagsetFile] Warning: Invalid date! ("
+						+ dateStr + ")");
+				continue;
+			}
+
 			/* Add a new TagInfo object to the list */
-			tagInfoList.add(new TagInfo(lineStr[0].trim(), lineStr[1].trim()));
+			tagInfoList.add(new TagInfo(epochDay, lineStr[1].trim()));
 		}
 
 		if (tagInfoList.size() == 0) {
@@ -208,7 +448,8 @@ public class FileSystemInterface {
 			wr = new BufferedWriter(new OutputStreamWriter(fOut));
 
 			for (int i = 0; i < tagInfoList.size(); i++) {
-				wr.write(tagInfoList.get(i).date);
+				wr.write(DateIntervalSet
+						.toDateString(tagInfoList.get(i).epochDay));
 				wr.write(":");
 				wr.write(tagInfoList.get(i).tagset);
 				wr.newLine();
@@ -259,7 +500,8 @@ public class FileSystemInterface {
 
 		try {
 			fInp = new FileInputStream(partFile);
-			rd = new BufferedReader(new InputStreamReader(fInp));
+			rd = new BufferedReader(new InputStreamReader(fInp,
+					RECORD_CHARSET));
 
 			String line = "";
 			String timestamp = "";
@@ -316,8 +558,30 @@ public class FileSystemInterface {
 			return null;
 		}
 
+		if (getHistDataFileFormat(histDataFileName) == HIST_FORMAT_V2) {
+			try {
+				HistDataV2Directory dir = readHistDataV2Directory(histDataFile);
+				return new HistDataFileInfo(dir.datesCovered, dir.tagList);
+			} catch (IOException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+
+		HistDataIndex index = HistDataIndex.load(histDataFile, isCompressed);
+		if (index != null) {
+			if (!index.hasContentTag) {
+				System.out
+						.println("WARNING: [Content] tag not found for this HistData file!");
+			} else {
+				System.out
+						.println("INFO: [Content] tag found for this HistData file.");
+			}
+			return index.getFileInfo();
+		}
+
 		FileInputStream fInp = null;
-		InflaterInputStream iInp = null;
+		InputStream iInp = null;
 		HistDataFileInfo hdFileInfo = null;
 
 		try {
@@ -326,10 +590,12 @@ public class FileSystemInterface {
 
 			// Wrap a BufferedReader around the InputStream
 			if (isCompressed) {
-				iInp = new InflaterInputStream(fInp);
-				rd = new BufferedReader(new InputStreamReader(iInp));
+				iInp = openHistDataInput(fInp);
+				rd = new BufferedReader(new InputStreamReader(iInp,
+						RECORD_CHARSET));
 			} else {
-				rd = new BufferedReader(new InputStreamReader(fInp));
+				rd = new BufferedReader(new InputStreamReader(fInp,
+						RECORD_CHARSET));
 			}
 
 			String line = "";
@@ -434,18 +700,29 @@ public class FileSystemInterface {
 			return null;
 		}
 
+		if (getHistDataFileFormat(histDataFileName) == HIST_FORMAT_V2) {
+			return loadHistDataV2Tag(loadFile, targetTagStr);
+		}
+
+		HistDataIndex index = HistDataIndex.load(loadFile, isCompressed);
+		if (index != null) {
+			return loadHistDataBlock(loadFile, index, targetTagStr);
+		}
+
 		BufferedReader rd = null;
 		FileInputStream fInp = null;
-		InflaterInputStream iInp = null;
+		InputStream iInp = null;
 
 		try {
 			fInp = new FileInputStream(loadFile);
 
 			if (isCompressed) {
-				iInp = new InflaterInputStream(fInp);
-				rd = new BufferedReader(new InputStreamReader(iInp));
+				iInp = openHistDataInput(fInp);
+				rd = new BufferedReader(new InputStreamReader(iInp,
+						RECORD_CHARSET));
 			} else {
-				rd = new BufferedReader(new InputStreamReader(fInp));
+				rd = new BufferedReader(new InputStreamReader(fInp,
+						RECORD_CHARSET));
 			}
 
 			boolean shouldExtractData = false;
@@ -463,7 +740,7 @@ public class FileSystemInterface {
 					 */
 					if (tagStr.equals(targetTagStr)) {
 						shouldExtractData = true;
-						histData = new HistData("UNKNOWN", tagStr);
+						histData = new HistData(HistData.UNKNOWN_DATE, tagStr);
 						continue;
 					} else {
 						shouldExtractData = false;
@@ -475,19 +752,14 @@ public class FileSystemInterface {
 					continue;
 				}
 
-				String lineStr[] = line.split(":");
-				if (lineStr.length != 2) {
+				/* Create a temporary LineInfo object */
+				LineInfo lineInfo = parseLineInfo(line);
+				if (lineInfo == null) {
 					continue;
 				}
 
-				/* Create a temporary LineInfo object */
-				LineInfo lineInfo = new LineInfo(lineStr[0], lineStr[1]);
-
-				/*
-				 * Some kind of mechanism to insert this properly to the data
-				 * list
-				 */
-				DataFileManager.insertToDataList(lineInfo, histData.dataList);
+				/* Put it in the slot for its hour */
+				histData.putLineInfo(lineInfo);
 			}
 
 			/* If histData is still null, then the tag has not been found */
@@ -539,18 +811,31 @@ public class FileSystemInterface {
 			histDataList = new ArrayList<HistData>();
 		}
 
+		if (getHistDataFileFormat(histDataFileName) == HIST_FORMAT_V2) {
+			loadHistDataV2File(loadFile, histDataList);
+			return;
+		}
+
+		HistDataIndex index = HistDataIndex.load(loadFile, isCompressed);
+		if (index != null) {
+			loadHistDataBlocks(loadFile, index, histDataList);
+			return;
+		}
+
 		BufferedReader rd = null;
 		FileInputStream fInp = null;
-		InflaterInputStream iInp = null;
+		InputStream iInp = null;
 
 		try {
 			fInp = new FileInputStream(loadFile);
 
 			if (isCompressed) {
-				iInp = new InflaterInputStream(fInp);
-				rd = new BufferedReader(new InputStreamReader(iInp));
+				iInp = openHistDataInput(fInp);
+				rd = new BufferedReader(new InputStreamReader(iInp,
+						RECORD_CHARSET));
 			} else {
-				rd = new BufferedReader(new InputStreamReader(fInp));
+				rd = new BufferedReader(new InputStreamReader(fInp,
+						RECORD_CHARSET));
 			}
 
 			boolean isFileBodyReached = false;
@@ -591,23 +876,18 @@ public class FileSystemInterface {
 						}
 					}
 					if (hd == null) {
-						hd = new HistData("UNKNOWN", tagStr);
+						hd = new HistData(HistData.UNKNOWN_DATE, tagStr);
 						isNewHistDataObject = true;
 					}
 				}
 
-				String lineStr[] = line.split(":");
-				if (lineStr.length != 2) {
+				LineInfo lineInfo = parseLineInfo(line);
+				if (lineInfo == null) {
 					continue;
 				}
 
-				LineInfo lineInfo = new LineInfo(lineStr[0], lineStr[1]);
-
-				/*
-				 * Some kind of mechanism to insert this properly to the data
-				 * list
-				 */
-				DataFileManager.insertToDataList(lineInfo, hd.dataList);
+				/* Put it in the slot for its hour */
+				hd.putLineInfo(lineInfo);
 			}
 
 			/* If hd has content, then save it to the histDataList */
@@ -633,7 +913,7 @@ public class FileSystemInterface {
 	/**
 	 * Prepares the HistData file to be written on by writing the relevant
 	 * header information to the file first prior to allowing any Historical
-	 * Data content to be written.
+	 * Data content to be written. The content already in the file is kept.
 	 * 
 	 * @param histDataFileName
 	 *            - the name of the Hist Data File
@@ -648,119 +928,181 @@ public class FileSystemInterface {
 	public void prepareHistDataFile(String histDataFileName,
 			HistDataFileInfo fileInfo, boolean shouldCompress)
 			throws IOException {
-		File saveFile = new File(histDataFileName);
+		saveHistDataFile(histDataFileName, fileInfo, new ArrayList<HistData>(),
+				shouldCompress);
+	}
 
-		FileOutputStream fOut = null;
-		DeflaterOutputStream dOut = null;
-		BufferedWriter wr = null;
-		File tempFile = null;
+	/**
+	 * Writes the header and the given HistData objects to a Hist Data File in
+	 * a single pass. The existing file is streamed through once: its header is
+	 * replaced, the content of tags which are not in histDataList is copied
+	 * over as is and the content of each HistData object is written after it.
+	 * Everything goes to a temporary file first which then replaces the Hist
+	 * Data File.
+	 * 
+	 * @param histDataFileName
+	 *            - the name of the Hist Data File
+	 * @param fileInfo
+	 *            - a HistDataFileInfo object containing the header information
+	 *            to be written. Tags only found in the old header are kept.
+	 *            If null, the old header is kept as is.
+	 * @param histDataList
+	 *            - the HistData objects for the tags which have changed. Tags
+	 *            with no data are removed from the content.
+	 * @param shouldCompress
+	 *            - a boolean indicating whether the Hist Data File is in
+	 *            DEFLATER compressed format
+	 * @return an integer indicating the exit status for this method
+	 * @throws IOException
+	 */
+	public int saveHistDataFile(String histDataFileName,
+			HistDataFileInfo fileInfo, List<HistData> histDataList,
+			boolean shouldCompress) throws IOException {
+		File saveFile = new File(histDataFileName);
+		File tempFile = new File(histDataFileName + ".tmp");
 
 		if (fileInfo == null) {
+			if (!saveFile.exists()) {
+				System.out
+						.println("[saveHistDataFile] ERROR: No header to keep, file not found!");
+				return STATUS_FAILED;
+			}
+		} else if ((fileInfo.tagList == null)
+				|| (fileInfo.tagList.size() == 0)) {
 			System.out
-					.println("[prepareHistDataFile] ERROR: HistDataFileInfo is NULL!");
-			return;
-		}
-
-		if ((fileInfo.tagList == null) || (fileInfo.tagList.size() == 0)) {
-			System.out
-					.println("[prepareHistDataFile] ERROR: There seem to be no new tags to "
+					.println("[saveHistDataFile] ERROR: There seem to be no new tags to "
 							+ "add to the file.");
-			return;
+			return STATUS_FAILED;
 		}
 
-		try {
-			HistDataFileInfo oldHistInfo = getHistDataFileInfo(
-					histDataFileName, shouldCompress);
-
-			List<String> distinctTagList = new ArrayList<String>();
-			if ((oldHistInfo != null) && (oldHistInfo.tagList != null)) {
+		/*
+		 * If a tag shows up more than once, the last one wins, the same as if
+		 * each had been saved one after the other
+		 */
+		Map<String, HistData> changedMap = new LinkedHashMap<String, HistData>();
+		for (int i = 0; i < histDataList.size(); i++) {
+			HistData hd = histDataList.get(i);
+			changedMap.remove(hd.tagset);
+			changedMap.put(hd.tagset, hd);
+		}
 
-				/* Filter out redundant tags from oldHistInfo */
-				for (int i = 0; i < oldHistInfo.tagList.size(); i++) {
-					boolean isDistinct = true;
-					String tagStr = oldHistInfo.tagList.get(i);
+		/* Only v1 to v1 can be streamed, anything else is rebuilt */
+		if ((histFormat != HIST_FORMAT_V1)
+				|| (getHistDataFileFormat(histDataFileName) != HIST_FORMAT_V1)) {
+			return rebuildHistDataFile(saveFile, shouldCompress, saveFile,
+					shouldCompress, fileInfo, changedMap);
+		}
 
-					for (int j = 0; j < fileInfo.tagList.size(); j++) {
-						if (fileInfo.tagList.get(j).equals(tagStr)) {
-							isDistinct = false;
-							break;
-						}
-					}
-					if (isDistinct) {
-						System.out.println("Tag is distinct: " + tagStr);
-						distinctTagList.add(tagStr);
-					}
-				}
-			}
-			distinctTagList.addAll(fileInfo.tagList);
+		FileInputStream fInp = null;
+		InputStream iInp = null;
+		BufferedReader rd = null;
+		FileOutputStream fOut = null;
+		HistDataWriter hw = null;
+		int result = STATUS_FAILED;
 
-			if (!saveFile.exists()) {
-				saveFile.createNewFile();
-			} else {
-				/* Offload file content to a temp file first */
+		try {
+			if (saveFile.exists()) {
+				fInp = new FileInputStream(saveFile);
 				if (shouldCompress) {
-					tempFile = createTempDecompressedFile("temp_hdf.txt",
-							saveFile, false);
+					iInp = openHistDataInput(fInp);
+					rd = new BufferedReader(new InputStreamReader(iInp,
+							RECORD_CHARSET));
 				} else {
-					tempFile = createTempUncompressedFile("temp_hdf.txt",
-							saveFile, false);
+					rd = new BufferedReader(new InputStreamReader(fInp,
+							RECORD_CHARSET));
 				}
 			}
 
-			fOut = new FileOutputStream(saveFile);
+			fOut = new FileOutputStream(tempFile);
+			hw = new HistDataWriter(fOut, shouldCompress, parallelism,
+					histDictionary);
 
-			/* Compression option */
-			dOut = null;
-			if (shouldCompress) {
-				dOut = new DeflaterOutputStream(fOut);
-				wr = new BufferedWriter(new OutputStreamWriter(dOut));
+			/* Header, up to and including the [Content] line */
+			if (fileInfo == null) {
+				copyHistDataHeader(rd, hw);
 			} else {
-				wr = new BufferedWriter(new OutputStreamWriter(fOut));
+				List<String> oldTagList = new ArrayList<String>();
+				if (rd != null) {
+					readHistDataHeader(rd, oldTagList);
+				}
+				writeHistDataHeader(hw, fileInfo, oldTagList);
 			}
 
-			/*
-			 * Assume that the datesCovered string has been pre-processed and,
-			 * therefore, no longer requires any handling from us here.
-			 */
-			wr.write("[DatesCovered]" + fileInfo.datesCovered);
-			wr.newLine();
-			wr.write("[TagIndexStart]");
-			wr.newLine();
-
-			for (int i = 0; i < distinctTagList.size(); i++) {
-				wr.write(distinctTagList.get(i));
-				wr.newLine();
+			/* Content of the tags which have not changed */
+			if (rd != null) {
+				copyHistDataContent(rd, hw, changedMap.keySet());
+			} else {
+				hw.wr.newLine();
 			}
 
-			wr.write("[TagIndexEnd]");
-			wr.newLine();
-			wr.newLine();
-			wr.write("[Content]");
-			wr.newLine();
+			/* Content of the tags which have changed */
+			writeHistDataContent(hw, changedMap.values());
 
-			if (tempFile != null) {
-				writeInputFromTempFile(tempFile, wr, "NULL");
-				wr.flush();
-				/* Delete the tempFile since we no longer need it */
-				tempFile.delete();
-			} else {
-				wr.newLine();
-				wr.flush();
-			}
+			hw.finish();
+			result = STATUS_OK;
 		} catch (IOException e) {
 			e.printStackTrace();
 		} finally {
-			if (wr != null) {
-				wr.close();
+			if (rd != null) {
+				rd.close();
+			}
+			if (iInp != null) {
+				iInp.close();
+			}
+			if (fInp != null) {
+				fInp.close();
 			}
-			if (dOut != null) {
-				dOut.finish();
-				dOut.close();
+			if (hw != null) {
+				hw.close();
 			}
 			if (fOut != null) {
 				fOut.close();
 			}
 		}
+
+		if (result != STATUS_OK) {
+			tempFile.delete();
+			return result;
+		}
+
+		Files.move(tempFile.toPath(), saveFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		hw.index.save(saveFile);
+		return STATUS_OK;
+	}
+
+	/**
+	 * Converts a Hist Data File to the format selected with
+	 * setHistDataFormat(). The source file may be in either format. Records
+	 * without line data are dropped on the way, like in any other rebuild
+	 * (see HistDataFileConverter).
+	 * 
+	 * @param srcFileName
+	 *            - the name of the Hist Data File to convert
+	 * @param isCompressed
+	 *            - a boolean indicating whether the source file is in DEFLATER
+	 *            compressed format (ignored for v2 files)
+	 * @param dstFileName
+	 *            - the name of the Hist Data File to write
+	 * @param shouldCompress
+	 *            - a boolean indicating whether a v1 target file should be
+	 *            DEFLATER compressed
+	 * @return an integer indicating the exit status for this method
+	 * @throws IOException
+	 */
+	public int convertHistDataFile(String srcFileName, boolean isCompressed,
+			String dstFileName, boolean shouldCompress) throws IOException {
+		File srcFile = new File(srcFileName);
+		if (!srcFile.exists()) {
+			System.out
+					.println("[convertHistDataFile] ERROR: Hist Data File Not Found!");
+			return STATUS_FAILED;
+		}
+
+		return rebuildHistDataFile(srcFile, isCompressed,
+				new File(dstFileName), shouldCompress, null,
+				new LinkedHashMap<String, HistData>());
 	}
 
 	/**
@@ -803,6 +1145,18 @@ public class FileSystemInterface {
 		return dataList;
 	}
 
+	/**
+	 * Attempts to match a location string to an index based on the array of
+	 * locations stored in Constants.java
+	 * 
+	 * @param matchLocStr
+	 *            - the location string to match
+	 * @return the matched index or a failed exit status (-1)
+	 */
+	public static short matchToLocIndex(String matchLocStr) {
+		return LocationIndex.lookup(matchLocStr);
+	}
+
 	/**
 	 * Loads information from a Traffic Part Data File into a List of LineInfo
 	 * objects.
@@ -828,23 +1182,22 @@ public class FileSystemInterface {
 
 		try {
 			fInp = new FileInputStream(partFile);
-			rd = new BufferedReader(new InputStreamReader(fInp));
+			rd = new BufferedReader(new InputStreamReader(fInp,
+					RECORD_CHARSET));
 
 			String line = "";
 			while ((line = rd.readLine()) != null) {
-				String lineStr[] = line.split(":");
-				if (lineStr.length != 2) {
+				/* Create a temporary LineInfo object */
+				LineInfo lineInfo = parseLineInfo(line);
+				if (lineInfo == null) {
 					continue;
 				}
 
-				/* Create a temporary LineInfo object */
-				LineInfo lineInfo = new LineInfo(lineStr[0], lineStr[1]);
-
 				/*
-				 * Some kind of mechanism to insert this properly to the data
-				 * list
+				 * Keep the entries in file order, entries for the same hour
+				 * are merged in this order later on
 				 */
-				DataFileManager.insertToDataList(lineInfo, dataList);
+				dataList.add(lineInfo);
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -890,14 +1243,15 @@ public class FileSystemInterface {
 			 * partFile
 			 */
 			fOut = new FileOutputStream(partFile, true);
-			wr = new BufferedWriter(new OutputStreamWriter(fOut));
+			wr = new BufferedWriter(new OutputStreamWriter(fOut,
+					RECORD_CHARSET));
 
 			/* Write the timestamp */
 			wr.write(timestamp);
 			wr.write(":");
 
 			/* Write the compressed line date string */
-			wr.write(lineDataStr);
+			wr.write(formatLineData(lineDataStr));
 			wr.newLine();
 
 			wr.flush();
@@ -928,323 +1282,866 @@ public class FileSystemInterface {
 	 * @param tagStr
 	 *            - the tag to associate with this List of Line Info objects
 	 * @param shouldWriteTag
-	 *            - a boolean indicating whether we should write the tag as part
-	 *            of the content data
+	 *            - unused; the tag is always written as part of the content
+	 *            data
 	 * @param shouldCompress
 	 *            - a boolean indicating whether the Hist Data File is in
 	 *            DEFLATER
 	 * @throws IOException
+	 * @deprecated Rewrites the whole file for a single tag. Use
+	 *             saveHistDataFile() to save all changed tags at once.
 	 */
+	@Deprecated
 	public void saveDataToFile(String histDataFileName,
 			List<LineInfo> lineInfoList, String tagStr, boolean shouldWriteTag,
 			boolean shouldCompress) throws IOException {
-		File saveFile = new File(histDataFileName);
-
-		if (!saveFile.exists()) {
+		if (!new File(histDataFileName).exists()) {
 			return;
 		}
 
-		FileOutputStream fOut = null;
-		DeflaterOutputStream dOut = null;
-		BufferedWriter wr = null;
-		File tempFile = null;
-
-		try {
-
-			/*
-			 * Need to inflate the existing file's contents to an external file
-			 * first if we want to append to the compressed file
-			 */
-			if (shouldCompress) {
-				tempFile = createTempDecompressedFile("temp.txt", saveFile,
-						true);
-			} else {
-				tempFile = createTempUncompressedFile("temp.txt", saveFile,
-						true);
-			}
-
-			fOut = new FileOutputStream(saveFile);
-
-			/* Compression option */
-			if (shouldCompress) {
-				dOut = new DeflaterOutputStream(fOut);
-				wr = new BufferedWriter(new OutputStreamWriter(dOut));
-
-				/*
-				 * Write data back from our tempFile to our saveFile using the
-				 * writer
-				 */
-				writeInputFromTempFile(tempFile, wr, tagStr);
-				/* Delete the file since we no longer need it */
-				tempFile.delete();
-			} else {
-				wr = new BufferedWriter(new OutputStreamWriter(fOut));
-
-				/*
-				 * Write data back from our tempFile to our saveFile using the
-				 * writer
-				 */
-				writeInputFromTempFile(tempFile, wr, tagStr);
-				/* Delete the file since we no longer need it */
-				tempFile.delete();
-			}
-
-			Iterator<LineInfo> iter = lineInfoList.iterator();
-			boolean isFirstLine = true;
-
-			while (iter.hasNext()) {
-				LineInfo tempLineInfoObj = iter.next();
-
-				if (isFirstLine && shouldWriteTag) {
-					wr.write("> [" + tagStr + "]");
-					wr.newLine();
-					isFirstLine = false;
-				}
-
-				wr.write(tempLineInfoObj.timestamp + ":"
-						+ tempLineInfoObj.lineDataStr);
-				wr.newLine();
-				wr.flush();
-			}
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			if (wr != null) {
-				wr.close();
-			}
-			if (dOut != null) {
-				dOut.finish();
-				dOut.close();
-			}
-			if (fOut != null) {
-				fOut.close();
-			}
+		HistData hd = new HistData(HistData.UNKNOWN_DATE, tagStr);
+		for (int i = 0; i < lineInfoList.size(); i++) {
+			hd.putLineInfo(lineInfoList.get(i));
 		}
+
+		List<HistData> histDataList = new ArrayList<HistData>();
+		histDataList.add(hd);
+		saveHistDataFile(histDataFileName, null, histDataList, shouldCompress);
 	}
 
 	/*****************************************************************************************/
 	/** PRIVATE METHODS **/
 	/*****************************************************************************************/
 	/**
-	 * Creates a temporary decompressed file where we will store header and
-	 * content info from the intermediate Hist Data file while writing in new
-	 * data. </br></br> <b>NOTE:</b> There might be a better way of achieving
-	 * this effect by simply using the underlying filesystem's file "copy"
-	 * command. However, since we do not necessarily know what system we will be
-	 * running in, this workaround was used instead.
+	 * Converts a line data string into the format selected for writing
 	 * 
-	 * @param tempFileName
-	 *            - the name of the Temp File
-	 * @param originalFile
-	 *            - the name of the Original Compressed HistData file
-	 * @param shouldCopyHeader
-	 *            - a boolean indicating whether we should copy the header info
-	 * @return a File object referring to the created Temp File
-	 * @throws IOException
+	 * @param lineDataStr
+	 *            - the line data string (compressed or packed)
+	 * @return the line data string to be written
 	 */
-	private File createTempDecompressedFile(String tempFileName,
-			File originalFile, boolean shouldCopyHeader) throws IOException {
-		File tempFile = new File(tempFileName);
-
-		FileInputStream fInp = null;
-		InflaterInputStream iInp = null;
-		FileOutputStream fOut = null;
-		BufferedWriter wr = null;
-		BufferedReader rd = null;
+	private String formatLineData(String lineDataStr) {
+		if (usePackedRecords) {
+			return LineDataCodec.packString(lineDataStr);
+		}
 
+		/* Packed records loaded from an existing file are converted back */
+		if ((lineDataStr.length() > 0)
+				&& (lineDataStr.charAt(0) == LineDataCodec.PACKED_MARKER)) {
+			return LineDataCodec.compressString(LineDataCodec
+					.decompressString(lineDataStr));
+		}
+		return lineDataStr;
+	}
+
+	/**
+	 * Parses a "[time]:[line data]" record line into a LineInfo object
+	 * 
+	 * @param line
+	 *            - the record line
+	 * @return the LineInfo object or null if the line is malformed
+	 */
+	private static LineInfo parseLineInfo(String line) {
+		String lineStr[] = line.split(":");
+		if (lineStr.length != 2) {
+			return null;
+		}
+
+		int minuteOfDay = LineInfo.toMinuteOfDay(lineStr[0]);
+		if (minuteOfDay == LineInfo.INVALID_TIME) {
+			System.out.println("Warning: Invalid timestamp! (" + lineStr[0]
+					+ ")");
+			return null;
+		}
+		return new LineInfo(minuteOfDay, lineStr[1]);
+	}
+
+	/**
+	 * Rebuilds a Hist Data File in memory: the whole content of the source
+	 * file is loaded, the changed tags are put in and everything is written
+	 * out in the selected format. Used whenever the Hist Data File cannot
+	 * simply be streamed through (i.e. anything involving v2 files).
+	 * 
+	 * @param srcFile
+	 *            - the Hist Data File to start from, which may not exist yet
+	 * @param isCompressed
+	 *            - whether a v1 source file is DEFLATER compressed
+	 * @param dstFile
+	 *            - the Hist Data File to write (may be the same as srcFile)
+	 * @param shouldCompress
+	 *            - whether a v1 target file should be DEFLATER compressed
+	 * @param fileInfo
+	 *            - the new header information, or null to keep the old one
+	 * @param changedMap
+	 *            - the HistData objects for the tags which have changed
+	 * @return an integer indicating the exit status for this method
+	 * @throws IOException
+	 */
+	private int rebuildHistDataFile(File srcFile, boolean isCompressed,
+			File dstFile, boolean shouldCompress, HistDataFileInfo fileInfo,
+			Map<String, HistData> changedMap) throws IOException {
+		String datesCovered = "";
+		List<String> tagList = new ArrayList<String>();
+		List<HistData> contentList = new ArrayList<HistData>();
+
+		if (srcFile.exists()) {
+			HistDataFileInfo oldInfo = getHistDataFileInfo(srcFile.getPath(),
+					isCompressed);
+			if (oldInfo == null) {
+				return STATUS_FAILED;
+			}
+			datesCovered = oldInfo.datesCovered;
+			tagList.addAll(oldInfo.tagList);
+			loadHistDataFile(srcFile.getPath(), contentList, isCompressed);
+		}
+
+		/* Tags only found in the old header are kept, in front */
+		if (fileInfo != null) {
+			datesCovered = fileInfo.datesCovered;
+			tagList.removeAll(fileInfo.tagList);
+			tagList.addAll(fileInfo.tagList);
+		}
+
+		/* Changed tags replace their old content and go last */
+		for (int i = contentList.size() - 1; i >= 0; i--) {
+			if (changedMap.containsKey(contentList.get(i).tagset)) {
+				contentList.remove(i);
+			}
+		}
+		contentList.addAll(changedMap.values());
+
+		File tempFile = new File(dstFile.getPath() + ".tmp");
+		HistDataIndex index = null;
+		int result = STATUS_FAILED;
 		try {
-			if (!tempFile.exists()) {
-				tempFile.createNewFile();
+			if (histFormat == HIST_FORMAT_V2) {
+				writeHistDataV2File(tempFile, datesCovered, tagList,
+						contentList);
 			} else {
-				tempFile.delete();
-				tempFile.createNewFile();
+				index = writeHistDataV1File(tempFile, new HistDataFileInfo(
+						datesCovered, tagList), contentList, shouldCompress);
 			}
+			result = STATUS_OK;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 
-			fInp = new FileInputStream(originalFile);
+		if (result != STATUS_OK) {
+			tempFile.delete();
+			return result;
+		}
 
-			iInp = new InflaterInputStream(fInp);
-			fOut = new FileOutputStream(tempFile);
-			wr = new BufferedWriter(new OutputStreamWriter(fOut));
-			rd = new BufferedReader(new InputStreamReader(iInp));
+		Files.move(tempFile.toPath(), dstFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
 
-			String line = "";
-			boolean hasReadContentTag = false;
-			while ((line = rd.readLine()) != null) {
-				if ((!shouldCopyHeader) && (!hasReadContentTag)) {
-					if (line.contains("[Content]")) {
-						hasReadContentTag = true;
-					}
-					continue;
-				}
-				wr.write(line);
+		/* v2 files carry their own directory */
+		if (index != null) {
+			index.save(dstFile);
+		} else {
+			HistDataIndex.delete(dstFile);
+		}
+		return STATUS_OK;
+	}
+
+	/**
+	 * Writes a complete v1 Hist Data File
+	 * 
+	 * @param file
+	 *            - the file to write
+	 * @param fileInfo
+	 *            - the header information to be written
+	 * @param contentList
+	 *            - the HistData objects to be written, in order
+	 * @param shouldCompress
+	 *            - whether the file should be DEFLATER compressed
+	 * @return the index of the file, to be saved once it is in place
+	 * @throws IOException
+	 */
+	private HistDataIndex writeHistDataV1File(File file,
+			HistDataFileInfo fileInfo, List<HistData> contentList,
+			boolean shouldCompress) throws IOException {
+		FileOutputStream fOut = new FileOutputStream(file);
+		HistDataWriter hw = new HistDataWriter(fOut, shouldCompress,
+				parallelism, histDictionary);
+
+		try {
+			writeHistDataHeader(hw, fileInfo, new ArrayList<String>());
+			hw.wr.newLine();
+			writeHistDataContent(hw, contentList);
+			hw.finish();
+		} finally {
+			hw.close();
+			fOut.close();
+		}
+		return hw.index;
+	}
+
+	/**
+	 * Writes the content of HistData objects to a v1 Hist Data File. Objects
+	 * with no data are left out.
+	 * 
+	 * @param hw
+	 *            - the writer for the Hist Data File
+	 * @param histDataList
+	 *            - the HistData objects to be written, in order
+	 * @throws IOException
+	 */
+	private void writeHistDataContent(HistDataWriter hw,
+			Collection<HistData> histDataList) throws IOException {
+		BufferedWriter wr = hw.wr;
+		for (HistData hd : histDataList) {
+			List<LineInfo> lineInfoList = hd.getDataList();
+			if (lineInfoList.size() == 0) {
+				continue;
+			}
+
+			hw.startBlock(hd.tagset);
+			wr.write("> [" + hd.tagset + "]");
+			wr.newLine();
+			for (int i = 0; i < lineInfoList.size(); i++) {
+				LineInfo lineInfo = lineInfoList.get(i);
+				wr.write(lineInfo.getTimeString() + ":"
+						+ formatLineData(lineInfo.lineDataStr));
 				wr.newLine();
-				wr.flush();
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			if (fInp != null) {
-				fInp.close();
+		}
+	}
+
+	/**
+	 * Writes a complete v2 Hist Data File. The directory lists the header tags
+	 * first, followed by any tags which only have content. Blocks are written
+	 * in the order of contentList; tags with no data get no block.
+	 * 
+	 * @param file
+	 *            - the file to write
+	 * @param datesCovered
+	 *            - the dates covered string
+	 * @param tagList
+	 *            - the tags listed in the header
+	 * @param contentList
+	 *            - the HistData objects to be written
+	 * @throws IOException
+	 */
+	private void writeHistDataV2File(File file, String datesCovered,
+			List<String> tagList, List<HistData> contentList)
+			throws IOException {
+		/* Encode the blocks first to find out which have any data */
+		List<HistData> blockList = new ArrayList<HistData>();
+		List<byte[]> blocks = new ArrayList<byte[]>();
+		List<Integer> hourMasks = new ArrayList<Integer>();
+		for (int i = 0; i < contentList.size(); i++) {
+			byte block[] = new byte[HIST_V2_BLOCK_LENGTH];
+			int hourMask = encodeHistDataV2Block(contentList.get(i), block);
+			if (hourMask != 0) {
+				blockList.add(contentList.get(i));
+				blocks.add(block);
+				hourMasks.add(hourMask);
 			}
-			if (iInp != null) {
-				iInp.close();
+		}
+
+		HistDataV2Directory dir = new HistDataV2Directory(datesCovered);
+		for (int i = 0; i < tagList.size(); i++) {
+			dir.add(tagList.get(i));
+		}
+		for (int i = 0; i < blockList.size(); i++) {
+			if (dir.indexOf(blockList.get(i).tagset) < 0) {
+				dir.add(blockList.get(i).tagset);
 			}
-			if (fOut != null) {
-				fOut.close();
+		}
+
+		/* Blocks start right after the directory, whose size is now known */
+		long offset = dir.getLength();
+		for (int i = 0; i < blockList.size(); i++) {
+			int idx = dir.indexOf(blockList.get(i).tagset);
+			dir.hourMasks[idx] = hourMasks.get(i);
+			dir.offsets[idx] = offset;
+			dir.lengths[idx] = HIST_V2_BLOCK_LENGTH;
+			offset += HIST_V2_BLOCK_LENGTH;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			dir.write(out);
+			for (int i = 0; i < blocks.size(); i++) {
+				out.write(blocks.get(i));
 			}
-			if (wr != null) {
-				wr.close();
+			out.flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Encodes the hourly records of a HistData object into a v2 block
+	 * 
+	 * @param hd
+	 *            - the HistData object
+	 * @param block
+	 *            - a zeroed array of HIST_V2_BLOCK_LENGTH bytes to receive the
+	 *            records
+	 * @return the hour mask; bit N is set if there is a record for hour N
+	 */
+	private int encodeHistDataV2Block(HistData hd, byte block[]) {
+		LineDataBuffer lineData = new LineDataBuffer();
+		int hourMask = 0;
+
+		for (int hour = 0; hour < HistData.HOUR_SLOTS; hour++) {
+			LineInfo lineInfo = hd.getLineInfo(hour);
+			if (lineInfo == null) {
+				continue;
 			}
-			if (wr != null) {
-				rd.close();
+
+			LineDataCodec.decompress(lineInfo.lineDataStr, lineData);
+			if (!LineDataCodec.toRecord(lineData, block, hour
+					* LineDataCodec.LINE_DATA_LENGTH)) {
+				System.out
+						.println("[writeHistDataV2File] Warning: Dropped invalid line "
+								+ "data for " + hd.tagset + " at "
+								+ lineInfo.getTimeString());
+				continue;
 			}
+			hourMask |= (1 << hour);
 		}
 
-		return tempFile;
+		return hourMask;
 	}
 
 	/**
+	 * Decodes a v2 block back into a HistData object
 	 * 
-	 * Creates a temporary file where we will store header and content info from
-	 * the intermediate Hist Data file while writing in new data. This method
-	 * specifically targets uncompressed Hist Data files. </br></br>
-	 * <b>NOTE:</b> There might be a better way of achieving this effect by
-	 * simply using the underlying filesystem's file "copy" command. However,
-	 * since we do not necessarily know what system we will be running in, this
-	 * workaround was used instead.
+	 * @param tagStr
+	 *            - the tag of the block
+	 * @param hourMask
+	 *            - the hour mask of the block
+	 * @param block
+	 *            - the records of the block
+	 * @return the HistData object
+	 */
+	private HistData decodeHistDataV2Block(String tagStr, int hourMask,
+			byte block[]) {
+		HistData hd = new HistData(HistData.UNKNOWN_DATE, tagStr);
+		LineDataBuffer lineData = new LineDataBuffer();
+		LineDataBuffer compLineData = new LineDataBuffer();
+
+		for (int hour = 0; hour < HistData.HOUR_SLOTS; hour++) {
+			if ((hourMask & (1 << hour)) == 0) {
+				continue;
+			}
+
+			if (!LineDataCodec.fromRecord(block, hour
+					* LineDataCodec.LINE_DATA_LENGTH, lineData)) {
+				System.out
+						.println("[decodeHistDataV2Block] Warning: Invalid record for "
+								+ tagStr + " at hour " + hour);
+				continue;
+			}
+			LineDataCodec.compress(lineData, compLineData);
+			hd.hourSlots[hour] = new LineInfo(hour * 60,
+					compLineData.toString());
+		}
+
+		return hd;
+	}
+
+	/**
+	 * Reads the header and directory of a v2 Hist Data File
 	 * 
-	 * @param tempFileName
-	 *            - the name of the Temp File
-	 * @param originalFile
-	 *            - the name of the Original HistData file
-	 * @param shouldCopyHeader
-	 *            - a boolean indicating whether we should copy the header info
-	 * @return a File object referring to the created Temp File
+	 * @param histDataFile
+	 *            - the Hist Data File
+	 * @return the directory
+	 * @throws IOException
+	 *             if the file is not a valid v2 file
 	 */
-	private File createTempUncompressedFile(String tempFileName,
-			File originalFile, boolean shouldCopyHeader) throws IOException {
-		File tempFile = new File(tempFileName);
+	private HistDataV2Directory readHistDataV2Directory(File histDataFile)
+			throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(histDataFile)));
+		try {
+			return HistDataV2Directory.read(in, histDataFile.length());
+		} finally {
+			in.close();
+		}
+	}
 
-		FileInputStream fInp = null;
-		FileOutputStream fOut = null;
-		BufferedWriter wr = null;
-		BufferedReader rd = null;
+	/**
+	 * Loads a single tag from a v2 Hist Data File
+	 * 
+	 * @return the HistData object or null if there is no data for the tag
+	 * @throws IOException
+	 */
+	private HistData loadHistDataV2Tag(File histDataFile, String targetTagStr)
+			throws IOException {
+		HistDataV2Directory dir = readHistDataV2Directory(histDataFile);
+		int idx = dir.indexOf(targetTagStr);
+		if ((idx < 0) || (dir.lengths[idx] == 0)) {
+			System.out
+					.println("[loadHistDataTagFromFile] Warning: Tag not found! ("
+							+ targetTagStr + ")");
+			return null;
+		}
 
+		byte block[] = new byte[HIST_V2_BLOCK_LENGTH];
+		RandomAccessFile raf = new RandomAccessFile(histDataFile, "r");
 		try {
-			if (!tempFile.exists()) {
-				tempFile.createNewFile();
-			} else {
-				tempFile.delete();
-				tempFile.createNewFile();
-			}
+			raf.seek(dir.offsets[idx]);
+			raf.readFully(block);
+		} finally {
+			raf.close();
+		}
 
-			fInp = new FileInputStream(originalFile);
+		return decodeHistDataV2Block(targetTagStr, dir.hourMasks[idx], block);
+	}
 
-			fOut = new FileOutputStream(tempFile);
-			wr = new BufferedWriter(new OutputStreamWriter(fOut));
-			rd = new BufferedReader(new InputStreamReader(fInp));
+	/**
+	 * Loads every tag from a v2 Hist Data File, in the order of their blocks.
+	 * Tags already in histDataList get the loaded data put into them.
+	 * 
+	 * @throws IOException
+	 */
+	private void loadHistDataV2File(File histDataFile,
+			List<HistData> histDataList) throws IOException {
+		HistDataV2Directory dir = readHistDataV2Directory(histDataFile);
 
-			String line = "";
-			boolean hasReadContentTag = false;
-			while ((line = rd.readLine()) != null) {
-				if ((!shouldCopyHeader) && (!hasReadContentTag)) {
-					if (line.contains("[Content]")) {
-						hasReadContentTag = true;
+		List<Integer> blockOrder = new ArrayList<Integer>();
+		for (int i = 0; i < dir.tagList.size(); i++) {
+			if (dir.lengths[i] != 0) {
+				blockOrder.add(i);
+			}
+		}
+		Collections.sort(blockOrder, new BlockOffsetComparator(dir.offsets));
+
+		byte block[] = new byte[HIST_V2_BLOCK_LENGTH];
+		RandomAccessFile raf = new RandomAccessFile(histDataFile, "r");
+		try {
+			for (int i = 0; i < blockOrder.size(); i++) {
+				int idx = blockOrder.get(i);
+				raf.seek(dir.offsets[idx]);
+				raf.readFully(block);
+
+				String tagStr = dir.tagList.get(idx);
+				HistData loaded = decodeHistDataV2Block(tagStr,
+						dir.hourMasks[idx], block);
+
+				/* Locate this tagset in the histDataList */
+				HistData hd = null;
+				for (int j = 0; j < histDataList.size(); j++) {
+					if (histDataList.get(j).tagset.equals(tagStr)) {
+						hd = histDataList.get(j);
 					}
+				}
+				if (hd == null) {
+					histDataList.add(loaded);
 					continue;
 				}
-				wr.write(line);
-				wr.newLine();
-				wr.flush();
+				for (int hour = 0; hour < HistData.HOUR_SLOTS; hour++) {
+					if (loaded.hourSlots[hour] != null) {
+						hd.hourSlots[hour] = loaded.hourSlots[hour];
+					}
+				}
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
 		} finally {
-			if (fInp != null) {
-				fInp.close();
+			raf.close();
+		}
+	}
+
+	/**
+	 * Opens the content of a compressed v1 Hist Data File for reading,
+	 * whether or not it was written with a preset dictionary
+	 * 
+	 * @param fInp
+	 *            - the input stream of the Hist Data File
+	 * @return the inflated input stream
+	 * @throws IOException
+	 *             if the file needs a dictionary we do not have
+	 */
+	private InputStream openHistDataInput(InputStream fInp) throws IOException {
+		PushbackInputStream pInp = new PushbackInputStream(fInp,
+				HIST_DICTIONARY_MAGIC.length);
+		byte magic[] = new byte[HIST_DICTIONARY_MAGIC.length];
+		int len = 0;
+		while (len < magic.length) {
+			int n = pInp.read(magic, len, magic.length - len);
+			if (n < 0) {
+				break;
+			}
+			len += n;
+		}
+		if ((len < magic.length)
+				|| !Arrays.equals(magic, HIST_DICTIONARY_MAGIC)) {
+			pInp.unread(magic, 0, len);
+			return new InflaterInputStream(pInp);
+		}
+
+		DataInputStream dInp = new DataInputStream(pInp);
+		int version = dInp.readUnsignedByte();
+		if (version != HIST_DICTIONARY_VERSION) {
+			throw new IOException("Unsupported Hist Data File version: "
+					+ version);
+		}
+		int dictionaryId = dInp.readInt();
+		return new DictionaryInflaterInputStream(pInp,
+				getDictionary(dictionaryId));
+	}
+
+	/**
+	 * @return the dictionary a Hist Data File was written with, or null if it
+	 *         was written without one
+	 * @throws IOException
+	 *             if we do not have that dictionary
+	 */
+	private byte[] getDictionaryFor(HistDataIndex index) throws IOException {
+		if (!index.hasDictionary) {
+			return null;
+		}
+		return getDictionary(index.dictionaryId);
+	}
+
+	private byte[] getDictionary(int dictionaryId) throws IOException {
+		if ((histDictionary == null) || (histDictionaryId != dictionaryId)) {
+			throw new IOException("Hist Data File needs dictionary "
+					+ String.format("%08x", dictionaryId)
+					+ ", set with -D" + HIST_DICTIONARY_PROPERTY);
+		}
+		return histDictionary;
+	}
+
+	/**
+	 * Loads a single tag from a v1 Hist Data File by reading only its block,
+	 * as located by the index
+	 * 
+	 * @return the HistData object or null if there is no data for the tag
+	 * @throws IOException
+	 */
+	private HistData loadHistDataBlock(File histDataFile, HistDataIndex index,
+			String targetTagStr) throws IOException {
+		int block = index.findBlock(targetTagStr);
+		if (block < 0) {
+			System.out
+					.println("[loadHistDataTagFromFile] Warning: Tag not found! ("
+							+ targetTagStr + ")");
+			return null;
+		}
+
+		long start = index.getBlockStart(block);
+		byte data[] = new byte[(int) (index.getBlockEnd(block) - start)];
+		RandomAccessFile raf = new RandomAccessFile(histDataFile, "r");
+		try {
+			raf.seek(start);
+			raf.readFully(data);
+		} finally {
+			raf.close();
+		}
+
+		return parseHistDataBlock(data, 0, data.length, index.isCompressed,
+				getDictionaryFor(index), targetTagStr);
+	}
+
+	/**
+	 * Loads every tag from a v1 Hist Data File using its index. The blocks are
+	 * inflated and parsed in parallel, then put into histDataList in file
+	 * order, the same as when the file is scanned.
+	 * 
+	 * @throws IOException
+	 */
+	private void loadHistDataBlocks(File histDataFile, HistDataIndex index,
+			List<HistData> histDataList) throws IOException {
+		byte data[] = new byte[(int) histDataFile.length()];
+		RandomAccessFile raf = new RandomAccessFile(histDataFile, "r");
+		try {
+			raf.readFully(data);
+		} finally {
+			raf.close();
+		}
+
+		byte dictionary[] = getDictionaryFor(index);
+		HistData results[] = new HistData[index.getBlockCount()];
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new LoadBlocksTask(data, index, dictionary, results, 0,
+					results.length));
+		} catch (RuntimeException e) {
+			throw new IOException(e);
+		} finally {
+			pool.shutdown();
+		}
+
+		for (int i = 0; i < results.length; i++) {
+			/* Locate this tagset in the histDataList */
+			HistData hd = null;
+			for (int j = 0; j < histDataList.size(); j++) {
+				if (histDataList.get(j).tagset.equals(results[i].tagset)) {
+					hd = histDataList.get(j);
+				}
 			}
-			if (fOut != null) {
-				fOut.close();
+			if (hd == null) {
+				histDataList.add(results[i]);
+				continue;
 			}
-			if (wr != null) {
-				wr.close();
+
+			List<LineInfo> lineInfoList = results[i].getDataList();
+			for (int j = 0; j < lineInfoList.size(); j++) {
+				hd.putLineInfo(lineInfoList.get(j));
 			}
-			if (wr != null) {
-				rd.close();
+		}
+	}
+
+	/**
+	 * Parses a single tag block of a v1 Hist Data File
+	 * 
+	 * @param data
+	 *            - the bytes of the file
+	 * @param start
+	 *            - the offset of the block
+	 * @param end
+	 *            - the offset where the block ends
+	 * @param isCompressed
+	 *            - whether the block needs to be inflated first
+	 * @param dictionary
+	 *            - the preset dictionary of the file, or null
+	 * @param tagStr
+	 *            - the tag the block is expected to have
+	 * @return the HistData object for the block
+	 * @throws IOException
+	 *             if the block does not start with the expected tag
+	 */
+	private static HistData parseHistDataBlock(byte data[], int start,
+			int end, boolean isCompressed, byte dictionary[], String tagStr)
+			throws IOException {
+		/* Each compressed block starts right after a flush point */
+		if (isCompressed) {
+			data = inflateBlock(data, start, end, dictionary);
+			start = 0;
+			end = data.length;
+		}
+
+		BufferedReader rd = new BufferedReader(new InputStreamReader(
+				new ByteArrayInputStream(data, start, end - start),
+				RECORD_CHARSET));
+		String line = rd.readLine();
+		if ((line == null) || !line.equals("> [" + tagStr + "]")) {
+			throw new IOException("Hist Data File index is out of date for: "
+					+ tagStr);
+		}
+
+		HistData histData = new HistData(HistData.UNKNOWN_DATE, tagStr);
+		while ((line = rd.readLine()) != null) {
+			/* Stop at the next tag, in case it was not indexed */
+			if ((line.length() > 0) && (line.charAt(0) == '>')) {
+				break;
 			}
+
+			LineInfo lineInfo = parseLineInfo(line);
+			if (lineInfo == null) {
+				continue;
+			}
+			histData.putLineInfo(lineInfo);
 		}
 
-		return tempFile;
+		return histData;
 	}
 
 	/**
-	 * Writes the contents of the generated Hist Data temporary file back to the
-	 * intermediate Hist Data file while skipping the particular tags which have
-	 * just been updated.
+	 * Inflates a block of raw Deflate data which ends at a flush point (or at
+	 * the end of the stream)
 	 * 
-	 * @param tempFile
-	 *            - the name of the Temp File
-	 * @param writeTarget
-	 *            - BufferedWriter object to use for writing
-	 * @param tagSkipStr
-	 *            - a String specifying which tag should be skipped
+	 * @param dictionary
+	 *            - the preset dictionary of the file, or null
 	 * @throws IOException
 	 */
-	private void writeInputFromTempFile(File tempFile,
-			BufferedWriter writeTarget, String tagSkipStr) throws IOException {
-		if (!tempFile.exists()) {
-			return;
+	private static byte[] inflateBlock(byte data[], int start, int end,
+			byte dictionary[]) throws IOException {
+		Inflater inflater = new Inflater(true);
+		if (dictionary != null) {
+			inflater.setDictionary(dictionary);
 		}
-
-		FileInputStream fInp = null;
-		BufferedReader rd = null;
+		ByteArrayOutputStream bOut = new ByteArrayOutputStream(
+				(end - start) * 4);
+		byte buf[] = new byte[8192];
 
 		try {
-			/* Stream input from our tempfile */
-			fInp = new FileInputStream(tempFile);
-			rd = new BufferedReader(new InputStreamReader(fInp));
+			inflater.setInput(data, start, end - start);
+			while (!inflater.finished() && !inflater.needsInput()) {
+				int len = inflater.inflate(buf);
+				bOut.write(buf, 0, len);
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
 
-			String line = "";
-			boolean isSkipping = false;
+		return bOut.toByteArray();
+	}
 
-			while ((line = rd.readLine()) != null) {
+	/**
+	 * Reads the header of a Hist Data File, up to and including the [Content]
+	 * line
+	 * 
+	 * @param rd
+	 *            - the reader for the Hist Data File
+	 * @param tagList
+	 *            - receives the tags listed in the header
+	 * @throws IOException
+	 */
+	private void readHistDataHeader(BufferedReader rd, List<String> tagList)
+			throws IOException {
+		String line = "";
+		boolean isLiftingTags = false;
+		while ((line = rd.readLine()) != null) {
+			if (line.contains("[TagIndexStart]")) {
+				isLiftingTags = true;
+				continue;
+			}
+			if (line.contains("[TagIndexEnd]")) {
+				isLiftingTags = false;
+				continue;
+			}
+			if (isLiftingTags) {
+				tagList.add(line.trim());
+			}
+			if (line.contains("[Content]")) {
+				return;
+			}
+		}
+	}
 
-				/* Skip read-write over the tag being currently written */
-				if ((line.length() > 0) && (line.charAt(0) == '>')) {
-					String lineTag = line.substring(line.indexOf('[') + 1,
-							line.lastIndexOf(']'));
+	/**
+	 * Copies the header of a Hist Data File as is, up to and including the
+	 * [Content] line
+	 * 
+	 * @param rd
+	 *            - the reader for the Hist Data File
+	 * @param hw
+	 *            - the writer for the new Hist Data File
+	 * @throws IOException
+	 */
+	private void copyHistDataHeader(BufferedReader rd, HistDataWriter hw)
+			throws IOException {
+		String line = "";
+		while ((line = rd.readLine()) != null) {
+			hw.writeHeaderLine(line);
+			if (line.contains("[Content]")) {
+				return;
+			}
+		}
+	}
 
-					System.out.println("skip str: [" + tagSkipStr + "]");
-					System.out.println("line tag: [" + lineTag + "]");
+	/**
+	 * Writes a new Hist Data File header. Tags from the old header which are
+	 * not in the new one are listed first.
+	 * 
+	 * @param hw
+	 *            - the writer for the new Hist Data File
+	 * @param fileInfo
+	 *            - the header information to be written
+	 * @param oldTagList
+	 *            - the tags listed in the old header
+	 * @throws IOException
+	 */
+	private void writeHistDataHeader(HistDataWriter hw,
+			HistDataFileInfo fileInfo, List<String> oldTagList)
+			throws IOException {
+		List<String> distinctTagList = new ArrayList<String>();
 
-					if ((tagSkipStr != null) && (lineTag.equals(tagSkipStr))) {
-						System.out
-								.println("[writeInputFromTempFile] Skipping ["
-										+ tagSkipStr + "]...");
-						isSkipping = true;
-					} else {
-						isSkipping = false;
-					}
+		/* Filter out redundant tags from the old header */
+		for (int i = 0; i < oldTagList.size(); i++) {
+			String tagStr = oldTagList.get(i);
+			if (fileInfo.tagList.contains(tagStr) == false) {
+				System.out.println("Tag is distinct: " + tagStr);
+				distinctTagList.add(tagStr);
+			}
+		}
+		distinctTagList.addAll(fileInfo.tagList);
+
+		/*
+		 * Assume that the datesCovered string has been pre-processed and,
+		 * therefore, no longer requires any handling from us here.
+		 */
+		hw.writeHeaderLine("[DatesCovered]" + fileInfo.datesCovered);
+		hw.writeHeaderLine("[TagIndexStart]");
+
+		for (int i = 0; i < distinctTagList.size(); i++) {
+			hw.writeHeaderLine(distinctTagList.get(i));
+		}
+
+		hw.writeHeaderLine("[TagIndexEnd]");
+		hw.writeHeaderLine("");
+		hw.writeHeaderLine("[Content]");
+	}
+
+	/**
+	 * Copies the rest of a Hist Data File over to the new one while skipping
+	 * the content of the given tags. Records are copied as they are, except
+	 * that packed records are converted back to text if packing is off.
+	 * 
+	 * @param rd
+	 *            - the reader for the Hist Data File, past its header
+	 * @param hw
+	 *            - the writer for the new Hist Data File
+	 * @param skippedTags
+	 *            - the tags whose content should not be copied
+	 * @throws IOException
+	 */
+	private void copyHistDataContent(BufferedReader rd, HistDataWriter hw,
+			Set<String> skippedTags) throws IOException {
+		BufferedWriter wr = hw.wr;
+		String line = "";
+		boolean isSkipping = false;
+
+		while ((line = rd.readLine()) != null) {
+			/* Each tag's content starts with a "> [tag]" line */
+			if ((line.length() > 0) && (line.charAt(0) == '>')) {
+				int tagStart = line.indexOf('[') + 1;
+				int tagEnd = line.lastIndexOf(']');
+				String lineTag = null;
+				if ((tagStart > 0) && (tagEnd >= tagStart)) {
+					lineTag = line.substring(tagStart, tagEnd);
 				}
 
+				isSkipping = (lineTag != null) && skippedTags.contains(lineTag);
 				if (isSkipping) {
-					continue;
+					System.out.println("[saveHistDataFile] Replacing ["
+							+ lineTag + "]...");
+				} else if (lineTag != null) {
+					hw.startBlock(lineTag);
 				}
+			}
 
-				writeTarget.write(line);
-				writeTarget.newLine();
+			if (isSkipping) {
+				continue;
 			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			fInp.close();
-			rd.close();
+
+			if (!usePackedRecords) {
+				line = unpackRecordLine(line);
+			}
+			wr.write(line);
+			wr.newLine();
+		}
+	}
+
+	/**
+	 * Converts a "[time]:[line data]" record line holding a packed record
+	 * back to text. Any other line is returned as is.
+	 * 
+	 * @param line
+	 *            - a line from the content of a Hist Data File
+	 * @return the line to be written
+	 */
+	private String unpackRecordLine(String line) {
+		int sepIdx = line.indexOf(':');
+		if ((sepIdx < 0) || (sepIdx + 1 >= line.length())
+				|| (line.charAt(sepIdx + 1) != LineDataCodec.PACKED_MARKER)) {
+			return line;
 		}
+
+		return line.substring(0, sepIdx + 1)
+				+ formatLineData(line.substring(sepIdx + 1));
 	}
 
 	/**
 	 * Parses the contents of a Raw Traffic Data File into a LineDataList object
+	 * using the byte-level TrafficFileParser
 	 * 
 	 * @param dataFile
 	 *            - a File object pertaining to the Raw Traffic Data File to be
@@ -1255,160 +2152,553 @@ public class FileSystemInterface {
 	 */
 	private LineDataList parseTrafficFileContents(File dataFile)
 			throws IOException {
-		if (dataFile.exists() == false) {
-			return null;
-		}
+		return TrafficFileParser.parseFile(dataFile);
+	}
 
-		FileInputStream tripFileStream = new FileInputStream(dataFile);
+	/*****************************************************************************************/
+	/** INTERNAL CLASSES **/
+	/*****************************************************************************************/
+	/**
+	 * <b>HistDataV2Directory Object</b> </br>Header and tag directory of a v2
+	 * Hist Data File. All values are big-endian: </br></br>"MMHD", version
+	 * (u16), flags (u16, always 0), dates covered (modified UTF-8), tag count
+	 * (int), then for each tag: the tag (modified UTF-8), hour mask (int),
+	 * block offset from the start of the file (long) and block length (int).
+	 * Tags with no data have a length of 0. Each block holds 24 records of
+	 * LINE_DATA_LENGTH bytes, one for each hour whether or not it is set in
+	 * the hour mask.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class HistDataV2Directory {
+		public String datesCovered;
+		public List<String> tagList = new ArrayList<String>();
+		public int hourMasks[] = new int[0];
+		public long offsets[] = new long[0];
+		public int lengths[] = new int[0];
+
+		public HistDataV2Directory(String datesCovered) {
+			this.datesCovered = datesCovered;
+		}
 
-		/* Parse the file into a LineDataList */
-		LineDataList ld = new LineDataList();
+		/**
+		 * Adds a tag with no data to the directory
+		 */
+		public void add(String tagStr) {
+			int n = tagList.size();
+			tagList.add(tagStr);
+			hourMasks = Arrays.copyOf(hourMasks, n + 1);
+			offsets = Arrays.copyOf(offsets, n + 1);
+			lengths = Arrays.copyOf(lengths, n + 1);
+		}
 
-		String tempLocStr;
-		short tempLoc;
-		String tempCondStr;
-		byte tempCondSB;
-		byte tempCondNB;
+		public int indexOf(String tagStr) {
+			return tagList.indexOf(tagStr);
+		}
 
-		String line = "";
-		int lineNum = 1;
+		/**
+		 * @return the number of bytes taken up by the header and directory
+		 * @throws IOException
+		 */
+		public int getLength() throws IOException {
+			ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bOut);
+			write(out);
+			out.flush();
+			return bOut.size();
+		}
 
-		// Wrap a BufferedReader around the InputStream
-		BufferedReader rd = new BufferedReader(new InputStreamReader(
-				tripFileStream, "UTF-8"));
+		public void write(DataOutputStream out) throws IOException {
+			out.write(HIST_V2_MAGIC);
+			out.writeShort(HIST_V2_VERSION);
+			out.writeShort(0);
+			out.writeUTF(datesCovered);
+			out.writeInt(tagList.size());
+			for (int i = 0; i < tagList.size(); i++) {
+				out.writeUTF(tagList.get(i));
+				out.writeInt(hourMasks[i]);
+				out.writeLong(offsets[i]);
+				out.writeInt(lengths[i]);
+			}
+		}
 
-		short prevLoc = -1;
-		// Read response until the end
-		while ((line = rd.readLine()) != null) {
+		/**
+		 * Reads the header and directory of a v2 Hist Data File, checking
+		 * that the blocks lie within the file
+		 */
+		public static HistDataV2Directory read(DataInputStream in,
+				long fileLength) throws IOException {
+			byte magic[] = new byte[HIST_V2_MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, HIST_V2_MAGIC)) {
+				throw new IOException("Not a v2 Hist Data File");
+			}
+			int version = in.readUnsignedShort();
+			if (version != HIST_V2_VERSION) {
+				throw new IOException("Unsupported Hist Data File version: "
+						+ version);
+			}
+			in.readUnsignedShort();
+
+			HistDataV2Directory dir = new HistDataV2Directory(in.readUTF());
+			int tagCount = in.readInt();
+			for (int i = 0; i < tagCount; i++) {
+				dir.add(in.readUTF());
+				dir.hourMasks[i] = in.readInt();
+				dir.offsets[i] = in.readLong();
+				dir.lengths[i] = in.readInt();
+
+				if ((dir.lengths[i] != 0)
+						&& ((dir.lengths[i] != HIST_V2_BLOCK_LENGTH)
+								|| (dir.offsets[i] < 0) || (dir.offsets[i]
+								+ dir.lengths[i] > fileLength))) {
+					throw new IOException("Invalid block for tag: "
+							+ dir.tagList.get(i));
+				}
+			}
+			return dir;
+		}
+	}
 
-			/* Skip lines with less than four fields */
-			if (line.split(",").length != 5) {
-				System.out
-						.println("[parseTrafficFileContents] Invalid line length encountered: "
-								+ line.split(",").length + "!");
-				continue;
+	/**
+	 * <b>HistDataWriter Object</b> </br>Writer for a v1 Hist Data File which
+	 * builds its HistDataIndex along the way. Tag blocks must be started with
+	 * startBlock() so their offsets can be recorded, and finish() must be
+	 * called once everything has been written. </br></br>Compressed files are
+	 * written the way pigz does it: each block is held back uncompressed until
+	 * finish(), then all blocks are deflated in parallel, each with its own
+	 * Deflater ending on a sync flush. Put together behind a zlib header and
+	 * followed by the Adler-32 of the whole content, they still make up a
+	 * single zlib stream which InflaterInputStream can read. </br></br>With a
+	 * preset dictionary, every block is a complete raw Deflate stream primed
+	 * with the dictionary, so that each one can still be inflated on its own
+	 * through the index. That is not a zlib stream, so the file starts with
+	 * HIST_DICTIONARY_MAGIC, a version and the dictionary ID instead of a zlib
+	 * header, and is read with a DictionaryInflaterInputStream.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class HistDataWriter {
+		public BufferedWriter wr;
+		public HistDataIndex index;
+		private OutputStream out;
+		private CountingOutputStream cOut = null;
+		private int parallelism;
+		private byte dictionary[];
+
+		/* Uncompressed blocks of a compressed file, starting with the header */
+		private List<byte[]> blocks = null;
+		private List<String> blockTags = null;
+		private ByteArrayOutputStream blockOut = null;
+
+		public HistDataWriter(OutputStream out, boolean shouldCompress,
+				int parallelism, byte dictionary[]) {
+			this.out = out;
+			this.parallelism = parallelism;
+			index = new HistDataIndex(shouldCompress);
+			if (shouldCompress) {
+				this.dictionary = dictionary;
+				if (dictionary != null) {
+					index.hasDictionary = true;
+					index.dictionaryId = getDictionaryId(dictionary);
+				}
+				blocks = new ArrayList<byte[]>();
+				blockTags = new ArrayList<String>();
+				blockOut = new ByteArrayOutputStream();
+				wr = new BufferedWriter(new OutputStreamWriter(blockOut,
+						RECORD_CHARSET));
+			} else {
+				cOut = new CountingOutputStream(out);
+				wr = new BufferedWriter(new OutputStreamWriter(cOut,
+						RECORD_CHARSET));
 			}
+		}
 
-			tempLocStr = (getCSVField(line, 0, lineNum) + ", " + getCSVField(
-					line, 1, lineNum)).replace("��", "n").replace("ñ", "n");
-			tempLoc = matchToLocIndex(tempLocStr);
-			if ((tempLoc > Constants.locStr.length) || (tempLoc < 0)) {
-				System.out
-						.println("[parseTrafficFileContents] Error: Invalid location code: "
-								+ tempLoc + "!");
-				System.out.println("[parseTrafficFileContents] 		> LocStr: "
-						+ tempLocStr + "!");
-				System.out.println("[parseTrafficFileContents] 		> Line: "
-						+ line + "!");
-				continue;
+		public void writeHeaderLine(String line) throws IOException {
+			wr.write(line);
+			wr.newLine();
+			index.addHeaderLine(line);
+		}
+
+		/**
+		 * Marks the start of a tag block
+		 */
+		public void startBlock(String tagStr) throws IOException {
+			wr.flush();
+			if (blocks == null) {
+				index.addBlock(tagStr, cOut.getCount());
+				return;
 			}
 
-			tempCondStr = getCSVField(line, 2, lineNum);
+			blocks.add(blockOut.toByteArray());
+			blockOut.reset();
+			blockTags.add(tagStr);
+		}
 
-			if ((tempCondStr == null) || (tempCondStr.equals(""))) {
-				tempCondStr = "0";
+		/**
+		 * Writes out whatever is still held back. For compressed files, this
+		 * is where the blocks are deflated and their offsets recorded.
+		 */
+		public void finish() throws IOException {
+			wr.flush();
+			if (blocks == null) {
+				return;
 			}
-			tempCondSB = (byte) (Integer.parseInt(tempCondStr));
 
-			if ((tempCondStr == null) || (tempCondStr.equals(""))) {
-				tempCondStr = "0";
+			blocks.add(blockOut.toByteArray());
+			blockOut.reset();
+
+			byte compressed[][] = new byte[blocks.size()][];
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				pool.invoke(new DeflateBlocksTask(blocks, dictionary,
+						compressed, 0, compressed.length));
+			} catch (RuntimeException e) {
+				throw new IOException(e);
+			} finally {
+				pool.shutdown();
 			}
-			tempCondNB = (byte) (Integer.parseInt(tempCondStr));
 
-			if ((tempLoc - prevLoc) > 1) {
-				while ((tempLoc - prevLoc) != 0) {
-					/*
-					 * Pre-increment the value of prevLoc (since we generally
-					 * start this at -1)
-					 */
-					prevLoc++;
-					/* Add the missing LineData object */
-					LineData ldt = new LineData(prevLoc, (byte) (0), (byte) (0));
-					ld.data.add(ldt);
+			DataOutputStream dOut = new DataOutputStream(out);
+			if (dictionary != null) {
+				dOut.write(HIST_DICTIONARY_MAGIC);
+				dOut.writeByte(HIST_DICTIONARY_VERSION);
+				dOut.writeInt(index.dictionaryId);
+			} else {
+				dOut.write(ZLIB_HEADER);
+			}
 
-					if ((prevLoc + 1) == tempLoc) {
-						break;
-					}
+			Adler32 adler = new Adler32();
+			long offset = dOut.size();
+			for (int i = 0; i < compressed.length; i++) {
+				if (i > 0) {
+					index.addBlock(blockTags.get(i - 1), offset);
 				}
+				dOut.write(compressed[i]);
+				offset += compressed[i].length;
+				adler.update(blocks.get(i));
 			}
 
-			LineData ldt = new LineData(tempLoc, tempCondSB, tempCondNB);
-			ld.data.add(ldt);
-			lineNum++;
-			prevLoc = tempLoc;
+			dOut.writeInt((int) adler.getValue());
+			dOut.flush();
 		}
 
-		tripFileStream.close();
+		public void close() throws IOException {
+			wr.close();
+		}
+	}
 
-		/*
-		 * Check if the final LineDataList is empty. - This would be the case if
-		 * the file were empty in the first place
-		 */
-		if (ld.data.size() == 0) {
-			return null;
+	/**
+	 * Fork/join task which deflates a range of Hist Data File blocks, each on
+	 * its own. Every block but the last ends on a sync flush so the next one
+	 * starts on a byte boundary; the last one ends the Deflate stream. With a
+	 * preset dictionary, each block is primed with it and ends its own
+	 * Deflate stream.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class DeflateBlocksTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private List<byte[]> blocks;
+		private byte dictionary[];
+		private byte compressed[][];
+		private int start;
+		private int end;
+
+		public DeflateBlocksTask(List<byte[]> blocks, byte dictionary[],
+				byte compressed[][], int start, int end) {
+			this.blocks = blocks;
+			this.dictionary = dictionary;
+			this.compressed = compressed;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= 1) {
+				if (start < end) {
+					compressed[start] = deflateBlock(blocks.get(start),
+							dictionary, start == blocks.size() - 1);
+				}
+				return;
+			}
+
+			int mid = (start + end) >>> 1;
+			invokeAll(new DeflateBlocksTask(blocks, dictionary, compressed,
+					start, mid), new DeflateBlocksTask(blocks, dictionary,
+					compressed, mid, end));
 		}
 
-		return ld; /* Return the filled LineDataList */
+		private static byte[] deflateBlock(byte data[], byte dictionary[],
+				boolean isLast) {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION,
+					true);
+			if (dictionary != null) {
+				deflater.setDictionary(dictionary);
+			}
+			ByteArrayOutputStream bOut = new ByteArrayOutputStream(
+					(data.length / 4) + 64);
+			byte buf[] = new byte[8192];
+
+			try {
+				deflater.setInput(data);
+				if (isLast || (dictionary != null)) {
+					deflater.finish();
+					while (!deflater.finished()) {
+						int len = deflater.deflate(buf);
+						bOut.write(buf, 0, len);
+					}
+				} else {
+					int len;
+					do {
+						len = deflater.deflate(buf, 0, buf.length,
+								Deflater.SYNC_FLUSH);
+						bOut.write(buf, 0, len);
+					} while (len == buf.length);
+				}
+			} finally {
+				deflater.end();
+			}
+
+			return bOut.toByteArray();
+		}
 	}
 
 	/**
-	 * Attempts to match a location string to an index based on the array of
-	 * locations stored in Constants.java
+	 * Fork/join task which inflates and parses a range of Hist Data File
+	 * blocks
+	 * 
+	 * @author francis
 	 * 
-	 * @param matchLocStr
-	 *            - the location string to match
-	 * @return the matched index or a failed exit status (-1)
 	 */
-	private short matchToLocIndex(String matchLocStr) {
-		for (int i = 0; i < Constants.locStr.length; i++) {
-			if (Constants.locStr[i].contains(matchLocStr) == true) {
-				return ((short) i);
+	static class LoadBlocksTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private byte data[];
+		private HistDataIndex index;
+		private byte dictionary[];
+		private HistData results[];
+		private int start;
+		private int end;
+
+		public LoadBlocksTask(byte data[], HistDataIndex index,
+				byte dictionary[], HistData results[], int start, int end) {
+			this.data = data;
+			this.index = index;
+			this.dictionary = dictionary;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start <= 1) {
+				if (start < end) {
+					try {
+						results[start] = parseHistDataBlock(data,
+								(int) index.getBlockStart(start),
+								(int) index.getBlockEnd(start),
+								index.isCompressed, dictionary,
+								index.getBlockTag(start));
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				return;
 			}
+
+			int mid = (start + end) >>> 1;
+			invokeAll(new LoadBlocksTask(data, index, dictionary, results,
+					start, mid), new LoadBlocksTask(data, index, dictionary,
+					results, mid, end));
 		}
-		return STATUS_FAILED;
 	}
 
 	/**
-	 * Gets a particular CSV field from a given line. This method is mostly used
-	 * for reading CSV files.
+	 * InputStream for the content of a Hist Data File written with a preset
+	 * dictionary, positioned right after its header and dictionary ID.
+	 * Each block is inflated as a Deflate stream of its own, primed with the
+	 * dictionary, until only the Adler-32 of the content is left.
+	 * 
+	 * @author francis
 	 * 
-	 * @param line
-	 *            - line containing CSV fields
-	 * @param field
-	 *            - index of the CSV field to obtain
-	 * @param lineNum
-	 *            - (Optional) used to indicate the line number for this line in
-	 *            the parsed CSV file
-	 * @return a string containing the value of the specified CSV field
 	 */
-	private String getCSVField(String line, int field, int lineNum) {
-		int startIdx = 0;
-		int endIdx = 0;
-		int fieldIdx = 0;
+	static class DictionaryInflaterInputStream extends InputStream {
+		/* Bytes needed to tell another block from the Adler-32 at the end */
+		private static final int TRAILER_LENGTH = 4;
+
+		private InputStream in;
+		private byte dictionary[];
+		private Inflater inflater = new Inflater(true);
+		private Adler32 adler = new Adler32();
+
+		private byte buf[] = new byte[8192];
+		private int bufPos = 0;
+		private int bufLimit = 0;
+		private boolean isInputDone = false;
+		private boolean isDone = false;
+
+		public DictionaryInflaterInputStream(InputStream in,
+				byte dictionary[]) {
+			this.in = in;
+			this.dictionary = dictionary;
+			inflater.setDictionary(dictionary);
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte b[] = new byte[1];
+			return (read(b, 0, 1) == 1) ? (b[0] & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte b[], int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
 
-		for (fieldIdx = 0; fieldIdx <= field; fieldIdx++) {
-			/* Update indices */
-			startIdx = (endIdx == 0) ? endIdx : endIdx + 1;
-			endIdx = line.indexOf(",", startIdx);
+			while (!isDone) {
+				if (inflater.finished()) {
+					/* Hand back what the inflater did not use */
+					bufPos = bufLimit - inflater.getRemaining();
+					nextBlock();
+					continue;
+				}
+
+				if (inflater.needsInput()) {
+					fill(1);
+					if (bufPos == bufLimit) {
+						throw new EOFException(
+								"Unexpected end of Hist Data File");
+					}
+					inflater.setInput(buf, bufPos, bufLimit - bufPos);
+					bufPos = bufLimit;
+				}
 
-			/* Perform sanity checks on our start and end indices */
-			if ((endIdx >= line.length()) || (startIdx > endIdx)
-					|| (startIdx < 0) || (endIdx < 0)) {
-				System.out.println("[getCSVField] Possibly incorrect indices ("
-						+ startIdx + ", " + endIdx + ") at line #" + lineNum);
-				return "";
+				int n;
+				try {
+					n = inflater.inflate(b, off, len);
+				} catch (DataFormatException e) {
+					throw new ZipException(e.getMessage());
+				}
+				if (n > 0) {
+					adler.update(b, off, n);
+					return n;
+				}
 			}
+			return -1;
 		}
 
-		/*
-		 * The ff condition should be true: fieldIdx == field+1; otherwise,
-		 * something went wrong
+		@Override
+		public void close() throws IOException {
+			inflater.end();
+			in.close();
+		}
+
+		/**
+		 * Moves on to the next block, or checks the Adler-32 if there are no
+		 * more blocks
+		 */
+		private void nextBlock() throws IOException {
+			fill(TRAILER_LENGTH + 1);
+			int available = bufLimit - bufPos;
+			if (available > TRAILER_LENGTH) {
+				inflater.reset();
+				inflater.setDictionary(dictionary);
+				return;
+			}
+
+			if (available < TRAILER_LENGTH) {
+				throw new EOFException("Unexpected end of Hist Data File");
+			}
+			int checksum = ((buf[bufPos] & 0xFF) << 24)
+					| ((buf[bufPos + 1] & 0xFF) << 16)
+					| ((buf[bufPos + 2] & 0xFF) << 8)
+					| (buf[bufPos + 3] & 0xFF);
+			if (checksum != (int) adler.getValue()) {
+				throw new ZipException("Hist Data File checksum mismatch");
+			}
+			bufPos = bufLimit;
+			isDone = true;
+		}
+
+		/**
+		 * Reads more input until at least the given number of bytes are
+		 * waiting or there is no more input
 		 */
-		if (fieldIdx != field + 1) {
-			System.out.println("[getCSVField] Something went wrong!");
-			return "";
+		private void fill(int needed) throws IOException {
+			if (bufLimit - bufPos >= needed) {
+				return;
+			}
+
+			System.arraycopy(buf, bufPos, buf, 0, bufLimit - bufPos);
+			bufLimit -= bufPos;
+			bufPos = 0;
+			while (!isInputDone && (bufLimit < needed)) {
+				int n = in.read(buf, bufLimit, buf.length - bufLimit);
+				if (n < 0) {
+					isInputDone = true;
+				} else {
+					bufLimit += n;
+				}
+			}
+		}
+	}
+
+	/**
+	 * OutputStream which counts the bytes written through it
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class CountingOutputStream extends FilterOutputStream {
+		private long count = 0;
+
+		public CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte b[], int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		public long getCount() {
+			return count;
+		}
+	}
+
+	/**
+	 * Comparator for ordering directory entries by block offset
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class BlockOffsetComparator implements Comparator<Integer> {
+		private long offsets[];
+
+		public BlockOffsetComparator(long offsets[]) {
+			this.offsets = offsets;
 		}
 
-		return line.substring(startIdx, endIdx).trim();
+		@Override
+		public int compare(Integer i1, Integer i2) {
+			long o1 = offsets[i1];
+			long o2 = offsets[i2];
+			return (o1 < o2) ? -1 : ((o1 == o2) ? 0 : 1);
+		}
 	}
 }
@@ -0,0 +1,424 @@
+package com.atlach.TrafficDataAggregator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.atlach.TrafficDataAggregator.DataObjects.HistData;
+import com.atlach.TrafficDataAggregator.DataObjects.HistDataFileInfo;
+import com.atlach.TrafficDataAggregator.DataObjects.LineInfo;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>HistDataDictionaryTrainer Class</b> </br>Builds a preset Deflate
+ * dictionary for compressed Hist Data Files out of an existing one (e.g.
+ * "TrafficData.hist"). </br></br>Every tag block is compressed on its own, so
+ * a block can not make use of what the blocks before it have in common with
+ * it. The dictionary puts that back: it is made up of the pieces of records
+ * which turn up in the most tag blocks. Each block is cut into overlapping
+ * segments, which are scored by how many blocks share the 5-byte strings in
+ * them, and the best segments are picked one at a time, leaving out strings
+ * already picked. The best segments go at the end, where Deflate reaches them
+ * with the shortest distances. </br></br>The main() method trains a
+ * dictionary, saves it and reports the compression ratio and inflate speed of
+ * the Hist Data File with and without it. The numbers are for the file the
+ * dictionary was trained on; newer data will do somewhat worse.
+ * 
+ * @author francis
+ * 
+ */
+public class HistDataDictionaryTrainer {
+	public static final int DEFAULT_DICTIONARY_SIZE = 16384;
+	/* Deflate can not reach back any further than this */
+	public static final int MAX_DICTIONARY_SIZE = 32768 - 262;
+
+	private static final Charset RECORD_CHARSET = Charset.forName("ISO-8859-1");
+	private static final int KMER_LENGTH = 5;
+	private static final int SEGMENT_LENGTH = 32;
+	private static final int SEGMENT_STEP = 8;
+
+	/* Time spent inflating for each speed measurement */
+	private static final long MEASURE_NANOS = 500000000L;
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Gets the text of each tag block as it would be written to a v1 Hist Data
+	 * File
+	 * 
+	 * @param histDataList
+	 *            - the content of the Hist Data File
+	 * @return the text of each tag block
+	 */
+	public static List<byte[]> getSamples(List<HistData> histDataList) {
+		String newLine = System.getProperty("line.separator");
+		List<byte[]> samples = new ArrayList<byte[]>();
+
+		for (int i = 0; i < histDataList.size(); i++) {
+			HistData hd = histDataList.get(i);
+			List<LineInfo> lineInfoList = hd.getDataList();
+			if (lineInfoList.size() == 0) {
+				continue;
+			}
+
+			StringBuilder sb = new StringBuilder();
+			sb.append("> [").append(hd.tagset).append("]").append(newLine);
+			for (int j = 0; j < lineInfoList.size(); j++) {
+				LineInfo lineInfo = lineInfoList.get(j);
+				sb.append(lineInfo.getTimeString()).append(":")
+						.append(lineInfo.lineDataStr).append(newLine);
+			}
+			samples.add(sb.toString().getBytes(RECORD_CHARSET));
+		}
+
+		return samples;
+	}
+
+	/**
+	 * Builds a dictionary out of the given samples
+	 * 
+	 * @param samples
+	 *            - the text of each tag block
+	 * @param size
+	 *            - the maximum size of the dictionary
+	 * @return the dictionary, which may be shorter than size if the samples
+	 *         do not have that much in common
+	 */
+	public static byte[] train(List<byte[]> samples, int size) {
+		size = Math.min(size, MAX_DICTIONARY_SIZE);
+
+		/* Count the samples each string shows up in */
+		Map<Long, Integer> kmerCounts = new HashMap<Long, Integer>();
+		for (int i = 0; i < samples.size(); i++) {
+			byte sample[] = samples.get(i);
+			Set<Long> seen = new HashSet<Long>();
+			for (int pos = 0; pos + KMER_LENGTH <= sample.length; pos++) {
+				Long kmer = getKmer(sample, pos);
+				if (seen.add(kmer)) {
+					Integer count = kmerCounts.get(kmer);
+					kmerCounts.put(kmer, (count == null) ? 1 : count + 1);
+				}
+			}
+		}
+
+		/* Strings found in a single sample are of no use to the others */
+		List<Long> uniqueKmers = new ArrayList<Long>();
+		for (Map.Entry<Long, Integer> entry : kmerCounts.entrySet()) {
+			if (entry.getValue() < 2) {
+				uniqueKmers.add(entry.getKey());
+			}
+		}
+		kmerCounts.keySet().removeAll(uniqueKmers);
+
+		PriorityQueue<Segment> queue = new PriorityQueue<Segment>();
+		for (int i = 0; i < samples.size(); i++) {
+			byte sample[] = samples.get(i);
+			for (int pos = 0; pos < sample.length; pos += SEGMENT_STEP) {
+				Segment segment = new Segment(sample, pos, Math.min(pos
+						+ SEGMENT_LENGTH, sample.length));
+				segment.score = segment.getScore(kmerCounts);
+				if (segment.score > 0) {
+					queue.add(segment);
+				}
+			}
+		}
+
+		/*
+		 * Pick segments greedily. Picking a segment lowers the score of those
+		 * sharing strings with it, so a segment is only taken if it still
+		 * beats the rest once rescored.
+		 */
+		List<Segment> picked = new ArrayList<Segment>();
+		int total = 0;
+		while ((total < size) && !queue.isEmpty()) {
+			Segment segment = queue.poll();
+			segment.score = segment.getScore(kmerCounts);
+			if (segment.score == 0) {
+				continue;
+			}
+			if (!queue.isEmpty() && (segment.score < queue.peek().score)) {
+				queue.add(segment);
+				continue;
+			}
+
+			for (int pos = segment.start; pos + KMER_LENGTH <= segment.end;
+					pos++) {
+				kmerCounts.remove(getKmer(segment.sample, pos));
+			}
+			picked.add(segment);
+			total += segment.end - segment.start;
+		}
+
+		/* Best segments last, and trim the least useful if over size */
+		Collections.reverse(picked);
+		ByteArrayOutputStream bOut = new ByteArrayOutputStream(total);
+		for (int i = 0; i < picked.size(); i++) {
+			Segment segment = picked.get(i);
+			bOut.write(segment.sample, segment.start, segment.end
+					- segment.start);
+		}
+		byte dictionary[] = bOut.toByteArray();
+		if (dictionary.length > size) {
+			byte trimmed[] = new byte[size];
+			System.arraycopy(dictionary, dictionary.length - size, trimmed, 0,
+					size);
+			dictionary = trimmed;
+		}
+
+		return dictionary;
+	}
+
+	/**
+	 * Trains a dictionary from a Hist Data File and reports how it does
+	 * 
+	 * @param args
+	 *            - the Hist Data File, whether it is compressed (true or
+	 *            false), the dictionary file to write and optionally the
+	 *            dictionary size
+	 */
+	public static void main(String[] args) {
+		if (args.length < 3) {
+			System.out
+					.println("Usage: HistDataDictionaryTrainer [hist file] [compressed true|false] [dictionary file] [size]");
+			return;
+		}
+
+		int size = DEFAULT_DICTIONARY_SIZE;
+		if (args.length > 3) {
+			try {
+				size = Integer.parseInt(args[3]);
+			} catch (NumberFormatException e) {
+				System.out.println("[ERROR] Invalid size specified: "
+						+ args[3]);
+				return;
+			}
+		}
+
+		try {
+			train(args[0], Boolean.parseBoolean(args[1]), args[2], size);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	private static void train(String histDataFileName, boolean isCompressed,
+			String dictionaryFileName, int size) throws IOException {
+		FileSystemInterface fsi = new FileSystemInterface();
+
+		HistDataFileInfo fileInfo = fsi.getHistDataFileInfo(histDataFileName,
+				isCompressed);
+		if (fileInfo == null) {
+			System.out.println("[train] ERROR: Could not read "
+					+ histDataFileName);
+			return;
+		}
+		List<HistData> histDataList = new ArrayList<HistData>();
+		fsi.loadHistDataFile(histDataFileName, histDataList, isCompressed);
+
+		List<byte[]> samples = getSamples(histDataList);
+		long sampleLength = 0;
+		for (int i = 0; i < samples.size(); i++) {
+			sampleLength += samples.get(i).length;
+		}
+
+		byte dictionary[] = train(samples, size);
+		int dictionaryId = FileSystemInterface.getDictionaryId(dictionary);
+		Files.write(new File(dictionaryFileName).toPath(), dictionary);
+		System.out.println("[train] " + samples.size() + " blocks, "
+				+ sampleLength + " bytes -> " + dictionary.length
+				+ " byte dictionary " + String.format("%08x", dictionaryId)
+				+ " saved to " + dictionaryFileName);
+
+		/* Write the same content with and without the dictionary */
+		fsi.setHistDataFormat(FileSystemInterface.HIST_FORMAT_V1);
+		String rawFileName = dictionaryFileName + ".raw.tmp";
+		String plainFileName = dictionaryFileName + ".plain.tmp";
+		String dictFileName = dictionaryFileName + ".dict.tmp";
+		try {
+			fsi.setHistDataDictionary(null);
+			writeHistDataFile(fsi, rawFileName, fileInfo, histDataList, false);
+			writeHistDataFile(fsi, plainFileName, fileInfo, histDataList, true);
+			fsi.setHistDataDictionary(dictionary);
+			writeHistDataFile(fsi, dictFileName, fileInfo, histDataList, true);
+
+			long rawLength = new File(rawFileName).length();
+			report("Without dictionary", rawLength, plainFileName, null);
+			report("With dictionary", rawLength, dictFileName, dictionary);
+		} finally {
+			deleteHistDataFile(rawFileName);
+			deleteHistDataFile(plainFileName);
+			deleteHistDataFile(dictFileName);
+		}
+	}
+
+	private static void writeHistDataFile(FileSystemInterface fsi,
+			String histDataFileName, HistDataFileInfo fileInfo,
+			List<HistData> histDataList, boolean shouldCompress)
+			throws IOException {
+		deleteHistDataFile(histDataFileName);
+		if (fsi.saveHistDataFile(histDataFileName, fileInfo, histDataList,
+				shouldCompress) != FileSystemInterface.STATUS_OK) {
+			throw new IOException("Could not write " + histDataFileName);
+		}
+	}
+
+	private static void deleteHistDataFile(String histDataFileName) {
+		File histDataFile = new File(histDataFileName);
+		histDataFile.delete();
+		HistDataIndex.delete(histDataFile);
+	}
+
+	/**
+	 * Prints the compression ratio of a compressed Hist Data File and how
+	 * fast its tag blocks inflate
+	 */
+	private static void report(String label, long rawLength,
+			String histDataFileName, byte dictionary[]) throws IOException {
+		File histDataFile = new File(histDataFileName);
+		HistDataIndex index = HistDataIndex.load(histDataFile, true);
+		if (index == null) {
+			throw new IOException("No index for " + histDataFileName);
+		}
+
+		byte data[] = new byte[(int) histDataFile.length()];
+		RandomAccessFile raf = new RandomAccessFile(histDataFile, "r");
+		try {
+			raf.readFully(data);
+		} finally {
+			raf.close();
+		}
+
+		/* The first round only warms up */
+		inflateBlocks(data, index, dictionary);
+		double speed = inflateBlocks(data, index, dictionary);
+
+		System.out.println(String.format(
+				"[train] %-18s: %8d bytes, ratio %5.2f, inflate %7.1f MB/s",
+				label, data.length, (double) rawLength / data.length, speed));
+	}
+
+	/**
+	 * Inflates every tag block of a Hist Data File over and over for a while
+	 * 
+	 * @return the inflate speed in MB/s of inflated data
+	 */
+	private static double inflateBlocks(byte data[], HistDataIndex index,
+			byte dictionary[]) throws IOException {
+		byte buf[] = new byte[65536];
+		long inflatedLength = 0;
+		long startTime = System.nanoTime();
+		long elapsed = 0;
+		Inflater inflater = new Inflater(true);
+		try {
+			while (elapsed < MEASURE_NANOS) {
+				for (int i = 0; i < index.getBlockCount(); i++) {
+					int start = (int) index.getBlockStart(i);
+					int end = (int) index.getBlockEnd(i);
+					inflater.reset();
+					if (dictionary != null) {
+						inflater.setDictionary(dictionary);
+					}
+					inflater.setInput(data, start, end - start);
+					while (!inflater.finished() && !inflater.needsInput()) {
+						inflatedLength += inflater.inflate(buf);
+					}
+				}
+				elapsed = System.nanoTime() - startTime;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+
+		return (inflatedLength / 1048576.0) / (elapsed / 1e9);
+	}
+
+	private static long getKmer(byte data[], int pos) {
+		long kmer = 0;
+		for (int i = 0; i < KMER_LENGTH; i++) {
+			kmer = (kmer << 8) | (data[pos + i] & 0xFF);
+		}
+		return kmer;
+	}
+
+	/*****************************************************************************************/
+	/** INTERNAL CLASSES **/
+	/*****************************************************************************************/
+	/**
+	 * <b>Segment Object</b> </br>A candidate piece of a sample for the
+	 * dictionary. Higher scores come first.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class Segment implements Comparable<Segment> {
+		public byte sample[];
+		public int start;
+		public int end;
+		public long score = 0;
+
+		public Segment(byte sample[], int start, int end) {
+			this.sample = sample;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * @return the total count of the strings in this segment which have
+		 *         not been picked yet
+		 */
+		public long getScore(Map<Long, Integer> kmerCounts) {
+			Set<Long> seen = new HashSet<Long>();
+			long total = 0;
+			for (int pos = start; pos + KMER_LENGTH <= end; pos++) {
+				Long kmer = getKmer(sample, pos);
+				Integer count = kmerCounts.get(kmer);
+				if ((count != null) && seen.add(kmer)) {
+					total += count;
+				}
+			}
+			return total;
+		}
+
+		@Override
+		public int compareTo(Segment other) {
+			return (score > other.score) ? -1 : ((score == other.score) ? 0
+					: 1);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.atlach.TrafficDataAggregator;
+
+import java.io.IOException;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>HistDataFileConverter Class</b> </br>Converts a Hist Data File (e.g.
+ * "TrafficData.hist") between the v1 text format and the v2 binary format. The
+ * format of the source file is detected; whether a v1 source file is DEFLATER
+ * compressed is taken from the last argument, same as for the target.
+ * </br></br>The conversion is lossy, since the file is loaded into memory and
+ * written out again the way any rebuild does it: records with no line data
+ * (e.g. "0300:") are dropped, records are kept one per hour ("2400" becomes
+ * 2300), and v2 targets also drop records that are not LINE_DATA_LENGTH long.
+ * Converting v1 to v2 and back therefore does not give the same file.
+ * 
+ * @author francis
+ * 
+ */
+public class HistDataFileConverter {
+	/**
+	 * Converts a Hist Data File
+	 * 
+	 * @param args
+	 *            - the source file, the target file, the target format (1 or
+	 *            2) and whether v1 files are compressed (true or false)
+	 */
+	public static void main(String[] args) {
+		if (args.length < 4) {
+			System.out
+					.println("Usage: HistDataFileConverter [source] [target] [format 1|2] [compressed true|false]");
+			return;
+		}
+
+		int format;
+		try {
+			format = Integer.parseInt(args[2]);
+		} catch (NumberFormatException e) {
+			format = -1;
+		}
+		if ((format != FileSystemInterface.HIST_FORMAT_V1)
+				&& (format != FileSystemInterface.HIST_FORMAT_V2)) {
+			System.out.println("[ERROR] Invalid format specified: " + args[2]);
+			return;
+		}
+		boolean isCompressed = Boolean.parseBoolean(args[3]);
+
+		FileSystemInterface fsi = new FileSystemInterface();
+		fsi.setHistDataFormat(format);
+
+		int result = FileSystemInterface.STATUS_FAILED;
+		try {
+			result = fsi.convertHistDataFile(args[0], isCompressed, args[1],
+					isCompressed);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		if (result == FileSystemInterface.STATUS_OK) {
+			System.out.println("[convert] " + args[0] + " (v"
+					+ FileSystemInterface.getHistDataFileFormat(args[0])
+					+ ") -> " + args[1] + " (v" + format + ")");
+		} else {
+			System.out.println("[convert] Failed to convert " + args[0]);
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package com.atlach.TrafficDataAggregator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.atlach.TrafficDataAggregator.DataObjects.HistDataFileInfo;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>HistDataIndex Class</b> </br>Sidecar index of a v1 Hist Data File (e.g.
+ * "TrafficData.hist.idx" next to "TrafficData.hist"). It holds the header
+ * fields and the offset of each tag block in the file as it is stored, so the
+ * header can be read without inflating anything and a single tag can be
+ * loaded by seeking straight to its block. </br></br>For compressed files,
+ * each tag block is deflated on its own, so it can be inflated starting from
+ * its offset without anything before it. </br></br>The index records
+ * the length and modification time of the Hist Data File it was written for
+ * and is ignored when these no longer match, so a file written without an
+ * index (or by an older version of the program) falls back to a full scan.
+ * 
+ * @author francis
+ * 
+ */
+public class HistDataIndex {
+	public static final String INDEX_FILE_SUFFIX = ".idx";
+
+	private static final byte INDEX_MAGIC[] = { 'M', 'M', 'H', 'I' };
+	private static final int INDEX_VERSION = 2;
+
+	public boolean isCompressed;
+	public boolean hasDictionary = false;
+	public int dictionaryId = 0;
+	public boolean hasContentTag = false;
+	public String datesCovered = "";
+	public List<String> tagList = new ArrayList<String>();
+
+	/* Tag blocks in the order they appear in the file */
+	private List<String> blockTags = new ArrayList<String>();
+	private long blockOffsets[] = new long[0];
+
+	/* Header parsing state */
+	private boolean isLiftingTags = false;
+
+	private long histFileLength = -1;
+	private long histFileModified = -1;
+
+	public HistDataIndex(boolean isCompressed) {
+		this.isCompressed = isCompressed;
+	}
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Gets the index file for a Hist Data File
+	 * 
+	 * @param histDataFile
+	 *            - the Hist Data File
+	 * @return the index file
+	 */
+	public static File getIndexFile(File histDataFile) {
+		return new File(histDataFile.getPath() + INDEX_FILE_SUFFIX);
+	}
+
+	/**
+	 * Loads the index of a Hist Data File
+	 * 
+	 * @param histDataFile
+	 *            - the Hist Data File
+	 * @param isCompressed
+	 *            - a boolean indicating whether the Hist Data File is expected
+	 *            to be in DEFLATER compressed format
+	 * @return the index, or null if there is no index or it does not match the
+	 *         Hist Data File as it is now
+	 */
+	public static HistDataIndex load(File histDataFile, boolean isCompressed) {
+		File indexFile = getIndexFile(histDataFile);
+		if (!indexFile.exists()) {
+			return null;
+		}
+
+		HistDataIndex index = null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(indexFile)));
+			try {
+				index = read(in);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			System.out.println("[HistDataIndex] Warning: Unreadable index: "
+					+ indexFile + " (" + e.getMessage() + ")");
+			return null;
+		}
+
+		if ((index == null) || (index.isCompressed != isCompressed)
+				|| (index.histFileLength != histDataFile.length())
+				|| (index.histFileModified != histDataFile.lastModified())) {
+			return null;
+		}
+
+		/* The blocks must be in order and within the file */
+		long prevOffset = 0;
+		for (int i = 0; i < index.blockOffsets.length; i++) {
+			if ((index.blockOffsets[i] < prevOffset)
+					|| (index.blockOffsets[i] >= index.histFileLength)) {
+				return null;
+			}
+			prevOffset = index.blockOffsets[i];
+		}
+
+		return index;
+	}
+
+	/**
+	 * Writes the index for a Hist Data File which has just been written. The
+	 * index goes to a temporary file first which then replaces the old one.
+	 * 
+	 * @param histDataFile
+	 *            - the Hist Data File
+	 * @return an integer indicating the exit status for this method
+	 */
+	public int save(File histDataFile) {
+		File indexFile = getIndexFile(histDataFile);
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+
+		histFileLength = histDataFile.length();
+		histFileModified = histDataFile.lastModified();
+
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				write(out);
+				out.flush();
+			} finally {
+				out.close();
+			}
+
+			Files.move(tempFile.toPath(), indexFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+			tempFile.delete();
+			delete(histDataFile);
+			return FileSystemInterface.STATUS_FAILED;
+		}
+
+		return FileSystemInterface.STATUS_OK;
+	}
+
+	/**
+	 * Removes the index of a Hist Data File, if there is one
+	 * 
+	 * @param histDataFile
+	 *            - the Hist Data File
+	 */
+	public static void delete(File histDataFile) {
+		getIndexFile(histDataFile).delete();
+	}
+
+	/**
+	 * Keeps track of the header fields while the header of a Hist Data File is
+	 * written, reading each line the same way getHistDataFileInfo() does
+	 * 
+	 * @param line
+	 *            - a line of the Hist Data File header
+	 */
+	public void addHeaderLine(String line) {
+		if (line.contains("[DatesCovered]")) {
+			String lineStr[] = line.split("]");
+			datesCovered = (lineStr.length > 1) ? lineStr[1].trim() : "";
+			return;
+		}
+
+		if (line.contains("[TagIndexStart]")) {
+			isLiftingTags = true;
+			return;
+		}
+
+		if (line.contains("[TagIndexEnd]")) {
+			isLiftingTags = false;
+			return;
+		}
+
+		if (isLiftingTags) {
+			tagList.add(line.trim());
+		}
+
+		if (line.contains("[Content]")) {
+			hasContentTag = true;
+		}
+	}
+
+	/**
+	 * Records the start of a tag block
+	 * 
+	 * @param tagStr
+	 *            - the tag of the block
+	 * @param offset
+	 *            - the offset of the block in the Hist Data File
+	 */
+	public void addBlock(String tagStr, long offset) {
+		int n = blockTags.size();
+		blockTags.add(tagStr);
+		blockOffsets = Arrays.copyOf(blockOffsets, n + 1);
+		blockOffsets[n] = offset;
+	}
+
+	/**
+	 * @return the header information of the Hist Data File
+	 */
+	public HistDataFileInfo getFileInfo() {
+		return new HistDataFileInfo(datesCovered, new ArrayList<String>(
+				tagList));
+	}
+
+	/**
+	 * Finds the block of a tag. If the tag has more than one block, the last
+	 * one is used, the same as when the file is scanned.
+	 * 
+	 * @param tagStr
+	 *            - the tag
+	 * @return the index of the block or -1 if the tag has no block
+	 */
+	public int findBlock(String tagStr) {
+		return blockTags.lastIndexOf(tagStr);
+	}
+
+	/**
+	 * @return the number of tag blocks
+	 */
+	public int getBlockCount() {
+		return blockTags.size();
+	}
+
+	/**
+	 * @return the tag of the given block
+	 */
+	public String getBlockTag(int block) {
+		return blockTags.get(block);
+	}
+
+	/**
+	 * @return the offset in the Hist Data File where the given block starts
+	 */
+	public long getBlockStart(int block) {
+		return blockOffsets[block];
+	}
+
+	/**
+	 * @return the offset in the Hist Data File where the given block ends
+	 */
+	public long getBlockEnd(int block) {
+		if (block + 1 < blockOffsets.length) {
+			return blockOffsets[block + 1];
+		}
+		return histFileLength;
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Writes the index. All values are big-endian: </br></br>"MMHI", version
+	 * (u16), Hist Data File length (long) and modification time (long),
+	 * compressed flag, dictionary flag and ID (int), [Content] flag, dates
+	 * covered (modified UTF-8), tag count (int) and tags, then the block count
+	 * (int) and for each block: the tag and its offset (long).
+	 */
+	private void write(DataOutputStream out) throws IOException {
+		out.write(INDEX_MAGIC);
+		out.writeShort(INDEX_VERSION);
+		out.writeLong(histFileLength);
+		out.writeLong(histFileModified);
+		out.writeBoolean(isCompressed);
+		out.writeBoolean(hasDictionary);
+		out.writeInt(dictionaryId);
+		out.writeBoolean(hasContentTag);
+		out.writeUTF(datesCovered);
+		out.writeInt(tagList.size());
+		for (int i = 0; i < tagList.size(); i++) {
+			out.writeUTF(tagList.get(i));
+		}
+		out.writeInt(blockTags.size());
+		for (int i = 0; i < blockTags.size(); i++) {
+			out.writeUTF(blockTags.get(i));
+			out.writeLong(blockOffsets[i]);
+		}
+	}
+
+	private static HistDataIndex read(DataInputStream in) throws IOException {
+		byte magic[] = new byte[INDEX_MAGIC.length];
+		in.readFully(magic);
+		if (!Arrays.equals(magic, INDEX_MAGIC)
+				|| (in.readUnsignedShort() != INDEX_VERSION)) {
+			return null;
+		}
+
+		long histFileLength = in.readLong();
+		long histFileModified = in.readLong();
+		HistDataIndex index = new HistDataIndex(in.readBoolean());
+		index.histFileLength = histFileLength;
+		index.histFileModified = histFileModified;
+		index.hasDictionary = in.readBoolean();
+		index.dictionaryId = in.readInt();
+		index.hasContentTag = in.readBoolean();
+		index.datesCovered = in.readUTF();
+
+		int tagCount = in.readInt();
+		for (int i = 0; i < tagCount; i++) {
+			index.tagList.add(in.readUTF());
+		}
+
+		int blockCount = in.readInt();
+		for (int i = 0; i < blockCount; i++) {
+			String tagStr = in.readUTF();
+			index.addBlock(tagStr, in.readLong());
+		}
+
+		return index;
+	}
+}
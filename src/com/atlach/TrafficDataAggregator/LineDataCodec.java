@@ -0,0 +1,740 @@
+package com.atlach.TrafficDataAggregator;
+
+import java.nio.charset.Charset;
+
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>LineDataCodec Class</b> </br>Encodes, compresses, merges and normalizes
+ * Line Data strings held in reusable LineDataBuffer objects. Characters are
+ * translated through lookup tables instead of searching
+ * Constants.base64chars, and nothing is allocated as long as the buffers are
+ * large enough. </br></br>The output is exactly that of the original
+ * String-based utilities, including their handling of invalid characters
+ * (which decode to -1, as with String.indexOf()) and their warnings.
+ * </br></br>Line data can also be stored as a packed record, where each
+ * character's 6-bit value is bit-packed (284 characters fit in 213 bytes) and
+ * runs of zero bytes can be further run-length packed. Normalized line data
+ * only holds values up to 3, so it is packed 2 bits per character instead
+ * (71 bytes). Packed records start
+ * with PACKED_MARKER, which can never start a compressed line data string, so
+ * decompress() accepts either form. Bytes which would break up the
+ * line-oriented Part and Hist Data files (line breaks, ':' and '[') are
+ * escaped so that packed records can be stored in place of compressed
+ * strings.
+ * 
+ * @author francis
+ * 
+ */
+public class LineDataCodec {
+	/* Length of a decompressed line data string (142 lines, SB and NB) */
+	public static final int LINE_DATA_LENGTH = 284;
+
+	private static final Charset ASCII = Charset.forName("ISO-8859-1");
+	private static final byte COMPRESS_MARKER = '.';
+	private static final int MAX_RUN_LENGTH = 63;
+
+	/*
+	 * Packed record markers: PACKED_MARKER followed by the packing mode, which
+	 * is PACKED_MODE_BASE plus the packing flags
+	 */
+	public static final char PACKED_MARKER = '~';
+	private static final int PACKED_MODE_BASE = '0';
+	private static final int PACKED_FLAG_ZERO_RUNS = 1;
+	private static final int PACKED_FLAG_NARROW = 2;
+	private static final int MAX_PACKED_LENGTH = (LINE_DATA_LENGTH * 6) / 8;
+	private static final int MAX_ZERO_RUN_LENGTH = 255;
+
+	/* Escaped bytes are written as PACKED_ESCAPE followed by (byte ^ 0x40) */
+	private static final int PACKED_ESCAPE = 0x7F;
+	private static final boolean ESCAPED_BYTES[] = new boolean[256];
+
+	/* Base64 value to character and character to base64 value (-1 if none) */
+	private static final byte ENCODE_TABLE[] = new byte[64];
+	private static final byte DECODE_TABLE[] = new byte[256];
+
+	/*
+	 * Merge and normalize only ever look at one character (or one pair of
+	 * characters) at a time, so their results are worked out in advance for
+	 * every possible character
+	 */
+	private static final byte MERGE_OLD_TABLE[] = new byte[256];
+	private static final byte MERGE_NEW_TABLE[] = new byte[256];
+	private static final byte NORMALIZE_TABLE[] = new byte[256];
+
+	static {
+		for (int i = 0; i < DECODE_TABLE.length; i++) {
+			DECODE_TABLE[i] = -1;
+		}
+		for (int i = 0; i < ENCODE_TABLE.length; i++) {
+			ENCODE_TABLE[i] = (byte) Constants.base64chars.charAt(i);
+			DECODE_TABLE[Constants.base64chars.charAt(i)] = (byte) i;
+		}
+
+		ESCAPED_BYTES['\n'] = true;
+		ESCAPED_BYTES['\r'] = true;
+		ESCAPED_BYTES[':'] = true;
+		ESCAPED_BYTES['['] = true;
+		ESCAPED_BYTES[PACKED_ESCAPE] = true;
+
+		for (int c = 0; c < 256; c++) {
+			int charIdx = DECODE_TABLE[c];
+			MERGE_OLD_TABLE[c] = (byte) ((charIdx << 2) & 63);
+			MERGE_NEW_TABLE[c] = (byte) (charIdx & 3);
+			NORMALIZE_TABLE[c] = ENCODE_TABLE[getNormalizedValue(charIdx)];
+		}
+	}
+
+	/* Scratch space for the bit-packed bytes of pack(), one per thread */
+	private static final ThreadLocal<byte[]> packScratch = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[MAX_PACKED_LENGTH];
+		}
+	};
+
+	/* Scratch buffers for the String-based utilities, one set per thread */
+	private static final ThreadLocal<LineDataBuffer[]> scratchBuffers = new ThreadLocal<LineDataBuffer[]>() {
+		@Override
+		protected LineDataBuffer[] initialValue() {
+			return new LineDataBuffer[] { new LineDataBuffer(),
+					new LineDataBuffer() };
+		}
+	};
+
+	private LineDataCodec() {
+		return;
+	}
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Encodes the traffic conditions of a LineDataList into an
+	 * (uncompressed) line data string
+	 * 
+	 * @param dataList
+	 *            - LineDataList containing the line data to be encoded
+	 * @param dst
+	 *            - buffer to receive the line data string
+	 */
+	public static void encode(LineDataList dataList, LineDataBuffer dst) {
+		int count = dataList.size;
+		dst.ensureCapacity(count * 2);
+
+		byte sb[] = dataList.trafficSB;
+		byte nb[] = dataList.trafficNB;
+		byte d[] = dst.data;
+		for (int j = 0; j < count; j++) {
+			d[j * 2] = ENCODE_TABLE[(byte) (sb[j] % 7)];
+			d[(j * 2) + 1] = ENCODE_TABLE[(byte) (nb[j] % 7)];
+		}
+		dst.length = count * 2;
+
+		if (dst.length != LINE_DATA_LENGTH) {
+			System.out
+					.println("[createLineDataString] Warning: Possibly invalid line "
+							+ "data string w/ length: " + dst.length + " !");
+			System.out
+					.println("[createLineDataString] 			> Data List Elements: "
+							+ count);
+		}
+	}
+
+	/**
+	 * Compresses a line data string by removing adjacent repeating characters.
+	 * 
+	 * @param src
+	 *            - the uncompressed line data string
+	 * @param dst
+	 *            - buffer to receive the compressed line data string
+	 */
+	public static void compress(LineDataBuffer src, LineDataBuffer dst) {
+		int n = src.length;
+		dst.ensureCapacity(n * 2);
+
+		byte s[] = src.data;
+		byte d[] = dst.data;
+		int o = 0;
+		byte next = 0;
+		boolean isCompressing = false;
+		boolean shouldSupressCompression = false;
+		int sameCounter = 1;
+
+		for (int i = 0; i < n; i++) {
+			byte c = s[i];
+
+			if (i + 1 < n) {
+				next = s[i + 1];
+
+				/*
+				 * Runs of only two characters are left alone since compressing
+				 * them would make them longer
+				 */
+				if ((i + 2 < n) && (!isCompressing)) {
+					shouldSupressCompression = (c != s[i + 2]);
+				}
+			} else {
+				next = 0;
+			}
+
+			if ((c == next) && (!shouldSupressCompression)) {
+				if (!isCompressing) {
+					sameCounter++;
+					isCompressing = true;
+					d[o++] = COMPRESS_MARKER;
+				} else if (sameCounter < MAX_RUN_LENGTH) {
+					sameCounter++;
+				} else {
+					/* Have to prematurely break the compression */
+					isCompressing = false;
+					d[o++] = ENCODE_TABLE[sameCounter];
+					sameCounter = 1;
+					d[o++] = c;
+				}
+			} else {
+				if (isCompressing) {
+					isCompressing = false;
+					d[o++] = ENCODE_TABLE[sameCounter];
+					sameCounter = 1;
+				}
+				d[o++] = c;
+			}
+
+			shouldSupressCompression = false;
+		}
+
+		dst.length = o;
+	}
+
+	/**
+	 * Decompresses a line data string which has previously been compressed
+	 * using compress(). All omitted repeating characters are restored.
+	 * 
+	 * @param src
+	 *            - the compressed line data string
+	 * @param dst
+	 *            - buffer to receive the decompressed line data string
+	 */
+	public static void decompress(CharSequence src, LineDataBuffer dst) {
+		int n = src.length();
+		dst.ensureCapacity(LINE_DATA_LENGTH);
+
+		if ((n > 0) && (src.charAt(0) == PACKED_MARKER)) {
+			unpack(src, dst);
+			return;
+		}
+
+		int o = 0;
+		boolean shouldDecompress = false;
+		int decompVal = 0;
+		for (int i = 0; i < n; i++) {
+			char c = src.charAt(i);
+			if (c == COMPRESS_MARKER) {
+				shouldDecompress = true;
+				continue;
+			}
+
+			if (shouldDecompress) {
+				if (decompVal == 0) {
+					decompVal = decode(c);
+				} else {
+					if (o + decompVal > dst.data.length) {
+						dst.ensureCapacity(o + decompVal);
+					}
+					for (int j = 0; j < decompVal; j++) {
+						dst.data[o++] = (byte) c;
+					}
+					shouldDecompress = false;
+					decompVal = 0;
+				}
+			} else {
+				if (o >= dst.data.length) {
+					dst.ensureCapacity(o + 1);
+				}
+				dst.data[o++] = (byte) c;
+			}
+		}
+		dst.length = o;
+
+		if (o != LINE_DATA_LENGTH) {
+			System.out
+					.println("[decompressString] Warning: Invalid decompressed string "
+							+ "length: " + o);
+		}
+	}
+
+	/**
+	 * Packs a line data string into a packed record. Runs of zero bytes are
+	 * run-length packed only if that makes the record shorter.
+	 * 
+	 * @param src
+	 *            - the (decompressed) line data string
+	 * @param dst
+	 *            - buffer to receive the packed record
+	 * @return false if the line data string has an unexpected length or
+	 *         contains invalid characters, in which case dst is left untouched
+	 */
+	public static boolean pack(LineDataBuffer src, LineDataBuffer dst) {
+		if (src.length != LINE_DATA_LENGTH) {
+			return false;
+		}
+
+		byte s[] = src.data;
+		int maxValue = 0;
+		for (int i = 0; i < LINE_DATA_LENGTH; i++) {
+			int charIdx = DECODE_TABLE[s[i] & 0xFF];
+			if (charIdx < 0) {
+				return false;
+			}
+			maxValue |= charIdx;
+		}
+
+		int mode = PACKED_MODE_BASE;
+		int width = 6;
+		if (maxValue <= 3) {
+			mode |= PACKED_FLAG_NARROW;
+			width = 2;
+		}
+
+		byte packed[] = packScratch.get();
+		int packedLength = (LINE_DATA_LENGTH * width) / 8;
+		int zeroByteCount = 0;
+		int bits = 0;
+		int bitCount = 0;
+		for (int i = 0, o = 0; i < LINE_DATA_LENGTH; i++) {
+			bits = (bits << width) | DECODE_TABLE[s[i] & 0xFF];
+			bitCount += width;
+			if (bitCount >= 8) {
+				bitCount -= 8;
+				packed[o] = (byte) (bits >> bitCount);
+				if (packed[o++] == 0) {
+					zeroByteCount++;
+				}
+			}
+		}
+
+		/* A zero run costs two bytes, so it takes at least three zero bytes */
+		dst.ensureCapacity(2 + (packedLength * 2));
+		dst.data[0] = PACKED_MARKER;
+		if (zeroByteCount >= 3) {
+			dst.data[1] = (byte) (mode | PACKED_FLAG_ZERO_RUNS);
+			dst.length = 2;
+			writePackedZeroRuns(packed, packedLength, dst);
+
+			/* Check against the plain (escaped) size */
+			int plainLength = 2;
+			for (int i = 0; i < packedLength; i++) {
+				plainLength += ESCAPED_BYTES[packed[i] & 0xFF] ? 2 : 1;
+			}
+			if (dst.length < plainLength) {
+				return true;
+			}
+		}
+
+		dst.data[1] = (byte) mode;
+		dst.length = 2;
+		for (int i = 0; i < packedLength; i++) {
+			writePackedByte(packed[i] & 0xFF, dst);
+		}
+		return true;
+	}
+
+	/**
+	 * Converts a line data string (compressed, uncompressed or already packed)
+	 * into a packed record. See pack().
+	 * 
+	 * @param str
+	 *            - the line data String
+	 * @return the packed record, or the original String if it could not be
+	 *         packed
+	 */
+	public static String packString(String str) {
+		if ((str.length() > 0) && (str.charAt(0) == PACKED_MARKER)) {
+			return str;
+		}
+
+		LineDataBuffer buffers[] = scratchBuffers.get();
+		decompress(str, buffers[0]);
+		if (!pack(buffers[0], buffers[1])) {
+			return str;
+		}
+		return buffers[1].toString();
+	}
+
+	/**
+	 * Converts a line data string into a fixed-width record of
+	 * LINE_DATA_LENGTH bytes, each holding the base64 value (0 to 63) of one
+	 * character
+	 * 
+	 * @param src
+	 *            - the (decompressed) line data string
+	 * @param dst
+	 *            - array to receive the record
+	 * @param off
+	 *            - offset of the record in dst
+	 * @return false if the line data string has an unexpected length or
+	 *         contains invalid characters, in which case dst is left untouched
+	 */
+	public static boolean toRecord(LineDataBuffer src, byte dst[], int off) {
+		if (src.length != LINE_DATA_LENGTH) {
+			return false;
+		}
+
+		byte s[] = src.data;
+		for (int i = 0; i < LINE_DATA_LENGTH; i++) {
+			if (DECODE_TABLE[s[i] & 0xFF] < 0) {
+				return false;
+			}
+		}
+
+		for (int i = 0; i < LINE_DATA_LENGTH; i++) {
+			dst[off + i] = DECODE_TABLE[s[i] & 0xFF];
+		}
+		return true;
+	}
+
+	/**
+	 * Converts a fixed-width record made by toRecord() back into an
+	 * (uncompressed) line data string
+	 * 
+	 * @param src
+	 *            - array holding the record
+	 * @param off
+	 *            - offset of the record in src
+	 * @param dst
+	 *            - buffer to receive the line data string
+	 * @return false if the record holds values outside 0 to 63, in which case
+	 *         dst is left untouched
+	 */
+	public static boolean fromRecord(byte src[], int off, LineDataBuffer dst) {
+		for (int i = 0; i < LINE_DATA_LENGTH; i++) {
+			if ((src[off + i] & 0xFF) >= ENCODE_TABLE.length) {
+				return false;
+			}
+		}
+
+		dst.ensureCapacity(LINE_DATA_LENGTH);
+		byte d[] = dst.data;
+		for (int i = 0; i < LINE_DATA_LENGTH; i++) {
+			d[i] = ENCODE_TABLE[src[off + i]];
+		}
+		dst.length = LINE_DATA_LENGTH;
+		return true;
+	}
+
+	/**
+	 * Merges two line data strings together. The traffic conditions of the
+	 * old string are shifted up by one sample and the new conditions are put
+	 * in the lowest bits.
+	 * 
+	 * @param oldData
+	 *            - the old (decompressed) line data string
+	 * @param newData
+	 *            - the new (decompressed) line data string
+	 * @param dst
+	 *            - buffer to receive the merged line data string (may be the
+	 *            same as oldData)
+	 * @return false if the merge could not be performed, in which case dst is
+	 *         left untouched
+	 */
+	public static boolean merge(LineDataBuffer oldData,
+			LineDataBuffer newData, LineDataBuffer dst) {
+		int n = newData.length;
+
+		/*
+		 * Check if the length of the new line data string is sane. Since there
+		 * are usually 142 distinct lines, the length of this string should
+		 * approximately be 284 characters since we are counting differently
+		 * for both northbound and southbound traffic
+		 */
+		if (n != LINE_DATA_LENGTH) {
+			System.out
+					.println("[mergeLineDataStrings] Warning: Weird line data string length: "
+							+ n);
+			return false;
+		}
+
+		/* Check that both strings have the same length */
+		if (oldData.length != n) {
+			return false;
+		}
+
+		dst.ensureCapacity(n);
+		byte o[] = oldData.data;
+		byte s[] = newData.data;
+		byte d[] = dst.data;
+		for (int i = 0; i < n; i++) {
+			d[i] = ENCODE_TABLE[MERGE_OLD_TABLE[o[i] & 0xFF]
+					| MERGE_NEW_TABLE[s[i] & 0xFF]];
+		}
+		dst.length = n;
+		return true;
+	}
+
+	/**
+	 * Normalizes the traffic condition values inside a line data string, i.e.
+	 * gets the weighted average of all traffic conditions previously merged
+	 * into it.
+	 * 
+	 * @param src
+	 *            - the (decompressed) line data string to be normalized
+	 * @param dst
+	 *            - buffer to receive the normalized line data string (may be
+	 *            the same as src)
+	 * @return false if the line data string has an unexpected length, in
+	 *         which case dst is left untouched
+	 */
+	public static boolean normalize(LineDataBuffer src, LineDataBuffer dst) {
+		int n = src.length;
+		if (n != LINE_DATA_LENGTH) {
+			System.out
+					.println("[normalizeLineDataString] Warning: Weird line data "
+							+ "string length: " + n);
+			return false;
+		}
+
+		dst.ensureCapacity(n);
+		byte s[] = src.data;
+		byte d[] = dst.data;
+		for (int i = 0; i < n; i++) {
+			d[i] = NORMALIZE_TABLE[s[i] & 0xFF];
+		}
+		dst.length = n;
+		return true;
+	}
+
+	/**
+	 * Compresses a line data string. See compress().
+	 * 
+	 * @param str
+	 *            - the original, uncompressed String
+	 * @return the compressed String
+	 */
+	public static String compressString(String str) {
+		LineDataBuffer buffers[] = scratchBuffers.get();
+		buffers[0].set(str);
+		compress(buffers[0], buffers[1]);
+		return buffers[1].toString();
+	}
+
+	/**
+	 * Decompresses a line data string. See decompress().
+	 * 
+	 * @param str
+	 *            - the compressed String
+	 * @return the decompressed String
+	 */
+	public static String decompressString(String str) {
+		LineDataBuffer buffers[] = scratchBuffers.get();
+		decompress(str, buffers[0]);
+		return buffers[0].toString();
+	}
+
+	/**
+	 * Creates a line data string given a LineDataList. See
+	 * encode().
+	 * 
+	 * @param dataList
+	 *            - LineDataList containing the line data to be encoded
+	 * @return the line data String
+	 */
+	public static String createLineDataString(LineDataList dataList) {
+		LineDataBuffer buffers[] = scratchBuffers.get();
+		encode(dataList, buffers[0]);
+		return buffers[0].toString();
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	private static int decode(char c) {
+		return (c < DECODE_TABLE.length) ? DECODE_TABLE[c] : -1;
+	}
+
+	/**
+	 * Unpacks a packed record into a line data string. The record is
+	 * unescaped, its zero runs expanded and its values decoded in a
+	 * single pass.
+	 */
+	private static void unpack(CharSequence src, LineDataBuffer dst) {
+		int n = src.length();
+		int mode = (n > 1) ? (src.charAt(1) - PACKED_MODE_BASE) : 0;
+		boolean hasZeroRuns = (mode & PACKED_FLAG_ZERO_RUNS) != 0;
+		int width = ((mode & PACKED_FLAG_NARROW) != 0) ? 2 : 6;
+		int mask = (1 << width) - 1;
+
+		byte d[] = dst.data;
+		int o = 0;
+		int bits = 0;
+		int bitCount = 0;
+		boolean isZeroRun = false;
+		for (int i = 2; (i < n) && (o < LINE_DATA_LENGTH); i++) {
+			int b = src.charAt(i) & 0xFF;
+			if ((b == PACKED_ESCAPE) && (i + 1 < n)) {
+				b = (src.charAt(++i) & 0xFF) ^ 0x40;
+			}
+
+			/* A zero byte is followed by the length of its run */
+			int count = 1;
+			if (isZeroRun) {
+				count = b;
+				b = 0;
+				isZeroRun = false;
+			} else if (hasZeroRuns && (b == 0)) {
+				isZeroRun = true;
+				continue;
+			}
+
+			for (int j = 0; (j < count) && (o < LINE_DATA_LENGTH); j++) {
+				bits = (bits << 8) | b;
+				bitCount += 8;
+				while ((bitCount >= width) && (o < LINE_DATA_LENGTH)) {
+					bitCount -= width;
+					d[o++] = ENCODE_TABLE[(bits >> bitCount) & mask];
+				}
+			}
+		}
+		dst.length = o;
+
+		if (o != LINE_DATA_LENGTH) {
+			System.out
+					.println("[decompressString] Warning: Invalid packed record "
+							+ "length: " + o);
+		}
+	}
+
+	/**
+	 * Writes packed bytes to dst, replacing each run of zero bytes with a zero
+	 * byte followed by the length of the run
+	 */
+	private static void writePackedZeroRuns(byte packed[], int packedLength,
+			LineDataBuffer dst) {
+		int i = 0;
+		while (i < packedLength) {
+			if (packed[i] != 0) {
+				writePackedByte(packed[i++] & 0xFF, dst);
+				continue;
+			}
+
+			int runLength = 1;
+			while ((i + runLength < packedLength)
+					&& (packed[i + runLength] == 0)
+					&& (runLength < MAX_ZERO_RUN_LENGTH)) {
+				runLength++;
+			}
+			writePackedByte(0, dst);
+			writePackedByte(runLength, dst);
+			i += runLength;
+		}
+	}
+
+	/**
+	 * Appends a single packed byte to dst, escaping it if needed. The caller
+	 * makes sure dst has room for two more bytes.
+	 */
+	private static void writePackedByte(int b, LineDataBuffer dst) {
+		if (ESCAPED_BYTES[b]) {
+			dst.data[dst.length++] = (byte) PACKED_ESCAPE;
+			b ^= 0x40;
+		}
+		dst.data[dst.length++] = (byte) b;
+	}
+
+	/**
+	 * Gets the weighted average of the traffic conditions merged into a
+	 * single line data character. Used to fill in the normalize table.
+	 * 
+	 * @param charIdx
+	 *            - the base64 value of the character (-1 if invalid)
+	 * @return the base64 value of the normalized character
+	 */
+	private static int getNormalizedValue(int charIdx) {
+		int weighedSum = 0;
+		float finDiv = 0.0f;
+		for (int j = 0; j < 4; j++) {
+			int b = (charIdx >> (6 - (j * 2))) & 3;
+			weighedSum += b * (j + 1);
+			if (b != 0) {
+				finDiv += (float) (j + 1);
+			}
+		}
+
+		/* No conditions at all (0 / 0) rounds to 0, which is stored as 1 */
+		int finInt = Math.round(weighedSum / finDiv);
+		return (finInt == 0) ? 1 : finInt;
+	}
+
+	/*****************************************************************************************/
+	/** INTERNAL CLASSES **/
+	/*****************************************************************************************/
+	/**
+	 * <b>LineDataBuffer Object</b> </br>Reusable holder for a line data
+	 * string, one byte per character. The buffer grows as needed and is never
+	 * shrunk.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	public static class LineDataBuffer {
+		public byte data[];
+		public int length = 0;
+
+		public LineDataBuffer() {
+			data = new byte[LINE_DATA_LENGTH];
+		}
+
+		/**
+		 * Makes sure the buffer can hold at least the given number of
+		 * characters. The current contents are kept.
+		 * 
+		 * @param capacity
+		 *            - the number of characters needed
+		 */
+		public void ensureCapacity(int capacity) {
+			if (capacity > data.length) {
+				byte newData[] = new byte[Math.max(capacity, data.length * 2)];
+				System.arraycopy(data, 0, newData, 0, data.length);
+				data = newData;
+			}
+		}
+
+		/**
+		 * Copies a String into the buffer
+		 * 
+		 * @param str
+		 *            - the String to copy
+		 */
+		public void set(CharSequence str) {
+			int n = str.length();
+			ensureCapacity(n);
+			for (int i = 0; i < n; i++) {
+				data[i] = (byte) str.charAt(i);
+			}
+			length = n;
+		}
+
+		@Override
+		public String toString() {
+			return new String(data, 0, length, ASCII);
+		}
+	}
+}
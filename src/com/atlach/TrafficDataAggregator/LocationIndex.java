@@ -0,0 +1,395 @@
+package com.atlach.TrafficDataAggregator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>LocationIndex Class</b> </br>Maps "[Area], [Location]" strings to their
+ * location codes (i.e. their index in Constants.locStr) using a perfect hash
+ * built when the class is loaded. </br></br>A lookup hashes the key once,
+ * picks its bucket from the hash, and uses the bucket's seed to get the one
+ * table slot where the key can be. The key is then compared against the
+ * location string stored there. Keys are normalized while they are hashed and
+ * compared (surrounding whitespace is ignored and "\u00F1" or a pair of
+ * broken characters count as "n"), so nothing needs to be allocated.
+ * </br></br>Keys which do not match a location exactly fall back to the old
+ * substring scan; the result is remembered so that each odd key is only
+ * scanned once.
+ * 
+ * @author francis
+ * 
+ */
+public class LocationIndex {
+	public static final short STATUS_FAILED = -1;
+
+	private static final int TABLE_BITS = 8;
+	private static final int TABLE_SIZE = 1 << TABLE_BITS;
+	private static final int BUCKET_BITS = 6;
+	private static final int BUCKET_COUNT = 1 << BUCKET_BITS;
+	private static final int MAX_SEED = 1 << 16;
+	private static final int MAX_ALIASES = 1024;
+
+	private static final long FNV_OFFSET = 0xCBF29CE484222325L;
+	private static final long FNV_PRIME = 0x100000001B3L;
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+	private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+	/* Seed for each bucket, chosen so that no two keys share a slot */
+	private static final int bucketSeeds[] = new int[BUCKET_COUNT];
+	/* Location code stored in each slot, or -1 for an empty slot */
+	private static final short slotCodes[] = new short[TABLE_SIZE];
+	/* Keys which needed the substring scan */
+	private static final Map<String, Short> aliases = new HashMap<String, Short>();
+
+	static {
+		buildTable();
+	}
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Gets the location code for a location string
+	 * 
+	 * @param locStr
+	 *            - the location string in "[Area], [Location]" form
+	 * @return the location code or STATUS_FAILED (-1) if there is no match
+	 */
+	public static short lookup(CharSequence locStr) {
+		return lookup(locStr, 0, locStr.length(), null, 0, 0);
+	}
+
+	/**
+	 * Gets the location code for an area and location name pair, as if they
+	 * were joined as "[Area], [Location]"
+	 * 
+	 * @param area
+	 *            - the area name (e.g. "EDSA")
+	 * @param name
+	 *            - the location name (e.g. "Balintawak")
+	 * @return the location code or STATUS_FAILED (-1) if there is no match
+	 */
+	public static short lookup(CharSequence area, CharSequence name) {
+		return lookup(area, 0, area.length(), name, 0, name.length());
+	}
+
+	/**
+	 * Gets the location code for an area and location name taken from parts
+	 * of a larger string (e.g. the first two fields of a CSV line), as if they
+	 * were joined as "[Area], [Location]"
+	 * 
+	 * @param src
+	 *            - the string containing both fields
+	 * @param areaStart
+	 *            - the start index of the area name
+	 * @param areaEnd
+	 *            - the end index (exclusive) of the area name
+	 * @param nameStart
+	 *            - the start index of the location name
+	 * @param nameEnd
+	 *            - the end index (exclusive) of the location name
+	 * @return the location code or STATUS_FAILED (-1) if there is no match
+	 */
+	public static short lookup(CharSequence src, int areaStart, int areaEnd,
+			int nameStart, int nameEnd) {
+		return lookup(src, areaStart, areaEnd, src, nameStart, nameEnd);
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Gets the location code for a key made of one or two parts. When the
+	 * second part is given, the key is read as "[first], [second]".
+	 */
+	private static short lookup(CharSequence first, int firstStart,
+			int firstEnd, CharSequence second, int secondStart, int secondEnd) {
+		/* Ignore surrounding whitespace on each part */
+		while ((firstStart < firstEnd)
+				&& Character.isWhitespace(first.charAt(firstStart))) {
+			firstStart++;
+		}
+		while ((firstEnd > firstStart)
+				&& Character.isWhitespace(first.charAt(firstEnd - 1))) {
+			firstEnd--;
+		}
+		if (second != null) {
+			while ((secondStart < secondEnd)
+					&& Character.isWhitespace(second.charAt(secondStart))) {
+				secondStart++;
+			}
+			while ((secondEnd > secondStart)
+					&& Character.isWhitespace(second.charAt(secondEnd - 1))) {
+				secondEnd--;
+			}
+		}
+
+		long h = hashPart(FNV_OFFSET, first, firstStart, firstEnd);
+		if (second != null) {
+			h = hashChar(hashChar(h, ','), ' ');
+			h = hashPart(h, second, secondStart, secondEnd);
+		}
+
+		short code = slotCodes[getSlot(h)];
+		if ((code >= 0)
+				&& matches(Constants.locStr[code], first, firstStart, firstEnd,
+						second, secondStart, secondEnd)) {
+			return code;
+		}
+
+		/* Not an exact match; try the slow way */
+		StringBuilder sb = new StringBuilder();
+		appendNormalized(sb, first, firstStart, firstEnd);
+		if (second != null) {
+			sb.append(", ");
+			appendNormalized(sb, second, secondStart, secondEnd);
+		}
+		return lookupAlias(sb.toString());
+	}
+
+	/**
+	 * Gets the location code for a key which has no exact match by scanning
+	 * for the first location string containing it
+	 * 
+	 * @param key
+	 *            - the normalized key
+	 * @return the location code or STATUS_FAILED (-1) if there is no match
+	 */
+	private static short lookupAlias(String key) {
+		synchronized (aliases) {
+			Short code = aliases.get(key);
+			if (code != null) {
+				return code;
+			}
+		}
+
+		short code = STATUS_FAILED;
+		for (int i = 0; i < Constants.locStr.length; i++) {
+			if (Constants.locStr[i].contains(key)) {
+				code = (short) i;
+				break;
+			}
+		}
+
+		synchronized (aliases) {
+			/* Don't let garbage keys grow this forever */
+			if (aliases.size() < MAX_ALIASES) {
+				aliases.put(key, code);
+			}
+		}
+		return code;
+	}
+
+	/**
+	 * Builds the perfect hash table from Constants.locStr. Buckets are filled
+	 * largest first, trying seeds until all keys of a bucket land on empty and
+	 * distinct slots.
+	 */
+	private static void buildTable() {
+		String keys[] = Constants.locStr;
+		long hashes[] = new long[keys.length];
+		int bucketSizes[] = new int[BUCKET_COUNT];
+
+		for (int i = 0; i < keys.length; i++) {
+			hashes[i] = hashPart(FNV_OFFSET, keys[i], 0, keys[i].length());
+			bucketSizes[getBucket(hashes[i])]++;
+		}
+
+		for (int i = 0; i < TABLE_SIZE; i++) {
+			slotCodes[i] = STATUS_FAILED;
+		}
+
+		/* Order the buckets by size, largest first */
+		Integer bucketOrder[] = new Integer[BUCKET_COUNT];
+		for (int b = 0; b < BUCKET_COUNT; b++) {
+			bucketOrder[b] = b;
+		}
+		for (int i = 1; i < BUCKET_COUNT; i++) {
+			int j = i;
+			while ((j > 0)
+					&& (bucketSizes[bucketOrder[j - 1]] < bucketSizes[bucketOrder[j]])) {
+				Integer temp = bucketOrder[j];
+				bucketOrder[j] = bucketOrder[j - 1];
+				bucketOrder[j - 1] = temp;
+				j--;
+			}
+		}
+
+		int slots[] = new int[keys.length];
+		for (int o = 0; o < BUCKET_COUNT; o++) {
+			int b = bucketOrder[o];
+			if (bucketSizes[b] == 0) {
+				break;
+			}
+
+			int seed;
+			for (seed = 0; seed < MAX_SEED; seed++) {
+				bucketSeeds[b] = seed;
+				if (tryPlaceBucket(b, hashes, slots)) {
+					break;
+				}
+			}
+
+			if (seed == MAX_SEED) {
+				throw new IllegalStateException("[LocationIndex] Unable to "
+						+ "build perfect hash table!");
+			}
+		}
+	}
+
+	/**
+	 * Attempts to place all keys of a bucket in the table using the bucket's
+	 * current seed
+	 * 
+	 * @return true if all keys of the bucket were placed
+	 */
+	private static boolean tryPlaceBucket(int bucket, long hashes[],
+			int slots[]) {
+		int placed = 0;
+		for (int i = 0; i < hashes.length; i++) {
+			if (getBucket(hashes[i]) != bucket) {
+				continue;
+			}
+
+			int slot = getSlot(hashes[i]);
+			if (slotCodes[slot] != STATUS_FAILED) {
+				/* Taken; undo what we placed so far */
+				for (int j = 0; j < i; j++) {
+					if ((getBucket(hashes[j]) == bucket)
+							&& (slotCodes[slots[j]] == j)) {
+						slotCodes[slots[j]] = STATUS_FAILED;
+					}
+				}
+				return false;
+			}
+
+			slotCodes[slot] = (short) i;
+			slots[i] = slot;
+			placed++;
+		}
+		return (placed > 0);
+	}
+
+	private static int getBucket(long h) {
+		return (int) (h >>> (64 - BUCKET_BITS));
+	}
+
+	private static int getSlot(long h) {
+		long x = h + (bucketSeeds[getBucket(h)] * GOLDEN);
+		x ^= (x >>> 33);
+		x *= 0xFF51AFD7ED558CCDL;
+		x ^= (x >>> 33);
+		return (int) (x & (TABLE_SIZE - 1));
+	}
+
+	private static long hashChar(long h, char c) {
+		return (h ^ c) * FNV_PRIME;
+	}
+
+	/**
+	 * Hashes part of a key, normalizing it along the way
+	 */
+	private static long hashPart(long h, CharSequence src, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = src.charAt(i);
+			if (c == REPLACEMENT_CHAR) {
+				/* A broken "\u00F1" shows up as a pair of these */
+				if ((i + 1 < end) && (src.charAt(i + 1) == REPLACEMENT_CHAR)) {
+					i++;
+				}
+				c = 'n';
+			} else if (c == '\u00F1') {
+				c = 'n';
+			}
+			h = hashChar(h, c);
+		}
+		return h;
+	}
+
+	/**
+	 * Checks whether a location string equals the normalized key
+	 */
+	private static boolean matches(String locStr, CharSequence first,
+			int firstStart, int firstEnd, CharSequence second,
+			int secondStart, int secondEnd) {
+		int pos = matchPart(locStr, 0, first, firstStart, firstEnd);
+		if (pos < 0) {
+			return false;
+		}
+
+		if (second != null) {
+			if (!locStr.startsWith(", ", pos)) {
+				return false;
+			}
+			pos = matchPart(locStr, pos + 2, second, secondStart, secondEnd);
+			if (pos < 0) {
+				return false;
+			}
+		}
+
+		return (pos == locStr.length());
+	}
+
+	/**
+	 * Compares part of a key against a location string starting at pos
+	 * 
+	 * @return the position after the matched part or -1 on a mismatch
+	 */
+	private static int matchPart(String locStr, int pos, CharSequence src,
+			int start, int end) {
+		for (int i = start; i < end; i++, pos++) {
+			char c = src.charAt(i);
+			if (c == REPLACEMENT_CHAR) {
+				if ((i + 1 < end) && (src.charAt(i + 1) == REPLACEMENT_CHAR)) {
+					i++;
+				}
+				c = 'n';
+			} else if (c == '\u00F1') {
+				c = 'n';
+			}
+
+			if ((pos >= locStr.length()) || (locStr.charAt(pos) != c)) {
+				return -1;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Appends the normalized form of part of a key
+	 */
+	private static void appendNormalized(StringBuilder sb, CharSequence src,
+			int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = src.charAt(i);
+			if (c == REPLACEMENT_CHAR) {
+				if ((i + 1 < end) && (src.charAt(i + 1) == REPLACEMENT_CHAR)) {
+					i++;
+				}
+				c = 'n';
+			} else if (c == '\u00F1') {
+				c = 'n';
+			}
+			sb.append(c);
+		}
+	}
+}
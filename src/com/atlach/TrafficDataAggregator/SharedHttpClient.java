@@ -0,0 +1,475 @@
+package com.atlach.TrafficDataAggregator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>SharedHttpClient Class</b> </br>HTTP client layer shared by the
+ * TrafficDataManager and the WeatherDataManager. </br></br>Connections are kept
+ * alive and reused between requests: every response body is read to the end
+ * and closed so that its connection goes back to the keep-alive cache of
+ * HttpURLConnection instead of being torn down. The number of requests in
+ * flight is capped by the pool limit, and responses are requested with gzip or
+ * deflate encoding and decoded transparently. </br></br>The pool limit can be
+ * set with <i>-Dmmda.http.maxConnections=[n]</i>.
+ * 
+ * @author francis
+ * 
+ */
+public class SharedHttpClient {
+	public static final String MAX_CONNECTIONS_PROPERTY = "mmda.http.maxConnections";
+	public static final int DEFAULT_MAX_CONNECTIONS = 10;
+
+	private static final String ACCEPT_ENCODING = "gzip, deflate";
+	private static final int READ_BUFFER_SIZE = 8192;
+	/* Leftover bytes we are willing to read just to save a connection */
+	private static final int MAX_DRAIN_SIZE = 65536;
+
+	private static SharedHttpClient sharedClient = null;
+
+	private Semaphore connectionPermits;
+	private int maxConnections;
+
+	public SharedHttpClient(int maxConnections) {
+		this.maxConnections = maxConnections;
+		this.connectionPermits = new Semaphore(maxConnections, true);
+
+		/*
+		 * HttpURLConnection only keeps http.maxConnections idle connections
+		 * per host (5 by default). Raise it to match our own limit unless
+		 * someone already set it. This has to happen before the first
+		 * connection is made.
+		 */
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections",
+					Integer.toString(maxConnections));
+		}
+	}
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Gets the client instance shared by the whole program
+	 * 
+	 * @return the shared SharedHttpClient object
+	 */
+	public static synchronized SharedHttpClient getInstance() {
+		if (sharedClient == null) {
+			int maxConnections = DEFAULT_MAX_CONNECTIONS;
+			try {
+				maxConnections = Integer.parseInt(System.getProperty(
+						MAX_CONNECTIONS_PROPERTY,
+						Integer.toString(DEFAULT_MAX_CONNECTIONS)));
+			} catch (NumberFormatException e) {
+				System.out.println("[SharedHttpClient] Invalid "
+						+ MAX_CONNECTIONS_PROPERTY + ", using default.");
+			}
+			sharedClient = new SharedHttpClient(Math.max(maxConnections, 1));
+		}
+		return sharedClient;
+	}
+
+	/**
+	 * Gets the maximum number of requests allowed in flight at once
+	 * 
+	 * @return the pool limit
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Opens a GET request to the given URL. This blocks while the pool limit
+	 * has been reached. The request is not sent until the response code or
+	 * body is asked for, so request headers can still be added.
+	 * </br></br>The returned Exchange must always be closed.
+	 * 
+	 * @param urlStr
+	 *            - the URL to request
+	 * @param connectTimeout
+	 *            - the connect timeout in milliseconds
+	 * @param readTimeout
+	 *            - the read timeout in milliseconds
+	 * @return an Exchange object for this request
+	 * @throws IOException
+	 */
+	public Exchange open(String urlStr, int connectTimeout, int readTimeout)
+			throws IOException {
+		URL url = new URL(urlStr);
+
+		try {
+			connectionPermits.acquire();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted waiting for a "
+					+ "connection to " + url.getHost());
+		}
+
+		try {
+			HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+			conn.setRequestMethod("GET");
+			conn.setConnectTimeout(connectTimeout);
+			conn.setReadTimeout(readTimeout);
+			conn.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+			return new Exchange(conn);
+		} catch (IOException e) {
+			connectionPermits.release();
+			throw e;
+		} catch (RuntimeException e) {
+			connectionPermits.release();
+			throw e;
+		}
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Wraps the raw response stream with the decoder for its Content-Encoding
+	 * 
+	 * @param raw
+	 *            - the raw response stream
+	 * @param encoding
+	 *            - the Content-Encoding header value (may be null)
+	 * @return the decoded response stream
+	 * @throws IOException
+	 */
+	private static InputStream decode(InputStream raw, String encoding)
+			throws IOException {
+		if (encoding == null) {
+			return raw;
+		}
+
+		encoding = encoding.trim().toLowerCase();
+		if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			return new GZIPInputStream(raw, READ_BUFFER_SIZE);
+		}
+
+		if (encoding.equals("deflate")) {
+			/*
+			 * "deflate" is supposed to be zlib-wrapped, but some servers send
+			 * raw deflate data. Peek at the header to tell them apart.
+			 */
+			PushbackInputStream in = new PushbackInputStream(raw, 2);
+			int b0 = in.read();
+			int b1 = in.read();
+			if (b1 != -1) {
+				in.unread(b1);
+			}
+			if (b0 != -1) {
+				in.unread(b0);
+			}
+
+			boolean isZlib = (b0 != -1) && (b1 != -1) && ((b0 & 0x0F) == 8)
+					&& ((((b0 << 8) | b1) % 31) == 0);
+			final Inflater inflater = new Inflater(!isZlib);
+			return new InflaterInputStream(in, inflater, READ_BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						/* Not done for us since the Inflater is our own */
+						inflater.end();
+					}
+				}
+			};
+		}
+
+		return raw;
+	}
+
+	/*****************************************************************************************/
+	/** INTERNAL CLASSES **/
+	/*****************************************************************************************/
+	/**
+	 * <b>Exchange Object</b> </br>A single request/response going through the
+	 * SharedHttpClient. Closing it reads off whatever is left of the response
+	 * so that the connection can be reused, while aborting it drops the
+	 * connection altogether.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	public class Exchange {
+		private HttpURLConnection conn;
+		private InputStream rawStream = null;
+		private InputStream decodedStream = null;
+		private AtomicBoolean isReleased = new AtomicBoolean(false);
+		private volatile boolean isAborted = false;
+
+		private Exchange(HttpURLConnection conn) {
+			this.conn = conn;
+		}
+
+		/**
+		 * Gets the underlying connection
+		 * 
+		 * @return the HttpURLConnection object
+		 */
+		public HttpURLConnection getConnection() {
+			return conn;
+		}
+
+		/**
+		 * Adds a request header. Only valid before the request is sent.
+		 * 
+		 * @param key
+		 *            - the header name
+		 * @param value
+		 *            - the header value
+		 */
+		public void setRequestProperty(String key, String value) {
+			conn.setRequestProperty(key, value);
+		}
+
+		/**
+		 * Sends the request if needed and gets the response code
+		 * 
+		 * @return the HTTP response code
+		 * @throws IOException
+		 */
+		public int getResponseCode() throws IOException {
+			return conn.getResponseCode();
+		}
+
+		/**
+		 * Gets a response header
+		 * 
+		 * @param name
+		 *            - the header name
+		 * @return the header value or null if it was not sent
+		 */
+		public String getHeaderField(String name) {
+			return conn.getHeaderField(name);
+		}
+
+		/**
+		 * Gets the decoded response body stream. For error responses, this is
+		 * the error body instead.
+		 * 
+		 * @return the decoded response stream
+		 * @throws IOException
+		 */
+		public InputStream getInputStream() throws IOException {
+			if (decodedStream == null) {
+				if (conn.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+					rawStream = conn.getErrorStream();
+				} else {
+					rawStream = conn.getInputStream();
+				}
+
+				if (rawStream == null) {
+					rawStream = new ByteArrayInputStream(new byte[0]);
+				} else if (conn.getContentLengthLong() >= 0) {
+					rawStream = new LengthCheckedInputStream(rawStream,
+							conn.getContentLengthLong());
+				}
+				decodedStream = decode(rawStream,
+						conn.getHeaderField("Content-Encoding"));
+			}
+			return decodedStream;
+		}
+
+		/**
+		 * Reads the whole decoded response body
+		 * 
+		 * @return the response body bytes
+		 * @throws IOException
+		 */
+		public byte[] readBody() throws IOException {
+			InputStream in = getInputStream();
+			ByteArrayOutputStream body = new ByteArrayOutputStream(
+					READ_BUFFER_SIZE);
+			byte buf[] = new byte[READ_BUFFER_SIZE];
+
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				body.write(buf, 0, len);
+			}
+			return body.toByteArray();
+		}
+
+		/**
+		 * Drops the connection right away. Any read blocked on it will fail.
+		 * Safe to call from another thread.
+		 */
+		public void abort() {
+			isAborted = true;
+			conn.disconnect();
+		}
+
+		/**
+		 * Finishes this exchange. Whatever is left of the response is read
+		 * off (up to a limit) so that the connection can go back to the
+		 * keep-alive cache, and the pool permit is released.
+		 */
+		public void close() {
+			if (!isReleased.compareAndSet(false, true)) {
+				return;
+			}
+
+			try {
+				if (isAborted) {
+					/* Already disconnected; just free the decoder */
+					closeDecoder();
+					return;
+				}
+
+				if (rawStream == null) {
+					/* Nobody read the body; still need it off the wire */
+					if (conn.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+						rawStream = conn.getErrorStream();
+					} else {
+						rawStream = conn.getInputStream();
+					}
+				}
+
+				if (rawStream != null) {
+					if (drain(rawStream)) {
+						/* Closing the decoder also frees its Inflater */
+						if (decodedStream != null) {
+							decodedStream.close();
+						} else {
+							rawStream.close();
+						}
+					} else {
+						/* Too much left over, not worth keeping */
+						closeDecoder();
+						conn.disconnect();
+					}
+				}
+			} catch (IOException e) {
+				/* The connection is broken anyway */
+				closeDecoder();
+				conn.disconnect();
+			} finally {
+				connectionPermits.release();
+			}
+		}
+
+		/**
+		 * Closes the decoded stream, if any, when the connection is dropped
+		 * instead of reused. For deflate responses this is what frees the
+		 * Inflater, so it is closed even though its contents are discarded.
+		 */
+		private void closeDecoder() {
+			if (decodedStream == null) {
+				return;
+			}
+
+			try {
+				decodedStream.close();
+			} catch (IOException e) {
+				/* Dropping the connection anyway */
+			}
+		}
+
+		/**
+		 * Reads the given stream to its end
+		 * 
+		 * @param in
+		 *            - the stream to drain
+		 * @return true if the end was reached within the drain limit
+		 * @throws IOException
+		 */
+		private boolean drain(InputStream in) throws IOException {
+			byte buf[] = new byte[READ_BUFFER_SIZE];
+			int total = 0;
+
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				total += len;
+				if (total > MAX_DRAIN_SIZE) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * <b>LengthCheckedInputStream Object</b> </br>Raw response stream which
+	 * fails with an EOFException if it ends before the Content-Length the
+	 * server promised. HttpURLConnection reports such a cut off body as a
+	 * normal end of stream, which would pass half a page off as complete.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class LengthCheckedInputStream extends FilterInputStream {
+		private long remaining;
+
+		public LengthCheckedInputStream(InputStream in, long contentLength) {
+			super(in);
+			remaining = contentLength;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				checkEnd();
+			} else {
+				remaining--;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte b[], int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n == -1) {
+				checkEnd();
+			} else {
+				remaining -= n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			remaining -= skipped;
+			return skipped;
+		}
+
+		private void checkEnd() throws EOFException {
+			if (remaining > 0) {
+				throw new EOFException("Connection closed with " + remaining
+						+ " bytes of the response left");
+			}
+		}
+	}
+}
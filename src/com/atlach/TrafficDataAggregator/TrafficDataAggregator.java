@@ -2,11 +2,8 @@ package com.atlach.TrafficDataAggregator;
 
 import java.io.File;
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
 
@@ -155,20 +152,18 @@ public class TrafficDataAggregator {
 		 */
 
 		try {
-			/* Prepare the HistData file we will be writing on */
-			fsi.prepareHistDataFile(histDataFileName, hdInfo, useCompression);
-
 			/*
-			 * Cycle through each HistData object in the tagCentricList and save
-			 * the information to the specified HistData file
+			 * Write the header and every HistData object in the tagCentricList
+			 * to the HistData file in one go
 			 */
-			int i = 0;
-			for (i = 0; i < tagCentricList.size(); i++) {
-				HistData hd = tagCentricList.get(i);
-				fsi.saveDataToFile(histDataFileName, hd.dataList, hd.tagset,
-						true, useCompression);
+			result = fsi.saveHistDataFile(histDataFileName, hdInfo,
+					tagCentricList, useCompression);
+			if (result != STATUS_OK) {
+				System.out
+						.println("[generateHistDataFile] Failed to save HistData file!");
+				return STATUS_FAILED;
 			}
-			System.out.println("INFO: A total of " + i
+			System.out.println("INFO: A total of " + tagCentricList.size()
 					+ " elements were changed.");
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -275,29 +270,27 @@ public class TrafficDataAggregator {
 		 * parseHistDataFiles() being called before it...
 		 */
 
-		try {
-			/* Prepare the HistData file we will be writing on */
-			fsi.prepareHistDataFile(histDataFileName, hdInfo, useCompression);
+		/* Only the HistData objects which have changed get written */
+		List<HistData> changedList = new ArrayList<HistData>();
+		for (int i = 0; i < refList.size(); i++) {
+			if (refList.get(i).hasChanged) {
+				System.out.println("> Incorporating changes for: "
+						+ refList.get(i).tagset);
+				changedList.add(refList.get(i));
+			}
+		}
 
-			/*
-			 * Cycle through each HistData object in the tagCentricList and save
-			 * the information to the specified HistData file
-			 */
-			int c = 0;
-			for (int i = 0; i < refList.size(); i++) {
-				if (refList.get(i).hasChanged == false) {
-					continue;
-				} else {
-					System.out.println("> Incorporating changes for: "
-							+ refList.get(i).tagset);
-				}
-				HistData hd = refList.get(i);
-				fsi.saveDataToFile(histDataFileName, hd.dataList, hd.tagset,
-						true, useCompression);
-				c++;
+		try {
+			/* Write the header and the changes to the HistData file in one go */
+			result = fsi.saveHistDataFile(histDataFileName, hdInfo,
+					changedList, useCompression);
+			if (result != STATUS_OK) {
+				System.out
+						.println("[updateHistDataFile] Failed to save HistData file!");
+				return STATUS_FAILED;
 			}
 
-			System.out.println("INFO: A total of " + c
+			System.out.println("INFO: A total of " + changedList.size()
 					+ " elements were changed.");
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -384,10 +377,9 @@ public class TrafficDataAggregator {
 
 		try {
 			HistData oldHistData = null;
-			HistData newHistData = new HistData("UNKNOWN", partFileTag);
 			/* Now, load the part file */
-			newHistData.dataList = fsi.loadPartDataFile(partFileName);
-			if (newHistData.dataList == null) {
+			List<LineInfo> partDataList = fsi.loadPartDataFile(partFileName);
+			if (partDataList == null) {
 				System.out
 						.println("[updateHistDataFile] ERROR: Failed to load specified"
 								+ " Part File!");
@@ -395,7 +387,7 @@ public class TrafficDataAggregator {
 			}
 
 			/* Attempt to reduce the data loaded from the part file */
-			newHistData = dfm.reducePartHistData(newHistData);
+			HistData newHistData = dfm.reducePartHistData(partDataList);
 
 			/*
 			 * If this tag is not distinct, then we must merge it with old
@@ -419,12 +411,15 @@ public class TrafficDataAggregator {
 			/* Set the tagset for the newHistData object */
 			newHistData.tagset = partFileTag;
 
-			/* Prepare the HistData file we will be writing on */
-			fsi.prepareHistDataFile(histDataFileName, hdInfo, useCompression);
-
-			/* Save the data to the HistData file */
-			fsi.saveDataToFile(histDataFileName, newHistData.dataList,
-					newHistData.tagset, true, useCompression);
+			/* Write the header and the data to the HistData file in one go */
+			List<HistData> changedList = new ArrayList<HistData>();
+			changedList.add(newHistData);
+			if (fsi.saveHistDataFile(histDataFileName, hdInfo, changedList,
+					useCompression) != STATUS_OK) {
+				System.out
+						.println("[updateHistDataFile] Failed to save HistData file!");
+				return STATUS_FAILED;
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 			return STATUS_FAILED;
@@ -479,12 +474,61 @@ public class TrafficDataAggregator {
 	 */
 	public int pushTrafficData(String trafficDataFileName, String timestamp,
 			String dataTag, String partFileName) {
-		System.out.println("[pushTrafficData] Started");
-		int result = STATUS_FAILED;
 		FileSystemInterface fsi = new FileSystemInterface();
 
 		/* Load line data from the specified traffic data file */
 		LineDataList dataList = fsi.loadTrafficDataFile(trafficDataFileName);
+		if (dataList == null) {
+			System.out
+					.println("[pushTrafficData] Error: Failed to load traffic data file: "
+							+ trafficDataFileName);
+			return STATUS_FAILED;
+		}
+
+		return pushTrafficData(dataList, timestamp, dataTag, partFileName);
+	}
+
+	/**
+	 * Pushes Traffic Data already held in memory to a Part File maintained by
+	 * the TrafficDataAggregator. This is the compact version of this method,
+	 * filling in the name of the Part File with the default Part File name.
+	 * </br> <i>(This is used when the TrafficDataIndexer runs in the same
+	 * program, saving us from reading back the file it just wrote.)</i>
+	 * 
+	 * @param dataList
+	 *            - the LineDataList containing the Traffic Data to push
+	 * @param timestamp
+	 *            - the time to associate with this data part
+	 * @param dataTag
+	 *            - the tag to associate with this data part
+	 * @return an integer indicating the exit status for this method
+	 */
+	public int pushTrafficData(LineDataList dataList, String timestamp,
+			String dataTag) {
+		return pushTrafficData(dataList, timestamp, dataTag,
+				defaultPartFileName);
+	}
+
+	/**
+	 * Pushes Traffic Data already held in memory to a Part File maintained by
+	 * the TrafficDataAggregator. This is the full version of this method,
+	 * having the Part File name as an additional argument
+	 * 
+	 * @param dataList
+	 *            - the LineDataList containing the Traffic Data to push
+	 * @param timestamp
+	 *            - the time to associate with this data part
+	 * @param dataTag
+	 *            - the tag to associate with this data part
+	 * @param partFileName
+	 *            - the name of the target the Part File
+	 * @return an integer indicating the exit status for this method
+	 */
+	public int pushTrafficData(LineDataList dataList, String timestamp,
+			String dataTag, String partFileName) {
+		System.out.println("[pushTrafficData] Started");
+		int result = STATUS_FAILED;
+		FileSystemInterface fsi = new FileSystemInterface();
 
 		/* Associate the line data with a specific time value */
 		dataList.timestamp = timestamp;
@@ -658,13 +702,13 @@ public class TrafficDataAggregator {
 			return STATUS_FAILED;
 		}
 
-		/* Get the date string for today */
-		String todayStr = getCurrentDateString();
+		/* Get the date for today */
+		int today = getCurrentEpochDay();
 
 		/* Check if there is already an entry for this in the loaded tags */
 		int i = 0;
 		for (i = 0; i < tagInfoList.size(); i++) {
-			if (tagInfoList.get(i).date.equals(todayStr)) {
+			if (tagInfoList.get(i).epochDay == today) {
 				/* save the current index */
 				break;
 			}
@@ -673,17 +717,16 @@ public class TrafficDataAggregator {
 		if (i == tagInfoList.size()) {
 			/* This means that there wasn't a tag entry for this date before */
 			/* Get the tag string for today */
-			String defTag = getDefaultFileTag(todayStr);
+			String defTag = getDefaultFileTag(today);
 			String weatherTag = getWeatherTag();
 
-			tagInfoList
-					.add(new TagInfo(todayStr, (defTag + ", " + weatherTag)));
+			tagInfoList.add(new TagInfo(today, (defTag + ", " + weatherTag)));
 		} else {
 			/*
 			 * Otherwise, extract the old weather tag and see if it should be
 			 * "upgraded" with the current weather information
 			 */
-			String defTag = getDefaultFileTag(todayStr);
+			String defTag = getDefaultFileTag(today);
 			String weatherTag = getWeatherTag();
 			String currentTag = tagInfoList.get(i).tagset;
 			String newWeatherTag = "retain";
@@ -739,15 +782,16 @@ public class TrafficDataAggregator {
 			"Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday" };
 
 	/**
-	 * Gets the current date string, specific to GMT+8
+	 * Gets the current date in days since 1970-01-01, going by the local time
+	 * of the system
 	 * 
-	 * @return the current date string
+	 * @return the current date
 	 */
-	private String getCurrentDateString() {
-		TimeZone tz = TimeZone.getTimeZone("GMT+8");
-		Date date = Calendar.getInstance(tz).getTime();
+	private int getCurrentEpochDay() {
+		Calendar cal = Calendar.getInstance();
 
-		return new SimpleDateFormat("yyyyMMdd").format(date);
+		return DateIntervalSet.toEpochDay(cal.get(Calendar.YEAR),
+				cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DAY_OF_MONTH));
 	}
 
 	/**
@@ -792,20 +836,13 @@ public class TrafficDataAggregator {
 	/**
 	 * Attempts to get the default tag to be used for a specific date
 	 * 
+	 * @param epochDay
+	 *            - the date in days since 1970-01-01
 	 * @return a tag string
 	 */
-	private String getDefaultFileTag(String dateStr) {
-		SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd");
-		Date date = null;
-		try {
-			date = format.parse(dateStr);
-		} catch (ParseException e) {
-			e.printStackTrace();
-		}
-		Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT+8"));
-		cal.setTime(date);
-
-		int day = cal.get(Calendar.DAY_OF_WEEK);
+	private String getDefaultFileTag(int epochDay) {
+		/* 1970-01-01 was a Thursday; Sunday is 1, same as Calendar */
+		int day = (((epochDay % 7) + 11) % 7) + 1;
 
 		String dayType = "Weekend";
 
@@ -823,34 +860,7 @@ public class TrafficDataAggregator {
 	 * @return the previous day's date String
 	 */
 	private String getPreviousDayDate() {
-		TimeZone tz = TimeZone.getTimeZone("GMT+8");
-		Date date = Calendar.getInstance(tz).getTime();
-
-		String initDateStr = new SimpleDateFormat("yyyy/MM/dd").format(date);
-		String initDateSplit[] = initDateStr.split("/");
-
-		int year = Integer.parseInt(initDateSplit[0]);
-		int month = Integer.parseInt(initDateSplit[1]);
-		int day = Integer.parseInt(initDateSplit[2]);
-
-		if (day == 1) {
-			if (month == 1) {
-				month = 12;
-				year--;
-			} else {
-				month--;
-			}
-			day = 31;
-		} else {
-			day--;
-		}
-
-		String dayStr = ((day > 9) ? (Integer.toString(day)) : ("0" + day));
-		String monthStr = ((month > 9) ? (Integer.toString(month))
-				: ("0" + month));
-		String yearStr = (Integer.toString(year));
-
-		return (yearStr + "" + monthStr + "" + dayStr);
+		return DateIntervalSet.toDateString(getCurrentEpochDay() - 1);
 	}
 
 	/**
@@ -859,204 +869,16 @@ public class TrafficDataAggregator {
 	 * Data Files.
 	 * 
 	 * @param oldDateRange
+	 *            - the current date range string
 	 * @param newDateRange
-	 * @return
+	 *            - the date range string to be added
+	 * @return the combined date range string
 	 */
 	private String updateDateRangeString(String oldDateRange,
 			String newDateRange) {
-		String dateRangeStr = "";
-
-		/*
-		 * Combine the oldDateRange and newDateRange strings, and then
-		 * deconstruct the result into a string array
-		 */
-		String dateRangeArr[] = (oldDateRange + "," + newDateRange).split(",");
-
-		/* */
-		for (int i = 0; i < dateRangeArr.length; i++) {
-			if (dateRangeArr[i].equals("")) {
-				continue;
-			}
-
-			/* Case for when this is a range string */
-			if (dateRangeArr[i].contains("-")) {
-				String rangeStr[] = dateRangeArr[i].split("-");
-				int highRange = Integer.parseInt(rangeStr[1].trim());
-				int lowRange = Integer.parseInt(rangeStr[0].trim());
-
-				for (int j = 0; j < dateRangeArr.length; j++) {
-					if (i == j) {
-						continue;
-					}
-
-					String result[] = adjustDateRange(dateRangeArr[j],
-							rangeStr, highRange, lowRange);
-
-					/* Apply the results */
-					rangeStr[0] = result[0];
-					rangeStr[1] = result[1];
-					dateRangeArr[j] = result[2];
-				}
-
-				dateRangeArr[i] = (rangeStr[0] + "-" + rangeStr[1]);
-
-				/* Case for when this is a single date string */
-			} else {
-				int dateVal = Integer.parseInt(dateRangeArr[i].trim());
-				for (int j = 0; j < dateRangeArr.length; j++) {
-					if (i == j) {
-						continue;
-					}
-
-					/* Case I: Date vs Date Range */
-					if (dateRangeArr[j].contains("-")) {
-						String rangeStr[] = dateRangeArr[j].split("-");
-						int highRange = Integer.parseInt(rangeStr[1].trim());
-						int lowRange = Integer.parseInt(rangeStr[0].trim());
-
-						if ((dateVal <= highRange) && (dateVal >= lowRange)) {
-							dateRangeArr[i] = "";
-							break;
-						}
-
-						if (dateVal == highRange + 1) {
-							dateRangeArr[j] = rangeStr[0] + "-"
-									+ dateRangeArr[i];
-							dateRangeArr[i] = "";
-							break;
-						}
-
-						if (dateVal == lowRange + 1) {
-							dateRangeArr[j] = dateRangeArr[i] + "-"
-									+ rangeStr[1];
-							dateRangeArr[i] = "";
-							break;
-						}
-						/* Case II: Date vs Date */
-					} else if (dateRangeArr[j].equals("") == false) {
-						int compVal = Integer.parseInt(dateRangeArr[j].trim());
-						if (dateVal == compVal) {
-							dateRangeArr[i] = "";
-							break;
-						}
-						if (dateVal == compVal + 1) {
-							dateRangeArr[j] = (dateRangeArr[j] + "-" + dateRangeArr[i]);
-							dateRangeArr[i] = "";
-							break;
-						}
-						if (dateVal == compVal - 1) {
-							dateRangeArr[j] = (dateRangeArr[i] + "-" + dateRangeArr[j]);
-							dateRangeArr[i] = "";
-							break;
-						}
-					}
-				}
-			}
-
-		}
-
-		for (int i = 0; i < dateRangeArr.length; i++) {
-			if (dateRangeArr[i].equals("")) {
-				continue;
-			}
-			dateRangeStr += dateRangeArr[i] + ",";
-		}
-
-		return (dateRangeStr.charAt(dateRangeStr.length() - 1) != ',' ? dateRangeStr
-				: dateRangeStr.substring(0, dateRangeStr.length() - 1));
-	}
-
-	/**
-	 * Adjusts an intermediate date range string by attempting to merge it with
-	 * another date range string. Forgot exactly how this works...
-	 * 
-	 * @param compStr
-	 *            - the date range string which we will attempt to merge to the
-	 *            target date range string
-	 * @param rangeStr
-	 *            - an array containing info about the date range string to
-	 *            merge to
-	 * @param highRange
-	 *            - the upper range of the target date range string
-	 * @param lowRange
-	 *            - the lower range of the target date range string
-	 * @return
-	 */
-	private String[] adjustDateRange(String compStr, String rangeStr[],
-			int highRange, int lowRange) {
-		String newRangeArr[] = { rangeStr[0], rangeStr[1], compStr };
-
-		/* Case I: Date Range vs Date Range */
-		if (compStr.contains("-")) {
-			String innerRangeStr[] = compStr.split("-");
-			int innerHighRange = Integer.parseInt(innerRangeStr[1].trim());
-			int innerLowRange = Integer.parseInt(innerRangeStr[0].trim());
-
-			/* Check for overlap */
-			if ((innerHighRange > lowRange) && (innerHighRange < highRange)) {
-				if (innerLowRange < lowRange) {
-					lowRange = innerLowRange;
-					newRangeArr[0] = innerRangeStr[0];
-				}
-				newRangeArr[1] = rangeStr[1];
-				newRangeArr[2] = "";
-				return newRangeArr;
-			}
-
-			/* Check for overlap */
-			if ((innerLowRange < highRange) && (innerLowRange > lowRange)) {
-				if (innerHighRange > highRange) {
-					highRange = innerHighRange;
-					newRangeArr[1] = innerRangeStr[1];
-				}
-				newRangeArr[0] = rangeStr[0];
-				newRangeArr[2] = "";
-				return newRangeArr;
-			}
-
-			/* Consider near overlaps too */
-			if (innerHighRange + 1 == lowRange) {
-				lowRange = innerLowRange;
-				newRangeArr[0] = innerRangeStr[0];
-				newRangeArr[1] = rangeStr[1];
-				newRangeArr[2] = "";
-				return newRangeArr;
-			}
-
-			/* Consider near overlaps too */
-			if (innerLowRange - 1 == highRange) {
-				highRange = innerHighRange;
-				newRangeArr[1] = innerRangeStr[1];
-				newRangeArr[0] = rangeStr[0];
-				newRangeArr[2] = "";
-				return newRangeArr;
-			}
-
-			/* Case II: Date Range vs Date */
-		} else if (compStr.equals("") == false) {
-			int dateVal = Integer.parseInt(compStr.trim());
-			if ((dateVal >= lowRange) && (dateVal <= highRange)) {
-				newRangeArr[0] = rangeStr[0];
-				newRangeArr[1] = rangeStr[1];
-				newRangeArr[2] = "";
-				return newRangeArr;
-			}
-			if (dateVal == lowRange - 1) {
-				lowRange = dateVal;
-				newRangeArr[0] = compStr;
-				newRangeArr[1] = rangeStr[1];
-				newRangeArr[2] = "";
-				return newRangeArr;
-			}
-			if (dateVal == highRange + 1) {
-				highRange = dateVal;
-				newRangeArr[0] = rangeStr[0];
-				newRangeArr[1] = compStr;
-				newRangeArr[2] = "";
-				return newRangeArr;
-			}
-		}
-		return newRangeArr;
+		DateIntervalSet dateSet = DateIntervalSet.parse(oldDateRange);
+		dateSet.addAll(DateIntervalSet.parse(newDateRange));
+		return dateSet.toString();
 	}
 
 	/**
@@ -1090,8 +912,10 @@ public class TrafficDataAggregator {
 				String compTagset = tagCentricList.get(j).tagset;
 
 				if (insTagset == null) {
-					System.out.println("inb4:" + baseList.get(i).date);
-					baseList.get(i).tagset = getDefaultFileTag(baseList.get(i).date);
+					System.out.println("inb4:"
+							+ baseList.get(i).getDateString());
+					baseList.get(i).tagset = getDefaultFileTag(baseList
+							.get(i).epochDay);
 					insTagset = baseList.get(i).tagset;
 				}
 
@@ -1102,22 +926,24 @@ public class TrafficDataAggregator {
 					hasMerged = true;
 					System.out.println("Set to hasChanged: "
 							+ tagCentricList.get(j).tagset + "/"
-							+ tagCentricList.get(j).date);
+							+ tagCentricList.get(j).getDateString());
 				}
 			}
 			if (!hasMerged) {
 				HistData hd = baseList.get(i);
 
 				if (insTagset == null) {
-					System.out.println("inb4:" + baseList.get(i).date);
-					baseList.get(i).tagset = getDefaultFileTag(baseList.get(i).date);
+					System.out.println("inb4:"
+							+ baseList.get(i).getDateString());
+					baseList.get(i).tagset = getDefaultFileTag(baseList
+							.get(i).epochDay);
 					insTagset = baseList.get(i).tagset;
 				}
 
 				System.out.println("Set to hasChanged: " + hd.tagset + "/"
-						+ hd.date);
+						+ hd.getDateString());
 				hd.hasChanged = true;
-				hd.date = "UNKNOWN";
+				hd.epochDay = HistData.UNKNOWN_DATE;
 				tagCentricList.add(hd);
 			}
 		}
@@ -1,5 +1,6 @@
 package com.atlach.TrafficDataAggregator;
 
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
 import com.atlach.TrafficDataIndexer.TrafficDataIndexerNotifier;
 
 /* 	Copyright (C) 2013	Francis T., Zara P.
@@ -57,6 +58,26 @@ public class TrafficDataAggregatorMain implements TrafficDataIndexerNotifier {
 		}
 	}
 
+	/**
+	 * Runs Push Traffic Data using the TrafficDataAggregator through a thread.
+	 * This version pushes Traffic Data which is already held in memory.
+	 * 
+	 * @param dataList
+	 *            - the LineDataList containing the Traffic Data to push
+	 * @param timestamp
+	 *            - the timestamp to associate with the data
+	 */
+	public void runPushDataTask(LineDataList dataList, String timestamp) {
+		if (aggregatorPushDataTask == null) {
+			aggregatorPushDataTask = new PushTrafficDataTask(dataList,
+					timestamp, this);
+			if (aggregatorPushDataThread == null) {
+				aggregatorPushDataThread = new Thread(aggregatorPushDataTask);
+			}
+			aggregatorPushDataThread.start();
+		}
+	}
+
 	/**
 	 * Runs (Re)generate Historical Data using the TrafficDataAggregator through
 	 * a thread
@@ -120,6 +141,7 @@ public class TrafficDataAggregatorMain implements TrafficDataIndexerNotifier {
 	 */
 	class PushTrafficDataTask implements Runnable {
 		private String filename = null;
+		private LineDataList dataList = null;
 		private String timestamp = null;
 		public TrafficDataAggregator tda = null;
 		private TrafficDataIndexerNotifier notifEvent = null;
@@ -133,11 +155,25 @@ public class TrafficDataAggregatorMain implements TrafficDataIndexerNotifier {
 			this.notifEvent = e;
 		}
 
+		public PushTrafficDataTask(LineDataList dataList, String timestamp,
+				TrafficDataIndexerNotifier e) {
+			tda = new TrafficDataAggregator();
+
+			this.dataList = dataList;
+			this.timestamp = timestamp;
+			this.notifEvent = e;
+		}
+
 		@Override
 		public void run() {
 			isRunning = true;
 
-			int result = tda.pushTrafficData(filename, timestamp, "");
+			int result;
+			if (dataList != null) {
+				result = tda.pushTrafficData(dataList, timestamp, "");
+			} else {
+				result = tda.pushTrafficData(filename, timestamp, "");
+			}
 			// int result = tda.offloadCollectedData("TrafficData.part",
 			// "Weekend|Saturday, Weather|Rain|Moderate", new
 			// FileSystemInterface(), true);
@@ -188,4 +224,9 @@ public class TrafficDataAggregatorMain implements TrafficDataIndexerNotifier {
 	public void onTrafficDataFileSaved(String filename, String timestamp) {
 		/* Not Used */
 	}
+
+	@Override
+	public void onTrafficDataReady(LineDataList dataList, String timestamp) {
+		/* Not Used */
+	}
 }
@@ -0,0 +1,369 @@
+package com.atlach.TrafficDataAggregator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>TrafficFileParser Class</b> </br>Single-pass, byte-level parser for Raw
+ * Traffic Data Files. The whole file is read into a buffer which is kept and
+ * reused by each thread, and every line is scanned once for its field
+ * boundaries. Only the area and location fields are decoded (into a reused
+ * character buffer, for the LocationIndex lookup); the condition fields are
+ * read straight from the bytes. </br></br>The parser keeps the rules of the old
+ * readLine()-based one: a line needs exactly five fields (trailing empty
+ * fields not counted), an empty condition counts as 0 and gaps between
+ * location codes are filled with entries holding no data. Apart from the
+ * LineDataList itself, nothing is allocated for a valid file.
+ * 
+ * @author francis
+ * 
+ */
+public class TrafficFileParser {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int FIELD_COUNT = 5;
+	private static final int INITIAL_BUFFER_SIZE = 16384;
+	private static final int INITIAL_CHAR_BUFFER_SIZE = 256;
+	private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+	/* One parser (and so one set of buffers) per thread */
+	private static final ThreadLocal<TrafficFileParser> parsers = new ThreadLocal<TrafficFileParser>() {
+		@Override
+		protected TrafficFileParser initialValue() {
+			return new TrafficFileParser();
+		}
+	};
+
+	private byte buf[] = new byte[INITIAL_BUFFER_SIZE];
+	private char chars[] = new char[INITIAL_CHAR_BUFFER_SIZE];
+	private CharBuffer charView = CharBuffer.wrap(chars);
+	/* Start and end offsets of the fields of the current line */
+	private int fieldStarts[] = new int[FIELD_COUNT + 1];
+	private int fieldEnds[] = new int[FIELD_COUNT + 1];
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Parses a Raw Traffic Data File into a LineDataList, using the parser of
+	 * the calling thread
+	 * 
+	 * @param dataFile
+	 *            - a File object pertaining to the Raw Traffic Data File
+	 * @return a LineDataList with the Traffic Data for each line, or null if
+	 *         the file is missing or holds no valid lines
+	 * @throws IOException
+	 */
+	public static LineDataList parseFile(File dataFile) throws IOException {
+		if (dataFile.exists() == false) {
+			return null;
+		}
+		return parsers.get().parse(dataFile);
+	}
+
+	/**
+	 * Parses the contents of a Raw Traffic Data File
+	 * 
+	 * @param dataFile
+	 *            - a File object pertaining to the Raw Traffic Data File
+	 * @return a LineDataList with the Traffic Data for each line, or null if
+	 *         the file holds no valid lines
+	 * @throws IOException
+	 */
+	public LineDataList parse(File dataFile) throws IOException {
+		int len = readFile(dataFile);
+		return parse(buf, 0, len);
+	}
+
+	/**
+	 * Parses Raw Traffic Data File contents held in a byte array
+	 * 
+	 * @param data
+	 *            - the file contents
+	 * @param off
+	 *            - the offset of the first byte
+	 * @param len
+	 *            - the number of bytes
+	 * @return a LineDataList with the Traffic Data for each line, or null if
+	 *         there are no valid lines
+	 */
+	public LineDataList parse(byte data[], int off, int len) {
+		LineDataList ld = new LineDataList();
+		short prevLoc = -1;
+
+		int end = off + len;
+		int pos = off;
+		while (pos < end) {
+			/* Find the end of this line (\n, \r or \r\n like readLine()) */
+			int lineEnd = pos;
+			while ((lineEnd < end) && (data[lineEnd] != '\n')
+					&& (data[lineEnd] != '\r')) {
+				lineEnd++;
+			}
+			int next = lineEnd + 1;
+			if ((lineEnd < end) && (data[lineEnd] == '\r') && (next < end)
+					&& (data[next] == '\n')) {
+				next++;
+			}
+
+			prevLoc = parseLine(data, pos, lineEnd, ld, prevLoc);
+			pos = next;
+		}
+
+		/*
+		 * Check if the final LineDataList is empty. - This would be the case if
+		 * the file were empty in the first place
+		 */
+		if (ld.size() == 0) {
+			return null;
+		}
+		return ld;
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Parses a single line and adds its traffic data (plus any needed to fill a
+	 * gap before it) to the list
+	 * 
+	 * @return the location code of the last line added
+	 */
+	private short parseLine(byte data[], int start, int end, LineDataList ld,
+			short prevLoc) {
+		/* Mark out the fields, stopping early if there are too many */
+		int fieldCount = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end; i++) {
+			if ((i == end) || (data[i] == ',')) {
+				if (fieldCount <= FIELD_COUNT) {
+					fieldStarts[fieldCount] = fieldStart;
+					fieldEnds[fieldCount] = i;
+				}
+				fieldCount++;
+				fieldStart = i + 1;
+			}
+		}
+
+		/* Trailing empty fields are not counted, the same as split(",") */
+		int lastIdx = Math.min(fieldCount, FIELD_COUNT + 1) - 1;
+		if (fieldCount <= FIELD_COUNT + 1) {
+			while ((fieldCount > 1)
+					&& (fieldStarts[lastIdx] == fieldEnds[lastIdx])) {
+				fieldCount--;
+				lastIdx--;
+			}
+		} else {
+			fieldCount = countFields(data, start, end);
+		}
+
+		if (fieldCount != FIELD_COUNT) {
+			System.out
+					.println("[parseTrafficFileContents] Invalid line length encountered: "
+							+ fieldCount + "!");
+			return prevLoc;
+		}
+
+		/* Look up the first two fields */
+		int areaLen = decode(data, fieldStarts[0], fieldEnds[0], 0);
+		int nameLen = decode(data, fieldStarts[1], fieldEnds[1], areaLen);
+		short tempLoc = LocationIndex.lookup(charView, 0, areaLen, areaLen,
+				areaLen + nameLen);
+		if ((tempLoc > Constants.locStr.length) || (tempLoc < 0)) {
+			System.out
+					.println("[parseTrafficFileContents] Error: Invalid location code: "
+							+ tempLoc + "!");
+			System.out.println("[parseTrafficFileContents] 		> LocStr: "
+					+ new String(data, start, fieldEnds[1] - start, UTF8)
+					+ "!");
+			System.out.println("[parseTrafficFileContents] 		> Line: "
+					+ new String(data, start, end - start, UTF8) + "!");
+			return prevLoc;
+		}
+
+		int condSB = parseCondition(data, fieldStarts[2], fieldEnds[2]);
+		int condNB = parseCondition(data, fieldStarts[3], fieldEnds[3]);
+		if ((condSB < 0) || (condNB < 0)) {
+			System.out
+					.println("[parseTrafficFileContents] Error: Invalid condition: "
+							+ new String(data, start, end - start, UTF8) + "!");
+			return prevLoc;
+		}
+
+		/* Fill in the locations we have no line for */
+		while ((tempLoc - prevLoc) > 1) {
+			prevLoc++;
+			ld.add((byte) (0), (byte) (0));
+		}
+
+		ld.add((byte) condSB, (byte) condNB);
+		return tempLoc;
+	}
+
+	/**
+	 * Counts the fields of a line the way split(",") would. Only used for
+	 * lines with too many fields.
+	 */
+	private static int countFields(byte data[], int start, int end) {
+		int fieldCount = 0;
+		int nonEmptyCount = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end; i++) {
+			if ((i == end) || (data[i] == ',')) {
+				fieldCount++;
+				if (i > fieldStart) {
+					nonEmptyCount = fieldCount;
+				}
+				fieldStart = i + 1;
+			}
+		}
+		return Math.max(nonEmptyCount, 1);
+	}
+
+	/**
+	 * Parses a condition field, ignoring surrounding whitespace
+	 * 
+	 * @return the condition value, 0 for an empty field or -1 if the field is
+	 *         not a number
+	 */
+	private static int parseCondition(byte data[], int start, int end) {
+		while ((start < end) && isWhitespace(data[start])) {
+			start++;
+		}
+		while ((end > start) && isWhitespace(data[end - 1])) {
+			end--;
+		}
+		if (start == end) {
+			return 0;
+		}
+
+		boolean isNegative = false;
+		if ((data[start] == '-') || (data[start] == '+')) {
+			isNegative = (data[start] == '-');
+			start++;
+			if (start == end) {
+				return -1;
+			}
+		}
+
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			int digit = data[i] - '0';
+			if ((digit < 0) || (digit > 9) || (value > 100000)) {
+				return -1;
+			}
+			value = (value * 10) + digit;
+		}
+
+		/* Only the low byte is kept anyway */
+		return (isNegative ? -value : value) & 0xFF;
+	}
+
+	/* Same as what String.trim() strips */
+	private static boolean isWhitespace(byte b) {
+		return (b >= 0) && (b <= ' ');
+	}
+
+	/**
+	 * Decodes UTF-8 bytes into the character buffer. Malformed bytes become
+	 * replacement characters, as they would through an InputStreamReader.
+	 * 
+	 * @return the number of characters decoded
+	 */
+	private int decode(byte data[], int start, int end, int charPos) {
+		ensureCharCapacity(charPos + (end - start));
+		int pos = charPos;
+
+		int i = start;
+		while (i < end) {
+			int b = data[i] & 0xFF;
+			if (b < 0x80) {
+				chars[pos++] = (char) b;
+				i++;
+			} else if (((b & 0xE0) == 0xC0) && (b >= 0xC2) && (i + 1 < end)
+					&& isContinuation(data[i + 1])) {
+				chars[pos++] = (char) (((b & 0x1F) << 6) | (data[i + 1] & 0x3F));
+				i += 2;
+			} else if (((b & 0xF0) == 0xE0) && (i + 2 < end)
+					&& isContinuation(data[i + 1])
+					&& isContinuation(data[i + 2])) {
+				chars[pos++] = (char) (((b & 0x0F) << 12)
+						| ((data[i + 1] & 0x3F) << 6) | (data[i + 2] & 0x3F));
+				i += 3;
+			} else {
+				/* Never part of a location name; good enough */
+				chars[pos++] = REPLACEMENT_CHAR;
+				i++;
+				while ((i < end) && isContinuation(data[i])) {
+					i++;
+				}
+			}
+		}
+		return pos - charPos;
+	}
+
+	private static boolean isContinuation(byte b) {
+		return (b & 0xC0) == 0x80;
+	}
+
+	private void ensureCharCapacity(int capacity) {
+		if (capacity > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(capacity, chars.length * 2));
+			charView = CharBuffer.wrap(chars);
+		}
+	}
+
+	/**
+	 * Reads the whole file into the buffer, growing it if needed
+	 * 
+	 * @return the number of bytes read
+	 * @throws IOException
+	 */
+	private int readFile(File dataFile) throws IOException {
+		InputStream in = new FileInputStream(dataFile);
+		try {
+			long fileLen = dataFile.length();
+			if ((fileLen + 1) > buf.length) {
+				buf = new byte[(int) Math.min(fileLen + 1, Integer.MAX_VALUE)];
+			}
+
+			int total = 0;
+			int len;
+			while ((len = in.read(buf, total, buf.length - total)) != -1) {
+				total += len;
+				if (total == buf.length) {
+					/* The file grew while we were reading it */
+					buf = Arrays.copyOf(buf, buf.length * 2);
+				}
+			}
+			return total;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package com.atlach.TrafficDataAggregator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>TrafficRecordStore Class</b> </br>Handles the layout of the directory
+ * holding the Raw Traffic Data Files (e.g. "Traffic_Records"). </br></br>Files
+ * can either sit directly in the directory (the original flat layout) or be
+ * sharded by date into "yyyy/MM/dd" subdirectories, e.g.
+ * "2013/09/01/20130901_0000_TrafficRec.txt". Both layouts can be mixed, so
+ * newly added flat files are picked up until the next migration. </br></br>The
+ * main() method migrates a flat directory into the sharded layout.
+ * 
+ * @author francis
+ * 
+ */
+public class TrafficRecordStore {
+	public static final int STATUS_OK = 0;
+	public static final int STATUS_FAILED = -1;
+
+	private static final String RECORD_FILE_SUFFIX = "_TrafficRec.txt";
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Lists the Raw Traffic Data Files in a records directory which are
+	 * accepted by the given filter. Whole months and days excluded by the
+	 * filter are skipped without listing their files.
+	 * 
+	 * @param directory
+	 *            - the records directory
+	 * @param filter
+	 *            - filter for dates to exclude
+	 * @return the list of files in no particular order
+	 * @throws IOException
+	 */
+	public static List<File> listTrafficRecords(File directory,
+			FileDateFilter filter) throws IOException {
+		List<File> files = new ArrayList<File>();
+
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory
+				.toPath());
+		try {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+
+				/* Only check for a directory when the name looks like a year */
+				if (isNumber(name, 4) && Files.isDirectory(path)) {
+					listYearDir(path, Integer.parseInt(name), filter, files);
+				} else if (filter.accept(path.toFile())) {
+					files.add(path.toFile());
+				}
+			}
+		} finally {
+			stream.close();
+		}
+
+		return files;
+	}
+
+	/**
+	 * Gets the sharded directory for Raw Traffic Data Files of a given date
+	 * 
+	 * @param directory
+	 *            - the records directory
+	 * @param dateStr
+	 *            - the date string (e.g. "20130901")
+	 * @return the directory for that date (e.g. "Traffic_Records/2013/09/01")
+	 */
+	public static File getRecordDir(File directory, String dateStr) {
+		File yearDir = new File(directory, dateStr.substring(0, 4));
+		File monthDir = new File(yearDir, dateStr.substring(4, 6));
+		return new File(monthDir, dateStr.substring(6, 8));
+	}
+
+	/**
+	 * Moves all Raw Traffic Data Files sitting directly in the records
+	 * directory into their sharded directories. Files which already exist in
+	 * their sharded directory are left where they are.
+	 * 
+	 * @param directory
+	 *            - the records directory
+	 * @return an integer indicating the exit status for this method
+	 */
+	public static int migrate(File directory) {
+		int movedCount = 0;
+		int failedCount = 0;
+
+		DirectoryStream<Path> stream = null;
+		try {
+			stream = Files.newDirectoryStream(directory.toPath(), "*"
+					+ RECORD_FILE_SUFFIX);
+			for (Path path : stream) {
+				String dateStr = path.getFileName().toString().split("_")[0];
+				if (!isNumber(dateStr, 8)) {
+					System.out.println("[migrate] Skipped: " + path);
+					continue;
+				}
+
+				File recordDir = getRecordDir(directory, dateStr);
+				Path target = recordDir.toPath().resolve(path.getFileName());
+				if (Files.exists(target)) {
+					System.out.println("[migrate] Already exists: " + target);
+					failedCount++;
+					continue;
+				}
+
+				try {
+					Files.createDirectories(recordDir.toPath());
+					Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+					movedCount++;
+				} catch (IOException e) {
+					e.printStackTrace();
+					failedCount++;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return STATUS_FAILED;
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		System.out.println("[migrate] Moved " + movedCount + " files, "
+				+ failedCount + " left behind.");
+		return (failedCount == 0) ? STATUS_OK : STATUS_FAILED;
+	}
+
+	/**
+	 * Migrates a flat records directory into the sharded layout
+	 * 
+	 * @param args
+	 *            - the records directory
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: TrafficRecordStore [records dir]");
+			return;
+		}
+
+		File directory = new File(args[0]);
+		if (!directory.isDirectory()) {
+			System.out.println("[ERROR] Invalid directory specified: "
+					+ args[0]);
+			return;
+		}
+
+		migrate(directory);
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Lists the month directories of a year directory, skipping months which
+	 * are excluded by the filter
+	 */
+	private static void listYearDir(Path yearDir, int year,
+			FileDateFilter filter, List<File> files) throws IOException {
+		DirectoryStream<Path> stream = Files.newDirectoryStream(yearDir);
+		try {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				if (!isNumber(name, 2)) {
+					continue;
+				}
+
+				int month = Integer.parseInt(name);
+				if ((month < 1) || (month > 12)
+						|| filter.isMonthExcluded(year, month)) {
+					continue;
+				}
+
+				if (Files.isDirectory(path)) {
+					listMonthDir(path, year + name, filter, files);
+				}
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Lists the day directories of a month directory, skipping days which are
+	 * excluded by the filter
+	 */
+	private static void listMonthDir(Path monthDir, String monthStr,
+			FileDateFilter filter, List<File> files) throws IOException {
+		DirectoryStream<Path> stream = Files.newDirectoryStream(monthDir);
+		try {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				if (!isNumber(name, 2)
+						|| filter.isDateExcluded(monthStr + name)) {
+					continue;
+				}
+
+				if (Files.isDirectory(path)) {
+					listDayDir(path, filter, files);
+				}
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Lists the Raw Traffic Data Files of a day directory
+	 */
+	private static void listDayDir(Path dayDir, FileDateFilter filter,
+			List<File> files) throws IOException {
+		DirectoryStream<Path> stream = Files.newDirectoryStream(dayDir, "*"
+				+ RECORD_FILE_SUFFIX);
+		try {
+			for (Path path : stream) {
+				if (filter.accept(path.toFile())) {
+					files.add(path.toFile());
+				}
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Checks whether a string is made up of exactly the given number of
+	 * digits
+	 */
+	private static boolean isNumber(String str, int digits) {
+		if (str.length() != digits) {
+			return false;
+		}
+
+		for (int i = 0; i < digits; i++) {
+			if ((str.charAt(i) < '0') || (str.charAt(i) > '9')) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
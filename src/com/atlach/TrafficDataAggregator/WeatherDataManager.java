@@ -1,9 +1,8 @@
 package com.atlach.TrafficDataAggregator;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.Charset;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -38,7 +37,9 @@ public class WeatherDataManager {
 	private final String BASE_SERVER_URL = "http://api.worldweatheronline.com/"
 			+ "free/v1/weather.ashx";
 	private final String KEY_VAL = "XXXXXXXXXXXXXXXXXXXXXXXXX";
-	private static final int STATUS_OK = 0;
+	private static final int CONNECT_TIMEOUT = 60000;
+	private static final int READ_TIMEOUT = 30000;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
 
 	/*****************************************************************************************/
 	/** PUBLIC METHODS **/
@@ -54,19 +55,22 @@ public class WeatherDataManager {
 	 */
 	public String sendWeatherDataRequest(String location, int numOfDays) {
 		String respStr = "";
+		SharedHttpClient.Exchange exchange = null;
 
 		try {
-			HttpURLConnection urlConn = getServerConnection("q=" + location
+			exchange = getServerConnection("q=" + location
 					+ "&format=json&num_of_days=" + Integer.toString(numOfDays)
 					+ "&key=" + this.KEY_VAL);
-			if (sendHttpRequest(urlConn) == STATUS_OK) {
-				respStr = receiveJSONResponse(urlConn);
-			}
+			respStr = receiveJSONResponse(exchange);
 
 		} catch (IOException e) {
 			System.out.println("IOException occurred!");
 			e.printStackTrace();
 			return "";
+		} finally {
+			if (exchange != null) {
+				exchange.close();
+			}
 		}
 
 		return respStr;
@@ -190,89 +194,53 @@ public class WeatherDataManager {
 	 * 
 	 * @param requestSuffix
 	 *            - the request suffix string
-	 * @return an HttpUrlConnection object
+	 * @return an Exchange object from the SharedHttpClient
 	 * @throws IOException
 	 */
-	private HttpURLConnection getServerConnection(String requestSuffix)
+	private SharedHttpClient.Exchange getServerConnection(String requestSuffix)
 			throws IOException {
-		URL url;
-		HttpURLConnection urlConn;
-
-		url = new URL(BASE_SERVER_URL + "?" + requestSuffix);
+		String urlStr = BASE_SERVER_URL + "?" + requestSuffix;
 
-		System.out.println("GET Request URL: " + url.toString());
+		System.out.println("GET Request URL: " + urlStr);
 
-		urlConn = (HttpURLConnection) url.openConnection();
-		urlConn.setRequestMethod("GET");
-		urlConn.setDoOutput(true);
-		urlConn.setDoInput(true);
-		urlConn.setRequestProperty("Accept", "application/json");
+		SharedHttpClient.Exchange exchange = SharedHttpClient.getInstance()
+				.open(urlStr, CONNECT_TIMEOUT, READ_TIMEOUT);
+		exchange.setRequestProperty("Accept", "application/json");
 
-		return urlConn;
+		return exchange;
 	}
 
 	/**
 	 * Prints a received error response. Mostly used for debugging purposes.
 	 * 
-	 * @param conn
-	 *            - the HttpUrlConnection object to be used
+	 * @param exchange
+	 *            - the Exchange object to be used
 	 * @throws IOException
 	 */
-	private void printErrorResponse(HttpURLConnection conn) throws IOException {
-		DataInputStream input = new DataInputStream(conn.getErrorStream());
-
-		String str;
+	private void printErrorResponse(SharedHttpClient.Exchange exchange)
+			throws IOException {
+		HttpURLConnection conn = exchange.getConnection();
 
-		// FIXME Uses deprecated method --Francis
 		System.out.println("Response: " + conn.getResponseMessage());
 		System.out.println("Response code: " + conn.getResponseCode());
-		while (null != ((str = input.readLine()))) {
-			// Debug
-			System.out.println("> " + str);
-		}
-
-		input.close();
-	}
-
-	/**
-	 * Sends an Http Request using the provided Http Connection
-	 * 
-	 * @param urlConn
-	 *            - the HttpUrlConnection object to be used
-	 * @return an integer indicating the exit status for this method
-	 * @throws IOException
-	 */
-	private int sendHttpRequest(HttpURLConnection urlConn) throws IOException {
-
-		urlConn.connect();
-
-		return STATUS_OK;
+		System.out.println("> " + new String(exchange.readBody(), UTF8));
 	}
 
 	/**
 	 * Obtains the received JSON Response
 	 * 
-	 * @param conn
-	 *            - the HttpUrlConnection object to be used
+	 * @param exchange
+	 *            - the Exchange object to be used
 	 * @return the received JSON Response string
 	 * @throws IOException
 	 */
-	private String receiveJSONResponse(HttpURLConnection conn)
+	private String receiveJSONResponse(SharedHttpClient.Exchange exchange)
 			throws IOException {
-		if (conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
-			printErrorResponse(conn);
+		if (exchange.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			printErrorResponse(exchange);
 			return null;
 		}
 
-		DataInputStream input = new DataInputStream(conn.getInputStream());
-		String str;
-		String fullStr = "";
-
-		// FIXME Uses deprecated method --Francis
-		while (null != ((str = input.readLine()))) {
-			fullStr += str;
-		}
-
-		return fullStr;
+		return new String(exchange.readBody(), UTF8);
 	}
 }
@@ -0,0 +1,298 @@
+package com.atlach.TrafficDataIndexer;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>IndexerScheduler Class</b> </br>Fires the timer expiration event of a
+ * TrafficDataIndexerEvent on wall-clock boundaries in GMT+8 (i.e. at :00, :15,
+ * :30 and :45 for a 15 minute interval). </br></br>Each fire is scheduled
+ * against the clock rather than against the previous fire, so the time taken
+ * by an update never pushes the following ones back. Nothing runs between
+ * fires; use getNextFireTime() to show a countdown. </br></br>The interval can
+ * be changed while running but has to divide an hour evenly, so that the
+ * boundaries stay lined up with the hour.
+ * 
+ * @author francis
+ * 
+ */
+public class IndexerScheduler {
+	public static final int DEFAULT_INTERVAL_MINS = 15;
+
+	private static final TimeZone TIME_ZONE = TimeZone.getTimeZone("GMT+8");
+	private static final long MILLIS_PER_MIN = 60000;
+
+	private TrafficDataIndexerEvent indexerEvent = null;
+	private ScheduledExecutorService executor = null;
+	private ScheduledFuture<?> pendingFire = null;
+	private FireTask currentTask = null;
+	private int intervalMins = DEFAULT_INTERVAL_MINS;
+	private volatile long nextFireTime = -1;
+
+	public IndexerScheduler(TrafficDataIndexerEvent e) {
+		this(e, DEFAULT_INTERVAL_MINS);
+	}
+
+	public IndexerScheduler(TrafficDataIndexerEvent e, int intervalMins) {
+		if (!isValidInterval(intervalMins)) {
+			throw new IllegalArgumentException("Invalid interval: "
+					+ intervalMins);
+		}
+		indexerEvent = e;
+		this.intervalMins = intervalMins;
+	}
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Starts the scheduler. The first fire happens on the next boundary.
+	 */
+	public synchronized void start() {
+		if (executor != null) {
+			return;
+		}
+
+		executor = Executors
+				.newSingleThreadScheduledExecutor(new SchedulerThreadFactory());
+		scheduleNext(System.currentTimeMillis());
+	}
+
+	/**
+	 * Stops the scheduler. Pending fires are cancelled and the timer
+	 * interruption event is sent.
+	 */
+	public void stop() {
+		synchronized (this) {
+			if (executor == null) {
+				return;
+			}
+
+			executor.shutdownNow();
+			executor = null;
+			pendingFire = null;
+			currentTask = null;
+			nextFireTime = -1;
+		}
+
+		indexerEvent.onTimerInterrupt();
+	}
+
+	/**
+	 * Changes the interval between fires. If the scheduler is running, the
+	 * pending fire is moved to the first boundary of the new interval.
+	 * 
+	 * @param intervalMins
+	 *            - the new interval in minutes (must divide 60 evenly)
+	 */
+	public synchronized void setIntervalMins(int intervalMins) {
+		if (!isValidInterval(intervalMins)) {
+			throw new IllegalArgumentException("Invalid interval: "
+					+ intervalMins);
+		}
+
+		if (this.intervalMins == intervalMins) {
+			return;
+		}
+		this.intervalMins = intervalMins;
+
+		if (pendingFire != null) {
+			pendingFire.cancel(false);
+			pendingFire = null;
+		}
+		scheduleNext(System.currentTimeMillis());
+	}
+
+	/**
+	 * Gets the interval between fires
+	 * 
+	 * @return the interval in minutes
+	 */
+	public synchronized int getIntervalMins() {
+		return intervalMins;
+	}
+
+	/**
+	 * Gets the time of the next fire
+	 * 
+	 * @return the next fire time in milliseconds since the epoch or -1 if the
+	 *         scheduler is not running
+	 */
+	public long getNextFireTime() {
+		return nextFireTime;
+	}
+
+	/**
+	 * Gets the first interval boundary in GMT+8 which comes strictly after the
+	 * given time
+	 * 
+	 * @param time
+	 *            - the time in milliseconds since the epoch
+	 * @param intervalMins
+	 *            - the interval in minutes (should divide 60 evenly)
+	 * @return the boundary time in milliseconds since the epoch
+	 */
+	public static long getNextBoundary(long time, int intervalMins) {
+		return getBoundary(time, intervalMins) + (intervalMins * MILLIS_PER_MIN);
+	}
+
+	/**
+	 * Gets the last interval boundary in GMT+8 which comes at or before the
+	 * given time (i.e. the start of the interval the time falls in)
+	 * 
+	 * @param time
+	 *            - the time in milliseconds since the epoch
+	 * @param intervalMins
+	 *            - the interval in minutes (should divide 60 evenly)
+	 * @return the boundary time in milliseconds since the epoch
+	 */
+	public static long getBoundary(long time, int intervalMins) {
+		Calendar cal = Calendar.getInstance(TIME_ZONE);
+		cal.setTimeInMillis(time);
+
+		int minute = cal.get(Calendar.MINUTE);
+		cal.set(Calendar.MINUTE, (minute / intervalMins) * intervalMins);
+		cal.set(Calendar.SECOND, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+
+		return cal.getTimeInMillis();
+	}
+
+	/**
+	 * Checks whether the given interval keeps the boundaries lined up with the
+	 * hour
+	 * 
+	 * @param intervalMins
+	 *            - the interval in minutes
+	 * @return true if the interval divides 60 evenly
+	 */
+	public static boolean isValidInterval(int intervalMins) {
+		return (intervalMins > 0) && (intervalMins <= 60)
+				&& ((60 % intervalMins) == 0);
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Schedules the next fire on the first boundary after the given time
+	 * 
+	 * @param after
+	 *            - the time in milliseconds since the epoch
+	 */
+	private synchronized void scheduleNext(long after) {
+		if (executor == null) {
+			return;
+		}
+
+		nextFireTime = getNextBoundary(after, intervalMins);
+		currentTask = new FireTask(nextFireTime);
+		schedule(currentTask);
+	}
+
+	/**
+	 * Schedules a fire task to run at its fire time
+	 * 
+	 * @param task
+	 *            - the fire task
+	 * @return false if the scheduler has been stopped or the task has been
+	 *         replaced
+	 */
+	private synchronized boolean schedule(FireTask task) {
+		/* Drop tasks replaced by an interval change */
+		if ((executor == null) || (task != currentTask)) {
+			return false;
+		}
+
+		long delay = Math.max(task.fireTime - System.currentTimeMillis(), 0);
+		pendingFire = executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+		return true;
+	}
+
+	/*****************************************************************************************/
+	/** INTERNAL CLASSES **/
+	/*****************************************************************************************/
+	/**
+	 * Runnable class for a single scheduled fire
+	 * 
+	 * @author francis
+	 * 
+	 */
+	class FireTask implements Runnable {
+		private long fireTime;
+
+		public FireTask(long fireTime) {
+			this.fireTime = fireTime;
+		}
+
+		@Override
+		public void run() {
+			/*
+			 * The executor goes by its own clock, which can wake us up a
+			 * little before the wall clock reaches the boundary. Firing early
+			 * would stamp the update with the previous hour, so wait it out.
+			 */
+			long now = System.currentTimeMillis();
+			synchronized (IndexerScheduler.this) {
+				if (this != currentTask) {
+					return;
+				}
+
+				if (now < fireTime) {
+					schedule(this);
+					return;
+				}
+
+				/*
+				 * Line up the next fire first. A late wake-up (e.g. after a
+				 * suspend) skips ahead to the next boundary still to come.
+				 */
+				scheduleNext(now);
+			}
+
+			System.out.println("[IndexerScheduler] Timer fired.");
+			try {
+				indexerEvent.onTimerExpire();
+			} catch (RuntimeException e) {
+				/* Never let one bad update stop the schedule */
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Thread factory for the scheduler thread
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class SchedulerThreadFactory implements ThreadFactory {
+		@Override
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "IndexerScheduler");
+		}
+	}
+}
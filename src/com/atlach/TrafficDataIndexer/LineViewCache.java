@@ -0,0 +1,301 @@
+package com.atlach.TrafficDataIndexer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.atlach.TrafficDataIndexer.TrafficDataManager.MonitoredLocation;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>LineViewCache Class</b> </br>Remembers what we last got for each MMDA
+ * Line View: the ETag and Last-Modified values sent by the server, a digest of
+ * the page content and the locations parsed out of it. This lets the
+ * TrafficDataManager send conditional requests and skip re-parsing pages that
+ * have not changed since the previous cycle. </br></br>The cache is kept in a
+ * small text file so that it survives between runs of the command line
+ * indexer. The general format for this file is as follows: </br><i>&gt;
+ * [Line View]</i> </br><i>Area:[Area]</i> </br><i>ETag:[ETag]</i>
+ * </br><i>Last-Modified:[Date]</i> </br><i>Digest:[Hex Digest]</i>
+ * </br><i>L:[Southbound]:[Northbound]:[Location]</i> </br>...
+ * 
+ * @author francis
+ * 
+ */
+public class LineViewCache {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String HEX_CHARS = "0123456789abcdef";
+
+	private String cacheFileName;
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+	private boolean isDirty = false;
+
+	public LineViewCache(String cacheFileName) {
+		this.cacheFileName = cacheFileName;
+	}
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Gets the cache entry for a particular Line View
+	 * 
+	 * @param lineViewName
+	 *            - the name of the Line View (e.g. "edsa")
+	 * @return the cache entry or null if we have nothing for this Line View
+	 */
+	public synchronized Entry getEntry(String lineViewName) {
+		return entries.get(lineViewName);
+	}
+
+	/**
+	 * Stores the cache entry for a particular Line View
+	 * 
+	 * @param lineViewName
+	 *            - the name of the Line View (e.g. "edsa")
+	 * @param entry
+	 *            - the new cache entry
+	 */
+	public synchronized void putEntry(String lineViewName, Entry entry) {
+		entries.put(lineViewName, entry);
+		isDirty = true;
+	}
+
+	/**
+	 * Loads the cache contents from the cache file. A missing or unreadable
+	 * cache file simply leaves the cache empty.
+	 */
+	public synchronized void load() {
+		File cacheFile = new File(cacheFileName);
+		if (!cacheFile.exists()) {
+			return;
+		}
+
+		BufferedReader rd = null;
+		try {
+			rd = new BufferedReader(new InputStreamReader(new FileInputStream(
+					cacheFile), UTF8));
+
+			String line = "";
+			String lineViewName = null;
+			Entry entry = null;
+			while ((line = rd.readLine()) != null) {
+				if ((line.length() > 0) && (line.charAt(0) == '>')) {
+					if (entry != null) {
+						entries.put(lineViewName, entry);
+					}
+					lineViewName = line.substring(1).trim();
+					entry = new Entry(lineViewName, null, null, null,
+							new ArrayList<MonitoredLocation>());
+					continue;
+				}
+
+				if (entry == null) {
+					continue;
+				}
+
+				String lineStr[] = line.split(":", 2);
+				if (lineStr.length != 2) {
+					continue;
+				}
+
+				if (lineStr[0].equals("ETag")) {
+					entry.eTag = lineStr[1];
+				} else if (lineStr[0].equals("Last-Modified")) {
+					entry.lastModified = lineStr[1];
+				} else if (lineStr[0].equals("Digest")) {
+					entry.digest = fromHexString(lineStr[1]);
+				} else if (lineStr[0].equals("L")) {
+					String locStr[] = lineStr[1].split(":", 3);
+					if (locStr.length != 3) {
+						continue;
+					}
+					entry.locations.add(new MonitoredLocation(locStr[2],
+							entry.area, Integer
+									.parseInt(locStr[0]), Integer
+									.parseInt(locStr[1])));
+				} else if (lineStr[0].equals("Area")) {
+					entry.area = lineStr[1];
+				}
+			}
+
+			if (entry != null) {
+				entries.put(lineViewName, entry);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			entries.clear();
+		} catch (NumberFormatException e) {
+			System.out.println("[LineViewCache] Discarding malformed cache file.");
+			entries.clear();
+		} finally {
+			if (rd != null) {
+				try {
+					rd.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Saves the cache contents to the cache file if anything changed since it
+	 * was last loaded or saved. The file is first written under a temporary
+	 * name and then moved into place so that a crash midway never leaves a
+	 * half-written cache behind.
+	 */
+	public synchronized void save() {
+		if (!isDirty) {
+			return;
+		}
+
+		File cacheFile = new File(cacheFileName);
+		File tempFile = new File(cacheFileName + ".tmp");
+
+		BufferedWriter wr = null;
+		try {
+			wr = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(tempFile), UTF8));
+
+			Iterator<Map.Entry<String, Entry>> iter = entries.entrySet()
+					.iterator();
+			while (iter.hasNext()) {
+				Map.Entry<String, Entry> mapEntry = iter.next();
+				Entry entry = mapEntry.getValue();
+
+				wr.write("> " + mapEntry.getKey());
+				wr.newLine();
+				wr.write("Area:" + entry.area);
+				wr.newLine();
+				if (entry.eTag != null) {
+					wr.write("ETag:" + entry.eTag);
+					wr.newLine();
+				}
+				if (entry.lastModified != null) {
+					wr.write("Last-Modified:" + entry.lastModified);
+					wr.newLine();
+				}
+				if (entry.digest != null) {
+					wr.write("Digest:" + toHexString(entry.digest));
+					wr.newLine();
+				}
+				for (int i = 0; i < entry.locations.size(); i++) {
+					MonitoredLocation loc = entry.locations.get(i);
+					wr.write("L:" + loc.conditionSB + ":" + loc.conditionNB
+							+ ":" + loc.name);
+					wr.newLine();
+				}
+			}
+			wr.close();
+			wr = null;
+
+			if (cacheFile.exists() && !cacheFile.delete()) {
+				System.out.println("[LineViewCache] Failed to replace cache file!");
+				return;
+			}
+			if (!tempFile.renameTo(cacheFile)) {
+				System.out.println("[LineViewCache] Failed to rename cache file!");
+				return;
+			}
+			isDirty = false;
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (wr != null) {
+				try {
+					wr.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	private static String toHexString(byte data[]) {
+		StringBuilder sb = new StringBuilder(data.length * 2);
+		for (int i = 0; i < data.length; i++) {
+			sb.append(HEX_CHARS.charAt((data[i] >> 4) & 0x0F));
+			sb.append(HEX_CHARS.charAt(data[i] & 0x0F));
+		}
+		return sb.toString();
+	}
+
+	private static byte[] fromHexString(String hexStr) {
+		byte data[] = new byte[hexStr.length() / 2];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((HEX_CHARS.indexOf(hexStr.charAt(2 * i)) << 4) | HEX_CHARS
+					.indexOf(hexStr.charAt((2 * i) + 1)));
+		}
+		return data;
+	}
+
+	/*****************************************************************************************/
+	/** INTERNAL CLASSES **/
+	/*****************************************************************************************/
+	/**
+	 * <b>Entry Object</b> </br>What we know about a single Line View
+	 * 
+	 * @author francis
+	 * 
+	 */
+	public static class Entry {
+		public String area = "";
+		public String eTag = null;
+		public String lastModified = null;
+		public byte digest[] = null;
+		public List<MonitoredLocation> locations = null;
+
+		public Entry(String area, String eTag, String lastModified,
+				byte digest[], List<MonitoredLocation> locations) {
+			this.area = area;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+			this.digest = digest;
+			this.locations = locations;
+		}
+
+		/**
+		 * Checks whether the given page digest matches the one we have
+		 * 
+		 * @param otherDigest
+		 *            - the digest of the newly downloaded page
+		 * @return true if the page has not changed
+		 */
+		public boolean hasSameDigest(byte otherDigest[]) {
+			return (digest != null) && Arrays.equals(digest, otherDigest);
+		}
+	}
+}
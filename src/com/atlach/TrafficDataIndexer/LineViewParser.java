@@ -0,0 +1,398 @@
+package com.atlach.TrafficDataIndexer;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+import com.atlach.TrafficDataIndexer.TrafficDataManager.MonitoredLocation;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>LineViewParser Class</b> </br>Single-pass, byte-level parser for MMDA
+ * Line View pages. Raw response bytes are fed in as they arrive and every
+ * complete location (name plus southbound and northbound conditions) is added
+ * to the target list. </br></br>The parser keeps the same line-oriented rules
+ * as the old readLine()-based extractor: a line holding the
+ * <i>line-name</i> marker and a closing <i>&lt;a</i> names the next location,
+ * and every other line holding a <i>light</i>, <i>mod</i> or <i>heavy</i>
+ * marker gives the next condition (southbound first, then northbound). No
+ * Strings are created except for the location names themselves.
+ * 
+ * @author francis
+ * 
+ */
+public class LineViewParser {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int COND_NONE = 0;
+	private static final int COND_LIGHT = 1;
+	private static final int COND_MOD = 2;
+	private static final int COND_HEAVY = 3;
+
+	private static final int MAX_NAME_LENGTH = 256;
+
+	/* Markers we are looking for */
+	private static final int MARKER_NONE = 0;
+	private static final int MARKER_NAME = 1;
+	private static final int MARKER_LIGHT = 2;
+	private static final int MARKER_MOD = 3;
+	private static final int MARKER_HEAVY = 4;
+	private static final String MARKERS[] = { null, "<p>",
+			"<div class=\"light\">", "<div class=\"mod\">",
+			"<div class=\"heavy\">" };
+
+	/*
+	 * Every marker starts with '<', which lets us skip over plain text quickly.
+	 * The name marker itself ("line-name\"><p>") is anchored on its "<p>" part
+	 * and its prefix is checked by looking back at the bytes before it.
+	 */
+	private static final byte NAME_PREFIX[] = toBytes("line-name\">");
+	private static final int LOOKBACK_SIZE = NAME_PREFIX.length + 3;
+
+	/*
+	 * Combined automaton for all markers: the next state for a given state and
+	 * input byte is found at DELTA[(state << 8) | byte], and MATCH[state] holds
+	 * the marker completed upon entering that state (if any).
+	 */
+	private static final char DELTA[];
+	private static final byte MATCH[];
+
+	/*
+	 * Bytes which can neither start a marker nor end a line. While we are not
+	 * in the middle of a marker, runs of these can be skipped over quickly.
+	 */
+	private static final boolean IS_SKIPPABLE[] = new boolean[256];
+
+	static {
+		int maxStates = 1;
+		for (int i = 1; i < MARKERS.length; i++) {
+			maxStates += MARKERS[i].length();
+		}
+
+		/* Build the trie */
+		int goTo[][] = new int[maxStates][256];
+		byte match[] = new byte[maxStates];
+		int stateCount = 1;
+		for (int i = 1; i < MARKERS.length; i++) {
+			int state = 0;
+			String marker = MARKERS[i];
+			for (int j = 0; j < marker.length(); j++) {
+				int c = marker.charAt(j) & 0xFF;
+				if (goTo[state][c] == 0) {
+					goTo[state][c] = stateCount++;
+				}
+				state = goTo[state][c];
+			}
+			match[state] = (byte) i;
+		}
+
+		/* Resolve failure links breadth-first into a full transition table */
+		char delta[] = new char[stateCount << 8];
+		int fail[] = new int[stateCount];
+		int queue[] = new int[stateCount];
+		int head = 0;
+		int tail = 0;
+		for (int c = 0; c < 256; c++) {
+			int next = goTo[0][c];
+			delta[c] = (char) next;
+			if (next != 0) {
+				queue[tail++] = next;
+			}
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			if (match[state] == MARKER_NONE) {
+				match[state] = match[fail[state]];
+			}
+			for (int c = 0; c < 256; c++) {
+				int next = goTo[state][c];
+				if (next != 0) {
+					fail[next] = delta[(fail[state] << 8) | c];
+					delta[(state << 8) | c] = (char) next;
+					queue[tail++] = next;
+				} else {
+					delta[(state << 8) | c] = delta[(fail[state] << 8) | c];
+				}
+			}
+		}
+
+		DELTA = delta;
+		MATCH = match;
+
+		for (int c = 0; c < 256; c++) {
+			IS_SKIPPABLE[c] = (delta[c] == 0) && (c != '\n') && (c != '\r');
+		}
+	}
+
+	private final String areaName;
+	private final List<MonitoredLocation> locList;
+
+	/* Marker automaton state */
+	private int state = 0;
+
+	/* Tail end of the previous chunk, for looking back across chunks */
+	private final byte lookback[] = new byte[LOOKBACK_SIZE];
+	private int lookbackLen = 0;
+
+	/* Location name capture */
+	private final byte nameBuf[] = new byte[MAX_NAME_LENGTH];
+	private int nameLen = 0;
+	private boolean isCapturingName = false;
+	private boolean prevWasLessThan = false;
+
+	/* Per-line findings */
+	private boolean lineHasName = false;
+	private boolean lineHasLight = false;
+	private boolean lineHasMod = false;
+	private boolean lineHasHeavy = false;
+
+	/* Running location record */
+	private String lineName = "";
+	private int lineCondSB = COND_NONE;
+	private int lineCondNB = COND_NONE;
+	private boolean isGettingSB = true;
+
+	public LineViewParser(String areaName, List<MonitoredLocation> locList) {
+		this.areaName = areaName;
+		this.locList = locList;
+	}
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Feeds a chunk of the raw Line View page into the parser
+	 * 
+	 * @param buf
+	 *            - the buffer holding the chunk
+	 * @param off
+	 *            - the offset of the chunk within the buffer
+	 * @param len
+	 *            - the length of the chunk
+	 */
+	public void feed(byte buf[], int off, int len) {
+		int state = this.state;
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			if ((state == 0) && !isCapturingName) {
+				while ((i < end) && IS_SKIPPABLE[buf[i] & 0xFF]) {
+					i++;
+				}
+				if (i == end) {
+					break;
+				}
+			}
+
+			int b = buf[i] & 0xFF;
+
+			if ((b == '\n') || (b == '\r')) {
+				endOfLine();
+				state = 0;
+				continue;
+			}
+
+			if (isCapturingName) {
+				/* The name runs up to the first "<a" on the same line */
+				if (prevWasLessThan && (b == 'a')) {
+					nameLen--;
+					isCapturingName = false;
+					lineHasName = true;
+				} else if (nameLen < MAX_NAME_LENGTH) {
+					nameBuf[nameLen++] = (byte) b;
+				}
+				prevWasLessThan = (b == '<');
+			}
+
+			state = DELTA[(state << 8) | b];
+			switch (MATCH[state]) {
+			case MARKER_NONE:
+				break;
+			case MARKER_NAME:
+				if (!lineHasName && hasNamePrefix(buf, off, i - 2)) {
+					isCapturingName = true;
+					prevWasLessThan = false;
+					nameLen = 0;
+				}
+				break;
+			case MARKER_LIGHT:
+				lineHasLight = true;
+				break;
+			case MARKER_MOD:
+				lineHasMod = true;
+				break;
+			case MARKER_HEAVY:
+				lineHasHeavy = true;
+				break;
+			}
+		}
+		this.state = state;
+
+		/* Keep the tail end of this chunk in case a marker spans chunks */
+		if (len >= LOOKBACK_SIZE) {
+			System.arraycopy(buf, end - LOOKBACK_SIZE, lookback, 0,
+					LOOKBACK_SIZE);
+			lookbackLen = LOOKBACK_SIZE;
+		} else {
+			int keep = Math.min(lookbackLen, LOOKBACK_SIZE - len);
+			System.arraycopy(lookback, lookbackLen - keep, lookback, 0, keep);
+			System.arraycopy(buf, off, lookback, keep, len);
+			lookbackLen = keep + len;
+		}
+	}
+
+	/**
+	 * Signals the end of the page. This flushes the last line in case the page
+	 * did not end with a line break.
+	 */
+	public void finish() {
+		endOfLine();
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Applies whatever was found on the line that just ended to the running
+	 * location record, adding the record to the location list once it is
+	 * complete.
+	 */
+	private void endOfLine() {
+		boolean hasName = lineHasName;
+		int lineCond = COND_NONE;
+
+		if (lineHasLight) {
+			lineCond = COND_LIGHT;
+		} else if (lineHasMod) {
+			lineCond = COND_MOD;
+		} else if (lineHasHeavy) {
+			lineCond = COND_HEAVY;
+		}
+
+		/* Reset the per-line state */
+		isCapturingName = false;
+		lineHasName = false;
+		lineHasLight = false;
+		lineHasMod = false;
+		lineHasHeavy = false;
+		state = 0;
+
+		if (hasName) {
+			// balintawak, kaingin road etc etc
+			lineName = new String(nameBuf, 0, fixupName(nameBuf, nameLen),
+					UTF8);
+			return;
+		}
+
+		if (lineCond != COND_NONE) {
+			if (isGettingSB) {
+				lineCondSB = lineCond;
+				isGettingSB = false;
+			} else {
+				lineCondNB = lineCond;
+				isGettingSB = true;
+			}
+		}
+
+		if ((lineCondSB != COND_NONE) && (lineCondNB != COND_NONE)
+				&& (lineName.length() > 0)) {
+			locList.add(new MonitoredLocation(lineName, areaName, lineCondSB,
+					lineCondNB));
+
+			/* Nullify */
+			lineName = "";
+			lineCondSB = COND_NONE;
+			lineCondNB = COND_NONE;
+		}
+	}
+
+	/**
+	 * Checks whether the bytes right before a "&lt;p&gt;" marker spell out the
+	 * rest of the name marker. Bytes before the start of the current chunk are
+	 * taken from the tail end of the previous chunk.
+	 * 
+	 * @param buf
+	 *            - the current chunk
+	 * @param off
+	 *            - the offset of the current chunk within the buffer
+	 * @param markerIdx
+	 *            - the index of the '&lt;' starting the "&lt;p&gt;" marker
+	 * @return true if the name marker prefix is present
+	 */
+	private boolean hasNamePrefix(byte buf[], int off, int markerIdx) {
+		for (int j = 1; j <= NAME_PREFIX.length; j++) {
+			int idx = markerIdx - j;
+			byte b;
+			if (idx >= off) {
+				b = buf[idx];
+			} else {
+				int tailIdx = lookbackLen - (off - idx);
+				if (tailIdx < 0) {
+					return false;
+				}
+				b = lookback[tailIdx];
+			}
+			if (b != NAME_PREFIX[NAME_PREFIX.length - j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Replaces every encoding of the letter &ntilde; found in a location name
+	 * with a plain 'n', in place. This covers proper UTF-8 (C3 B1), Latin-1
+	 * (F1) and the doubled replacement character left behind by a bad decode
+	 * upstream (EF BF BD EF BF BD).
+	 * 
+	 * @param buf
+	 *            - the buffer holding the name
+	 * @param len
+	 *            - the length of the name
+	 * @return the new length of the name
+	 */
+	private static int fixupName(byte buf[], int len) {
+		int out = 0;
+		int i = 0;
+		while (i < len) {
+			int b = buf[i] & 0xFF;
+			if ((b == 0xC3) && (i + 1 < len) && ((buf[i + 1] & 0xFF) == 0xB1)) {
+				buf[out++] = 'n';
+				i += 2;
+			} else if ((b == 0xEF) && (i + 5 < len)
+					&& ((buf[i + 1] & 0xFF) == 0xBF)
+					&& ((buf[i + 2] & 0xFF) == 0xBD)
+					&& ((buf[i + 3] & 0xFF) == 0xEF)
+					&& ((buf[i + 4] & 0xFF) == 0xBF)
+					&& ((buf[i + 5] & 0xFF) == 0xBD)) {
+				buf[out++] = 'n';
+				i += 6;
+			} else if (b == 0xF1) {
+				buf[out++] = 'n';
+				i++;
+			} else {
+				buf[out++] = buf[i++];
+			}
+		}
+		return out;
+	}
+
+	private static byte[] toBytes(String s) {
+		return s.getBytes(Charset.forName("US-ASCII"));
+	}
+}
@@ -0,0 +1,497 @@
+package com.atlach.TrafficDataIndexer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>LineViewReplayServer Class</b> </br>A small local HTTP server which
+ * stands in for the MMDA Website by replaying recorded line view pages. This
+ * allows the TrafficDataManager to be exercised and benchmarked without
+ * touching the live site. </br></br>Every <i>line-view-*.php</i> file found in
+ * the fixture directory is served under the same name. Responses can be
+ * delayed (latency plus random jitter), made to hang (to trigger client
+ * timeouts) or cut short (truncated bodies). ETag validators and gzip
+ * compression are used unless disabled so that conditional requests and
+ * compressed responses can be tested as well.
+ * 
+ * @author francis
+ * 
+ */
+public class LineViewReplayServer {
+	public static final int DEFAULT_PORT = 8080;
+
+	private static final String FIXTURE_PREFIX = "line-view-";
+	private static final String FIXTURE_SUFFIX = ".php";
+	private static final long DEFAULT_HANG_TIME = 120000;
+
+	private int port = DEFAULT_PORT;
+	private Map<String, Fixture> fixtures = new HashMap<String, Fixture>();
+	private HttpServer server = null;
+	private ExecutorService serverExecutor = null;
+	private Random random = new Random();
+	private AtomicLong requestCount = new AtomicLong(0);
+
+	private volatile long latency = 0;
+	private volatile long jitter = 0;
+	private volatile long hangTime = DEFAULT_HANG_TIME;
+	private volatile double timeoutRate = 0.0;
+	private volatile double truncateRate = 0.0;
+	private volatile boolean useValidators = true;
+	private volatile boolean useGzip = true;
+
+	/**
+	 * Creates a replay server for the fixtures in the given directory
+	 * 
+	 * @param fixtureDir
+	 *            - the directory containing the recorded line-view-*.php
+	 *            pages
+	 * @param port
+	 *            - the port to listen on; 0 picks any free port
+	 * @throws IOException
+	 */
+	public LineViewReplayServer(String fixtureDir, int port) throws IOException {
+		this.port = port;
+		loadFixtures(fixtureDir);
+	}
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Starts serving the fixtures
+	 * 
+	 * @throws IOException
+	 */
+	public void start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+		server.createContext("/", new ReplayHandler());
+
+		/* Hanging requests must not hold up the other ones */
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+		port = server.getAddress().getPort();
+
+		System.out.println("[LineViewReplayServer] Serving " + fixtures.size()
+				+ " line views at " + getBaseUrl());
+	}
+
+	/**
+	 * Stops the server. Requests that are still hanging are interrupted.
+	 */
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+			server = null;
+		}
+
+		if (serverExecutor != null) {
+			serverExecutor.shutdownNow();
+			serverExecutor = null;
+		}
+	}
+
+	/**
+	 * Gets the base URL to hand over to TrafficDataManager.setBaseUrl()
+	 * 
+	 * @return the base URL string
+	 */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + port + "/";
+	}
+
+	/**
+	 * Gets the number of requests received so far
+	 * 
+	 * @return the request count
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * Sets the fixed delay added before each response
+	 * 
+	 * @param latency
+	 *            - the delay in milliseconds
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Sets the maximum random delay added on top of the fixed latency
+	 * 
+	 * @param jitter
+	 *            - the maximum extra delay in milliseconds
+	 */
+	public void setJitter(long jitter) {
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Sets how long a request picked to time out will hang before the server
+	 * gives up on it
+	 * 
+	 * @param hangTime
+	 *            - the hang time in milliseconds
+	 */
+	public void setHangTime(long hangTime) {
+		this.hangTime = hangTime;
+	}
+
+	/**
+	 * Sets the fraction of requests which will hang without a response
+	 * 
+	 * @param timeoutRate
+	 *            - a value from 0.0 (never) to 1.0 (always)
+	 */
+	public void setTimeoutRate(double timeoutRate) {
+		this.timeoutRate = timeoutRate;
+	}
+
+	/**
+	 * Sets the fraction of requests which will only get part of the page
+	 * 
+	 * @param truncateRate
+	 *            - a value from 0.0 (never) to 1.0 (always)
+	 */
+	public void setTruncateRate(double truncateRate) {
+		this.truncateRate = truncateRate;
+	}
+
+	/**
+	 * Sets whether ETag validators are sent and honored
+	 * 
+	 * @param useValidators
+	 *            - true if conditional requests should get 304 responses
+	 */
+	public void setUseValidators(boolean useValidators) {
+		this.useValidators = useValidators;
+	}
+
+	/**
+	 * Sets whether pages are gzip-compressed for clients which accept it
+	 * 
+	 * @param useGzip
+	 *            - true if gzip responses should be sent
+	 */
+	public void setUseGzip(boolean useGzip) {
+		this.useGzip = useGzip;
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Loads all recorded line view pages from the fixture directory
+	 * 
+	 * @param fixtureDir
+	 *            - the directory containing the recorded pages
+	 * @throws IOException
+	 */
+	private void loadFixtures(String fixtureDir) throws IOException {
+		File dir = new File(fixtureDir);
+		File files[] = dir.listFiles();
+		if (files == null) {
+			throw new IOException("Not a directory: " + fixtureDir);
+		}
+
+		for (int i = 0; i < files.length; i++) {
+			String name = files[i].getName();
+			if (name.startsWith(FIXTURE_PREFIX) && name.endsWith(FIXTURE_SUFFIX)) {
+				byte body[] = Files.readAllBytes(files[i].toPath());
+				fixtures.put("/" + name, new Fixture(body));
+			}
+		}
+
+		if (fixtures.isEmpty()) {
+			throw new IOException("No line view fixtures found in "
+					+ fixtureDir);
+		}
+	}
+
+	/**
+	 * Picks a random outcome with the given probability
+	 * 
+	 * @param rate
+	 *            - the probability from 0.0 to 1.0
+	 * @return true if the outcome was picked
+	 */
+	private boolean roll(double rate) {
+		return (rate > 0.0) && (random.nextDouble() < rate);
+	}
+
+	/*****************************************************************************************/
+	/** INTERNAL CLASSES **/
+	/*****************************************************************************************/
+	/**
+	 * <b>Fixture Object</b> </br>A recorded line view page, its gzipped form
+	 * and its ETag
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class Fixture {
+		public byte body[];
+		public byte gzipBody[];
+		public String eTag;
+
+		public Fixture(byte body[]) throws IOException {
+			this.body = body;
+			this.eTag = "\"" + Integer.toHexString(Arrays.hashCode(body))
+					+ "\"";
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			GZIPOutputStream gzipOut = new GZIPOutputStream(out);
+			gzipOut.write(body);
+			gzipOut.close();
+			this.gzipBody = out.toByteArray();
+		}
+	}
+
+	/**
+	 * HttpHandler class which replays the fixtures
+	 * 
+	 * @author francis
+	 * 
+	 */
+	class ReplayHandler implements HttpHandler {
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			requestCount.incrementAndGet();
+
+			try {
+				Fixture fixture = fixtures.get(exchange.getRequestURI()
+						.getPath());
+				if (fixture == null) {
+					exchange.sendResponseHeaders(404, -1);
+					return;
+				}
+
+				long delay = latency;
+				if (jitter > 0) {
+					delay += (long) (random.nextDouble() * jitter);
+				}
+				if (delay > 0) {
+					Thread.sleep(delay);
+				}
+
+				if (roll(timeoutRate)) {
+					/* Say nothing until the client gives up on us */
+					Thread.sleep(hangTime);
+					return;
+				}
+
+				if (useValidators) {
+					exchange.getResponseHeaders().set("ETag", fixture.eTag);
+					String ifNoneMatch = exchange.getRequestHeaders().getFirst(
+							"If-None-Match");
+					if (fixture.eTag.equals(ifNoneMatch)) {
+						exchange.sendResponseHeaders(304, -1);
+						return;
+					}
+				}
+
+				exchange.getResponseHeaders().set("Content-Type",
+						"text/html; charset=UTF-8");
+
+				byte body[] = fixture.body;
+				String acceptEncoding = exchange.getRequestHeaders().getFirst(
+						"Accept-Encoding");
+				if (useGzip && (acceptEncoding != null)
+						&& acceptEncoding.contains("gzip")) {
+					exchange.getResponseHeaders().set("Content-Encoding",
+							"gzip");
+					body = fixture.gzipBody;
+				}
+
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				if (roll(truncateRate)) {
+					/*
+					 * Promise the whole page but stop partway through it. The
+					 * server drops the connection when a handler fails, so
+					 * the client hits the end of the stream early the way it
+					 * would on a cut connection.
+					 */
+					out.write(body, 0, random.nextInt(body.length));
+					out.flush();
+					throw new IOException("Truncated response");
+				}
+				out.write(body);
+				out.close();
+			} catch (InterruptedException e) {
+				/* Server is stopping */
+			} finally {
+				exchange.close();
+			}
+		}
+	}
+
+	/**
+	 * TrafficDataIndexerNotifier which only keeps count of the saved files.
+	 * Used when benchmarking.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class BenchmarkNotifier implements TrafficDataIndexerNotifier {
+		public int savedCount = 0;
+
+		@Override
+		public void onUpdateDone(String message) {
+			return;
+		}
+
+		@Override
+		public void onStatusUpdate(String s) {
+			return;
+		}
+
+		@Override
+		public void onTrafficDataFileSaved(String filename, String timestamp) {
+			savedCount++;
+		}
+
+		@Override
+		public void onTrafficDataReady(LineDataList dataList, String timestamp) {
+			return;
+		}
+	}
+
+	/**
+	 * Runs the replay server. </br></br><b>Usage:</b> LineViewReplayServer
+	 * [fixture dir] [options] </br>-port [port] </br>-latency [ms] </br>-jitter
+	 * [ms] </br>-hang [ms] </br>-timeouts [rate] </br>-truncate [rate]
+	 * </br>-novalidators </br>-nogzip </br>-bench [cycles] </br></br>With -bench, the given
+	 * number of TrafficDataManager update cycles are run against the server
+	 * and timed, after which the program exits. Note that each cycle saves its
+	 * results in the working directory just like a normal update.
+	 * 
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: LineViewReplayServer [fixture dir] "
+					+ "[-port n] [-latency ms] [-jitter ms] [-hang ms] "
+					+ "[-timeouts rate] [-truncate rate] [-novalidators] "
+					+ "[-nogzip] [-bench cycles]");
+			return;
+		}
+
+		int port = DEFAULT_PORT;
+		int benchCycles = 0;
+		LineViewReplayServer replayServer = null;
+
+		try {
+			for (int i = 1; i < args.length; i++) {
+				if (args[i].equals("-port")) {
+					port = Integer.parseInt(args[++i]);
+				}
+			}
+
+			replayServer = new LineViewReplayServer(args[0], port);
+
+			for (int i = 1; i < args.length; i++) {
+				if (args[i].equals("-port")) {
+					i++;
+				} else if (args[i].equals("-latency")) {
+					replayServer.setLatency(Long.parseLong(args[++i]));
+				} else if (args[i].equals("-jitter")) {
+					replayServer.setJitter(Long.parseLong(args[++i]));
+				} else if (args[i].equals("-hang")) {
+					replayServer.setHangTime(Long.parseLong(args[++i]));
+				} else if (args[i].equals("-timeouts")) {
+					replayServer.setTimeoutRate(Double.parseDouble(args[++i]));
+				} else if (args[i].equals("-truncate")) {
+					replayServer.setTruncateRate(Double.parseDouble(args[++i]));
+				} else if (args[i].equals("-novalidators")) {
+					replayServer.setUseValidators(false);
+				} else if (args[i].equals("-nogzip")) {
+					replayServer.setUseGzip(false);
+				} else if (args[i].equals("-bench")) {
+					benchCycles = Integer.parseInt(args[++i]);
+				} else {
+					System.out.println("Unknown option: " + args[i]);
+					return;
+				}
+			}
+
+			replayServer.start();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		} catch (NumberFormatException e) {
+			System.out.println("Invalid option value: " + e.getMessage());
+			return;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			System.out.println("Missing option value.");
+			return;
+		}
+
+		if (benchCycles <= 0) {
+			/* Keep serving until killed */
+			return;
+		}
+
+		BenchmarkNotifier notifier = new BenchmarkNotifier();
+		LineViewCache cache = new LineViewCache("mmda_lineview_bench.cache");
+		long startTime = System.nanoTime();
+
+		try {
+			for (int i = 0; i < benchCycles; i++) {
+				TrafficDataManager tdm = new TrafficDataManager(null, notifier,
+						cache);
+				tdm.setBaseUrl(replayServer.getBaseUrl());
+				tdm.getAllLineTrafficData();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		long elapsed = System.nanoTime() - startTime;
+		System.out.println("[LineViewReplayServer] " + notifier.savedCount
+				+ " cycles in " + (elapsed / 1000000) + " ms ("
+				+ ((notifier.savedCount * 1000000000.0) / elapsed)
+				+ " cycles/sec), " + replayServer.getRequestCount()
+				+ " requests served.");
+
+		replayServer.stop();
+	}
+}
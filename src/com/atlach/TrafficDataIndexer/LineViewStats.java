@@ -0,0 +1,229 @@
+package com.atlach.TrafficDataIndexer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>LineViewStats Class</b> </br>Keeps running success and latency counters
+ * for each MMDA Line View so that we can see which feeds are degrading. The
+ * counters live for the whole program run and are shared by every update.
+ * </br></br>Latencies are kept for the most recent successful downloads only,
+ * which is also what the hedged request delay is based on.
+ * 
+ * @author francis
+ * 
+ */
+public class LineViewStats {
+	/* Number of recent latencies kept for each line view */
+	private static final int LATENCY_SAMPLES = 64;
+
+	private static LineViewStats sharedStats = null;
+
+	private Map<String, AreaStats> areaStatsMap = new LinkedHashMap<String, AreaStats>();
+
+	/*****************************************************************************************/
+	/** PUBLIC METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Gets the stats instance shared by the whole program
+	 * 
+	 * @return the shared LineViewStats object
+	 */
+	public static synchronized LineViewStats getInstance() {
+		if (sharedStats == null) {
+			sharedStats = new LineViewStats();
+		}
+		return sharedStats;
+	}
+
+	/**
+	 * Gets the counters for a particular Line View
+	 * 
+	 * @param lineViewName
+	 *            - the name of the Line View (e.g. "edsa")
+	 * @return the AreaStats object for this Line View
+	 */
+	public synchronized AreaStats getAreaStats(String lineViewName) {
+		AreaStats stats = areaStatsMap.get(lineViewName);
+		if (stats == null) {
+			stats = new AreaStats(lineViewName);
+			areaStatsMap.put(lineViewName, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Creates a summary of the counters for all Line Views, one line each
+	 * 
+	 * @return the summary string
+	 */
+	public synchronized String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		Iterator<AreaStats> iter = areaStatsMap.values().iterator();
+		while (iter.hasNext()) {
+			sb.append(iter.next().toString());
+			if (iter.hasNext()) {
+				sb.append("\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	/*****************************************************************************************/
+	/** INTERNAL CLASSES **/
+	/*****************************************************************************************/
+	/**
+	 * <b>AreaStats Object</b> </br>Counters for a single Line View. Every
+	 * request counts as an attempt, including retries and hedged requests.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	public static class AreaStats {
+		private String lineViewName;
+		private int attemptCount = 0;
+		private int successCount = 0;
+		private int timeoutCount = 0;
+		private int failureCount = 0;
+		private int retryCount = 0;
+		private int hedgeCount = 0;
+		private int hedgeWinCount = 0;
+		private int deadlineMissCount = 0;
+		private long latencies[] = new long[LATENCY_SAMPLES];
+		private int latencyCount = 0;
+		private long lastSuccessTime = -1;
+
+		public AreaStats(String lineViewName) {
+			this.lineViewName = lineViewName;
+		}
+
+		public synchronized void recordSuccess(long latency) {
+			attemptCount++;
+			successCount++;
+			latencies[latencyCount % LATENCY_SAMPLES] = latency;
+			latencyCount++;
+			lastSuccessTime = System.currentTimeMillis();
+		}
+
+		public synchronized void recordTimeout() {
+			attemptCount++;
+			timeoutCount++;
+		}
+
+		public synchronized void recordFailure() {
+			attemptCount++;
+			failureCount++;
+		}
+
+		public synchronized void recordRetry() {
+			retryCount++;
+		}
+
+		public synchronized void recordHedge() {
+			hedgeCount++;
+		}
+
+		public synchronized void recordHedgeWin() {
+			hedgeWinCount++;
+		}
+
+		public synchronized void recordDeadlineMiss() {
+			deadlineMissCount++;
+		}
+
+		public synchronized int getAttemptCount() {
+			return attemptCount;
+		}
+
+		public synchronized int getSuccessCount() {
+			return successCount;
+		}
+
+		public synchronized int getTimeoutCount() {
+			return timeoutCount;
+		}
+
+		public synchronized int getFailureCount() {
+			return failureCount;
+		}
+
+		public synchronized int getRetryCount() {
+			return retryCount;
+		}
+
+		public synchronized int getHedgeCount() {
+			return hedgeCount;
+		}
+
+		public synchronized int getHedgeWinCount() {
+			return hedgeWinCount;
+		}
+
+		public synchronized int getDeadlineMissCount() {
+			return deadlineMissCount;
+		}
+
+		public synchronized long getLastSuccessTime() {
+			return lastSuccessTime;
+		}
+
+		/**
+		 * Gets the number of recent latencies kept
+		 * 
+		 * @return the latency sample count
+		 */
+		public synchronized int getLatencySampleCount() {
+			return Math.min(latencyCount, LATENCY_SAMPLES);
+		}
+
+		/**
+		 * Gets a percentile of the recent successful download latencies
+		 * 
+		 * @param percentile
+		 *            - the percentile to get (0 to 100)
+		 * @return the latency in milliseconds or -1 if there are no samples
+		 */
+		public synchronized long getLatencyPercentile(int percentile) {
+			int count = Math.min(latencyCount, LATENCY_SAMPLES);
+			if (count == 0) {
+				return -1;
+			}
+
+			long sorted[] = Arrays.copyOf(latencies, count);
+			Arrays.sort(sorted);
+
+			int idx = ((count * percentile) + 99) / 100 - 1;
+			return sorted[Math.min(Math.max(idx, 0), count - 1)];
+		}
+
+		@Override
+		public synchronized String toString() {
+			return (lineViewName + ": " + successCount + "/" + attemptCount
+					+ " ok, " + timeoutCount + " timeouts, " + failureCount
+					+ " failures, " + retryCount + " retries, " + hedgeWinCount
+					+ "/" + hedgeCount + " hedges won, " + deadlineMissCount
+					+ " deadline misses, p50 " + getLatencyPercentile(50)
+					+ " ms, p90 " + getLatencyPercentile(90) + " ms");
+		}
+	}
+}
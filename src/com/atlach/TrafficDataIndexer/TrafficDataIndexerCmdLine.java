@@ -1,6 +1,7 @@
 package com.atlach.TrafficDataIndexer;
 
 import com.atlach.TrafficDataAggregator.TrafficDataAggregatorMain;
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
 
 /* 	Copyright (C) 2013	Francis T., Zara P.
  * 
@@ -32,8 +33,13 @@ public class TrafficDataIndexerCmdLine implements TrafficDataIndexerNotifier {
 	private TrafficDataIndexerMain trafficIndexer = null;
 	private TrafficDataAggregatorMain trafficAggregator = null;
 	private ShutdownHookTask shutdownTask = null;
+	/*
+	 * Set from the update and save threads, so only touched while holding
+	 * our lock. The LineDataList carries its own timestamp.
+	 */
 	private String filename;
-	private String timestamp;
+	private String fileTimestamp;
+	private LineDataList dataList = null;
 
 	public TrafficDataIndexerCmdLine() {
 		shutdownTask = new ShutdownHookTask();
@@ -49,20 +55,34 @@ public class TrafficDataIndexerCmdLine implements TrafficDataIndexerNotifier {
 	}
 
 	@Override
-	public void onTrafficDataFileSaved(String filename, String timestamp) {
+	public synchronized void onTrafficDataFileSaved(String filename,
+			String timestamp) {
 		this.filename = new String(filename);
-		this.timestamp = new String(timestamp);
+		this.fileTimestamp = new String(timestamp);
 		System.out.println("[onTrafficDataFileSaved] Filename: "
-				+ this.filename + ", Timestamp: " + this.timestamp);
+				+ this.filename + ", Timestamp: " + this.fileTimestamp);
 	}
 
 	@Override
-	public void onUpdateDone(String message) {
+	public synchronized void onUpdateDone(String message) {
 		if (trafficAggregator == null) {
 			trafficAggregator = new TrafficDataAggregatorMain();
 		}
 
-		trafficAggregator.runPushDataTask(filename, timestamp);
+		if (dataList != null) {
+			/* Push what we already have in memory */
+			trafficAggregator.runPushDataTask(dataList, dataList.timestamp);
+			dataList = null;
+		} else {
+			trafficAggregator.runPushDataTask(filename, fileTimestamp);
+		}
+	}
+
+	@Override
+	public synchronized void onTrafficDataReady(LineDataList dataList,
+			String timestamp) {
+		dataList.timestamp = timestamp;
+		this.dataList = dataList;
 	}
 
 	/*****************************************************************************************/
@@ -1,6 +1,11 @@
 package com.atlach.TrafficDataIndexer;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
 
 import com.atlach.TrafficDataIndexer.TrafficDataManager.MonitoredLocation;
 
@@ -30,19 +35,51 @@ import com.atlach.TrafficDataIndexer.TrafficDataManager.MonitoredLocation;
  * 
  */
 public class TrafficDataIndexerMain implements TrafficDataIndexerEvent {
-	private static final long TIMER_DURATION = 1000;
-	private static final long TIMER_COUNTDOWN = 900000 / TIMER_DURATION;
-	private static final long COUNT_DOWN_TO_MINS = TIMER_COUNTDOWN / 15;
-	private static final long SECONDS_MAGNIFIER = TIMER_DURATION / 1000;
+	/* What to do when an update is due while the previous one still runs */
+	public static final int OVERRUN_SKIP = 0;
+	public static final int OVERRUN_COALESCE = 1;
+
+	/* Adaptive polling can be turned on with -Dmmda.adaptive=true */
+	public static final String ADAPTIVE_PROPERTY = "mmda.adaptive";
+	public static final String ADAPTIVE_FLOOR_PROPERTY = "mmda.adaptive.floorMins";
+	public static final String ADAPTIVE_CEILING_PROPERTY = "mmda.adaptive.ceilingMins";
+	public static final int DEFAULT_ADAPTIVE_FLOOR_MINS = 5;
+	public static final int DEFAULT_ADAPTIVE_CEILING_MINS = 30;
+
+	/* Samples taken within the same quarter hour are pushed as one */
+	private static final int PUSH_SLOT_MINS = 15;
+	private static final long MILLIS_PER_MIN = 60000;
+	/* Condition changes per quarter hour at which we speed up or slow down */
+	private static final int VOLATILE_CHANGE_RATE = 12;
+	private static final int CALM_CHANGE_RATE = 3;
+	/* Poll intervals which keep the schedule lined up with the hour */
+	private static final int INTERVAL_STEPS[] = { 1, 2, 3, 4, 5, 6, 10, 12,
+			15, 20, 30, 60 };
+
 	private boolean shouldUseWaitThreads = false;
-	public boolean isRunning = true;
+	public boolean isRunning = false;
 
 	public GetTrafficDataTask getTrafficDataTask = null;
-	public IndexerTimerTask indexerTimerTask = null;
-	public Thread indexerTimerThread = null;
 	public Thread getTrafficDataThread = null;
 
 	private TrafficDataIndexerNotifier notifyEvent = null;
+	private IndexerScheduler scheduler = null;
+	private int overrunPolicy = OVERRUN_COALESCE;
+	private boolean isUpdatePending = false;
+	private boolean isAdaptive = false;
+	private int intervalMins = IndexerScheduler.DEFAULT_INTERVAL_MINS;
+	private int floorIntervalMins = DEFAULT_ADAPTIVE_FLOOR_MINS;
+	private int ceilingIntervalMins = DEFAULT_ADAPTIVE_CEILING_MINS;
+	private LineDataList lastSample = null;
+	private long lastSampleTime = -1;
+	private PushSlot pendingSlot = null;
+	private boolean isStopped = false;
+	/* Set once the running update has taken in its sample (or found none) */
+	private boolean isSampleHandled = false;
+	/* Set if the running update is pushing a slot of its own */
+	private boolean isSlotPushing = false;
+	/* Kept across updates so unchanged line views can be skipped */
+	private LineViewCache lineViewCache = null;
 
 	public TrafficDataIndexerMain(TrafficDataIndexerNotifier ev) {
 		notifyEvent = ev;
@@ -52,28 +89,68 @@ public class TrafficDataIndexerMain implements TrafficDataIndexerEvent {
 			boolean useWaitThreads) {
 		notifyEvent = ev;
 		shouldUseWaitThreads = useWaitThreads;
+
+		if (useWaitThreads && Boolean.getBoolean(ADAPTIVE_PROPERTY)) {
+			setAdaptivePolling(Integer.getInteger(ADAPTIVE_FLOOR_PROPERTY,
+					DEFAULT_ADAPTIVE_FLOOR_MINS), Integer.getInteger(
+					ADAPTIVE_CEILING_PROPERTY, DEFAULT_ADAPTIVE_CEILING_MINS));
+		}
 	}
 
 	/*****************************************************************************************/
 	/** PUBLIC METHODS **/
 	/*****************************************************************************************/
 	/**
-	 * Starts the TrafficDataIndexer
+	 * Starts the TrafficDataIndexer. An update is run right away. Depending on
+	 * the value of the shouldUseWaitThreads boolean flag, that is either the
+	 * only update (if false) or further updates follow on every quarter hour
+	 * in GMT+8 (if true), or more or less often in adaptive polling mode. The
+	 * purpose of this was to allow the module to be used either via a
+	 * crontab'd command line operation (i.e. the system handles the waiting)
+	 * or via Graphical-User Interface (i.e. the program handles its own
+	 * waiting)
 	 */
 	public void start() {
-		this.runIndexerTimerTask();
+		synchronized (this) {
+			isStopped = false;
+		}
+		runGetTrafficDataTask();
+
+		if (shouldUseWaitThreads) {
+			synchronized (this) {
+				if (scheduler == null) {
+					scheduler = new IndexerScheduler(this, intervalMins);
+				}
+			}
+			scheduler.start();
+		}
 	}
 
 	/**
-	 * Stops the TrafficDataIndexer
+	 * Stops the TrafficDataIndexer. A quarter hour slot still waiting for
+	 * more updates is pushed right away, so the samples folded into it so far
+	 * are not lost. If an update is still running, that update pushes the
+	 * slot once it has taken in its own sample. This does not wait for the
+	 * update, so it is safe to call from the event dispatch thread.
 	 */
 	public void stop() {
+		LineDataList flushData = null;
+		synchronized (this) {
+			isStopped = true;
+			if ((getTrafficDataTask == null)
+					|| (isSampleHandled && !isSlotPushing)) {
+				flushData = takePendingSlot();
+			} else if (isSampleHandled && (pendingSlot != null)) {
+				/* Only one push can run at a time; the update's goes out */
+				System.out.println("[stop] Update is pushing. Dropped slot ("
+						+ pendingSlot.sampleCount + " samples).");
+				pendingSlot = null;
+			}
+		}
 		this.isRunning = false;
 
-		if (indexerTimerThread != null) {
-			if (indexerTimerThread.isAlive()) {
-				indexerTimerThread.interrupt();
-			}
+		if (scheduler != null) {
+			scheduler.stop();
 		}
 
 		if (getTrafficDataTask != null) {
@@ -85,31 +162,109 @@ public class TrafficDataIndexerMain implements TrafficDataIndexerEvent {
 				getTrafficDataThread.interrupt();
 			}
 		}
+
+		if (flushData != null) {
+			notifyEvent.onTrafficDataReady(flushData, flushData.timestamp);
+			notifyEvent.onUpdateDone("");
+		}
+	}
+
+	/**
+	 * Gets the time of the next scheduled update
+	 * 
+	 * @return the time in milliseconds since the epoch or -1 if no update is
+	 *         scheduled
+	 */
+	public long getNextUpdateTime() {
+		if (scheduler == null) {
+			return -1;
+		}
+		return scheduler.getNextFireTime();
+	}
+
+	/**
+	 * Sets what happens when an update is due while the previous one is still
+	 * running
+	 * 
+	 * @param policy
+	 *            - OVERRUN_SKIP to drop the late update, or OVERRUN_COALESCE
+	 *            to run a single update as soon as the previous one is done
+	 *            (no matter how many were missed)
+	 */
+	public synchronized void setOverrunPolicy(int policy) {
+		overrunPolicy = policy;
+	}
+
+	/**
+	 * Turns on adaptive polling. The poll interval is shortened while many
+	 * locations change condition between consecutive updates and lengthened
+	 * while few do, staying between the given floor and ceiling. Updates
+	 * falling within the same quarter hour are folded into a single push
+	 * (keeping for each location the condition from the update nearest the
+	 * start of the quarter hour, which is when fixed polling would have run),
+	 * so the hourly data gets the same records no matter how often we poll.
+	 * 
+	 * @param floorMins
+	 *            - the shortest poll interval in minutes
+	 * @param ceilingMins
+	 *            - the longest poll interval in minutes
+	 */
+	public synchronized void setAdaptivePolling(int floorMins, int ceilingMins) {
+		floorIntervalMins = toIntervalStep(Math.min(floorMins, ceilingMins));
+		ceilingIntervalMins = toIntervalStep(Math.max(floorMins, ceilingMins));
+		isAdaptive = true;
+
+		System.out.println("[setAdaptivePolling] Poll interval: "
+				+ floorIntervalMins + " to " + ceilingIntervalMins + " mins.");
+		setIntervalMins(Math.min(
+				Math.max(IndexerScheduler.DEFAULT_INTERVAL_MINS,
+						floorIntervalMins), ceilingIntervalMins));
+	}
+
+	/**
+	 * Turns off adaptive polling, going back to updates every quarter hour
+	 */
+	public synchronized void setFixedPolling() {
+		isAdaptive = false;
+		setIntervalMins(IndexerScheduler.DEFAULT_INTERVAL_MINS);
+	}
+
+	/**
+	 * Gets the current poll interval
+	 * 
+	 * @return the poll interval in minutes
+	 */
+	public synchronized int getPollIntervalMins() {
+		return intervalMins;
 	}
 
 	@Override
-	public void onTimerExpire() {
+	public synchronized void onTimerExpire() {
 		System.out.println("[onTimerExpire] Callback called.");
 		System.out.println("==================================");
 
-		indexerTimerThread = null;
-		indexerTimerTask = null;
-
-		if (shouldUseWaitThreads) {
-			if (!isRunning) {
-				this.runIndexerTimerTask();
-			}
+		if (getTrafficDataTask == null) {
+			runGetTrafficDataTask();
+			return;
 		}
 
+		/* The previous update overran into this one */
+		if (overrunPolicy == OVERRUN_COALESCE) {
+			System.out
+					.println("[onTimerExpire] Update still running. Will update again once done.");
+			isUpdatePending = true;
+		} else {
+			System.out
+					.println("[onTimerExpire] Update still running. Skipping this one.");
+		}
 	}
 
 	@Override
-	public void onTimerInterrupt() {
+	public synchronized void onTimerInterrupt() {
 		System.out.println("[onTimerInterrupt] Callback called.");
 		System.out.println("==================================");
 
-		indexerTimerThread = null;
-		indexerTimerTask = null;
+		isUpdatePending = false;
 
 		if (isRunning) {
 			isRunning = false;
@@ -118,13 +273,18 @@ public class TrafficDataIndexerMain implements TrafficDataIndexerEvent {
 	}
 
 	@Override
-	public void onUpdateDone() {
+	public synchronized void onUpdateDone() {
 		System.out.println("[onUpdateDone] Callback called.");
 
 		getTrafficDataTask = null;
 		getTrafficDataThread = null;
 
 		isRunning = false;
+
+		if (isUpdatePending) {
+			isUpdatePending = false;
+			runGetTrafficDataTask();
+		}
 	}
 
 	/*****************************************************************************************/
@@ -134,9 +294,11 @@ public class TrafficDataIndexerMain implements TrafficDataIndexerEvent {
 	 * Runs the Get Traffic Data Task. This one starts the thread which calls
 	 * for update of the Traffic Data using the TrafficDataManager
 	 */
-	private void runGetTrafficDataTask() {
+	private synchronized void runGetTrafficDataTask() {
 		if (getTrafficDataTask == null) {
 			getTrafficDataTask = new GetTrafficDataTask(this);
+			isSampleHandled = false;
+			isSlotPushing = false;
 			if (getTrafficDataThread == null) {
 				getTrafficDataThread = new Thread(getTrafficDataTask);
 			}
@@ -146,18 +308,222 @@ public class TrafficDataIndexerMain implements TrafficDataIndexerEvent {
 	}
 
 	/**
-	 * Runs the Get Traffic Data Task
+	 * Sets the poll interval, moving the next scheduled update if needed
+	 * 
+	 * @param mins
+	 *            - the new poll interval in minutes
+	 */
+	private synchronized void setIntervalMins(int mins) {
+		intervalMins = mins;
+		if (scheduler != null) {
+			scheduler.setIntervalMins(mins);
+		}
+	}
+
+	/**
+	 * Takes in the traffic data collected by an update. In adaptive polling
+	 * mode, the poll interval is adjusted first. The data is then folded into
+	 * its quarter hour slot, and the slot is handed back for pushing once no
+	 * more updates are due within it.
+	 * 
+	 * @param sample
+	 *            - the LineDataList collected by the update
+	 * @param sampleTime
+	 *            - the time the update was started
+	 * @return the LineDataList to push, or null if nothing should be pushed
+	 *         yet
+	 */
+	private synchronized LineDataList onSampleCollected(LineDataList sample,
+			long sampleTime) {
+		if (isAdaptive) {
+			adaptPollInterval(sample, sampleTime);
+		}
+		lastSample = sample;
+		lastSampleTime = sampleTime;
+		isSampleHandled = true;
+
+		long slotStart = IndexerScheduler.getBoundary(sampleTime,
+				PUSH_SLOT_MINS);
+		PushSlot closedSlot = null;
+
+		/*
+		 * A slot left open from before (e.g. the update that should have
+		 * closed it overran) goes out now. Only one push can run at a time,
+		 * so this sample waits for the next update.
+		 */
+		if ((pendingSlot != null) && (pendingSlot.slotStart != slotStart)) {
+			closedSlot = pendingSlot;
+			pendingSlot = null;
+		}
+
+		if (pendingSlot == null) {
+			pendingSlot = new PushSlot(slotStart);
+		}
+		pendingSlot.fold(sample, sampleTime);
+
+		if ((closedSlot == null) && isStopped) {
+			/* No more updates are coming to fill the slot */
+			closedSlot = pendingSlot;
+			pendingSlot = null;
+		}
+
+		if ((pendingSlot != null) && isStopped) {
+			/* Only one push can run at a time; the older slot goes out */
+			System.out.println("[onSampleCollected] Stopped. Dropped slot ("
+					+ pendingSlot.sampleCount + " samples).");
+			pendingSlot = null;
+		}
+
+		if (closedSlot == null) {
+			long nextUpdateTime = getNextUpdateTime();
+			if ((nextUpdateTime < 0)
+					|| (nextUpdateTime >= slotStart
+							+ (PUSH_SLOT_MINS * MILLIS_PER_MIN))) {
+				closedSlot = pendingSlot;
+				pendingSlot = null;
+			}
+		}
+
+		if (closedSlot == null) {
+			System.out.println("[onSampleCollected] Folded sample into slot ("
+					+ pendingSlot.sampleCount + " so far).");
+			return null;
+		}
+		isSlotPushing = true;
+		return closedSlot.toLineDataList();
+	}
+
+	/**
+	 * Notes that an update finished without collecting anything. If the
+	 * indexer has been stopped, the update pushes the slot still waiting for
+	 * more updates, if any.
+	 * 
+	 * @return the LineDataList to push, or null if there is nothing to push
+	 */
+	private synchronized LineDataList onNothingCollected() {
+		isSampleHandled = true;
+		return takePendingSlot();
+	}
+
+	/**
+	 * Takes the quarter hour slot which is still waiting for more updates, if
+	 * any, once the indexer has been stopped
+	 * 
+	 * @return the LineDataList to push, or null if there is nothing to push
+	 */
+	private synchronized LineDataList takePendingSlot() {
+		if (!isStopped || (pendingSlot == null)) {
+			return null;
+		}
+
+		PushSlot slot = pendingSlot;
+		pendingSlot = null;
+		System.out.println("[takePendingSlot] Pushing slot early ("
+				+ slot.sampleCount + " samples).");
+		return slot.toLineDataList();
+	}
+
+	/**
+	 * Adjusts the poll interval according to how many conditions changed
+	 * since the previous update. A volatile period at least halves the
+	 * interval, while a calm one lengthens it a step at a time.
+	 * 
+	 * @param sample
+	 *            - the LineDataList collected by the update
+	 * @param sampleTime
+	 *            - the time the update was started
 	 */
-	private void runIndexerTimerTask() {
-		System.out.println("[runIndexerTimerTask] Started");
-		if (indexerTimerTask == null) {
-			indexerTimerTask = new IndexerTimerTask(this);
-			if (indexerTimerThread == null) {
-				indexerTimerThread = new Thread(indexerTimerTask);
+	private void adaptPollInterval(LineDataList sample, long sampleTime) {
+		if ((lastSample == null) || (sampleTime <= lastSampleTime)) {
+			return;
+		}
+
+		int changeCount = countChanges(lastSample, sample);
+		long elapsedMins = Math.max((sampleTime - lastSampleTime)
+				/ MILLIS_PER_MIN, 1);
+		/* Scale to a quarter hour so that the thresholds hold at any interval */
+		long changeRate = (changeCount * PUSH_SLOT_MINS) / elapsedMins;
+
+		int newIntervalMins = intervalMins;
+		if (changeRate >= VOLATILE_CHANGE_RATE) {
+			newIntervalMins = getFasterInterval(intervalMins);
+		} else if (changeRate <= CALM_CHANGE_RATE) {
+			newIntervalMins = getSlowerInterval(intervalMins);
+		}
+
+		if (newIntervalMins != intervalMins) {
+			System.out.println("[adaptPollInterval] " + changeCount
+					+ " changes in " + elapsedMins + " mins. Poll interval: "
+					+ intervalMins + " -> " + newIntervalMins + " mins.");
+			setIntervalMins(newIntervalMins);
+		}
+	}
+
+	/**
+	 * Counts the traffic conditions which differ between two LineDataLists.
+	 * Locations without data in either list are not counted.
+	 */
+	private static int countChanges(LineDataList oldList, LineDataList newList) {
+		int changeCount = 0;
+		int size = Math.min(oldList.size, newList.size);
+
+		for (int i = 0; i < size; i++) {
+			byte oldSB = oldList.trafficSB[i];
+			byte newSB = newList.trafficSB[i];
+			if ((oldSB != 0) && (newSB != 0) && (oldSB != newSB)) {
+				changeCount++;
+			}
+
+			byte oldNB = oldList.trafficNB[i];
+			byte newNB = newList.trafficNB[i];
+			if ((oldNB != 0) && (newNB != 0) && (oldNB != newNB)) {
+				changeCount++;
+			}
+		}
+		return changeCount;
+	}
+
+	/**
+	 * Gets the longest interval step which is at most half the given interval
+	 * (but not below the floor)
+	 */
+	private int getFasterInterval(int mins) {
+		int fasterMins = floorIntervalMins;
+		for (int i = 0; i < INTERVAL_STEPS.length; i++) {
+			if ((INTERVAL_STEPS[i] >= floorIntervalMins)
+					&& (INTERVAL_STEPS[i] <= (mins / 2))) {
+				fasterMins = INTERVAL_STEPS[i];
 			}
-			indexerTimerThread.start();
 		}
-		System.out.println("[runIndexerTimerTask] Finished");
+		return Math.min(fasterMins, mins);
+	}
+
+	/**
+	 * Gets the next interval step after the given interval (but not above the
+	 * ceiling)
+	 */
+	private int getSlowerInterval(int mins) {
+		for (int i = 0; i < INTERVAL_STEPS.length; i++) {
+			if (INTERVAL_STEPS[i] > mins) {
+				return (INTERVAL_STEPS[i] <= ceilingIntervalMins) ? INTERVAL_STEPS[i]
+						: mins;
+			}
+		}
+		return mins;
+	}
+
+	/**
+	 * Gets the longest interval step which does not exceed the given number
+	 * of minutes
+	 */
+	private static int toIntervalStep(int mins) {
+		int stepMins = INTERVAL_STEPS[0];
+		for (int i = 0; i < INTERVAL_STEPS.length; i++) {
+			if (INTERVAL_STEPS[i] <= mins) {
+				stepMins = INTERVAL_STEPS[i];
+			}
+		}
+		return stepMins;
 	}
 
 	/*****************************************************************************************/
@@ -171,9 +537,10 @@ public class TrafficDataIndexerMain implements TrafficDataIndexerEvent {
 	 * @author francis
 	 * 
 	 */
-	class GetTrafficDataTask implements Runnable {
+	class GetTrafficDataTask implements Runnable, TrafficDataIndexerNotifier {
 		private TrafficDataIndexerEvent indexerEvent;
 		public TrafficDataManager tdm = null;
+		private LineDataList sample = null;
 
 		public GetTrafficDataTask(TrafficDataIndexerEvent e) {
 			indexerEvent = e;
@@ -182,7 +549,12 @@ public class TrafficDataIndexerMain implements TrafficDataIndexerEvent {
 		@Override
 		public void run() {
 			System.out.println("[GetTrafficDataTask] Thread Started");
-			tdm = new TrafficDataManager(indexerEvent, notifyEvent);
+			long sampleTime = System.currentTimeMillis();
+			if (lineViewCache == null) {
+				lineViewCache = TrafficDataManager.loadLineViewCache();
+			}
+			/* Events go through us so the collected data can be folded */
+			tdm = new TrafficDataManager(indexerEvent, this, lineViewCache);
 
 			try {
 				@SuppressWarnings("unused")
@@ -196,74 +568,123 @@ public class TrafficDataIndexerMain implements TrafficDataIndexerEvent {
 				e.printStackTrace();
 			}
 
+			if (sample == null) {
+				/* Nothing collected; leave it to the traffic data file */
+				LineDataList flushData = onNothingCollected();
+				if (flushData != null) {
+					notifyEvent.onTrafficDataReady(flushData,
+							flushData.timestamp);
+				}
+				indexerEvent.onUpdateDone();
+				notifyEvent.onUpdateDone("");
+				return;
+			}
+
+			LineDataList pushData = onSampleCollected(sample, sampleTime);
+			if (pushData != null) {
+				notifyEvent.onTrafficDataReady(pushData, pushData.timestamp);
+			}
+
 			indexerEvent.onUpdateDone();
-			notifyEvent.onUpdateDone("");
+			if (pushData != null) {
+				notifyEvent.onUpdateDone("");
+			}
+		}
+
+		@Override
+		public void onUpdateDone(String message) {
+			notifyEvent.onUpdateDone(message);
+		}
+
+		@Override
+		public void onStatusUpdate(String s) {
+			notifyEvent.onStatusUpdate(s);
+		}
+
+		@Override
+		public void onTrafficDataFileSaved(String filename, String timestamp) {
+			notifyEvent.onTrafficDataFileSaved(filename, timestamp);
+		}
+
+		@Override
+		public void onTrafficDataReady(LineDataList dataList, String timestamp) {
+			/* Held back until we know whether its slot is done */
+			sample = dataList;
 		}
 	}
 
 	/**
-	 * Runnable class for Indexer Timer Tasks </br><b>Purpose:</b> </br>The
-	 * Indexer Timer task is continuously run whenever the Indexer is started.
-	 * Depending on the value of the shouldUseWaitThreads boolean flag, it will
-	 * either run once (if false) or it will run continuously (true). The
-	 * purpose of this was to allow the module to be used either via a crontab'd
-	 * command line operation (i.e. the system handles the waiting) or via
-	 * Graphical-User Interface (i.e. the program handles its own waiting)
+	 * <b>PushSlot Object</b> </br>Traffic data from all updates falling within
+	 * one quarter hour, folded together by keeping for each location the
+	 * condition from the update nearest the start of the quarter hour. That
+	 * is the update fixed polling would have made, so adaptive polling does
+	 * not lean the hourly data towards heavier (or lighter) traffic. An
+	 * update without data for a location (0) never replaces one with data.
 	 * 
 	 * @author francis
 	 * 
 	 */
-	class IndexerTimerTask implements Runnable {
-		private TrafficDataIndexerEvent indexerEvent;
-
-		public IndexerTimerTask(TrafficDataIndexerEvent e) {
-			indexerEvent = e;
+	static class PushSlot {
+		private long slotStart;
+		private byte conditionSB[] = null;
+		private byte conditionNB[] = null;
+		/* Time past the slot start of the update each condition came from */
+		private long offsetSB[] = null;
+		private long offsetNB[] = null;
+		private int sampleCount = 0;
+
+		public PushSlot(long slotStart) {
+			this.slotStart = slotStart;
 		}
 
-		@Override
-		public void run() {
+		public void fold(LineDataList sample, long sampleTime) {
+			int size = sample.size;
+			if (conditionSB == null) {
+				conditionSB = new byte[size];
+				conditionNB = new byte[size];
+				offsetSB = new long[size];
+				offsetNB = new long[size];
+			}
 
-			if (shouldUseWaitThreads) {
-				try {
-					System.out.println("[IndexerTimerTask] Thread Started");
-					runGetTrafficDataTask();
-
-					long minutesSec = 0;
-					long secondsSec = 0;
-
-					/*
-					 * Basically, we wait for fifteen full minutes before we
-					 * move on to the Get Traffic Data Update. Every second, we
-					 * update the GUI status using the NotifyEvent here
-					 */
-					for (int i = 0; i < TIMER_COUNTDOWN; i++) {
-						minutesSec = (TIMER_COUNTDOWN - i) / COUNT_DOWN_TO_MINS;
-						secondsSec = ((TIMER_COUNTDOWN - i) % COUNT_DOWN_TO_MINS)
-								* SECONDS_MAGNIFIER;
-
-						if (!isRunning) {
-							notifyEvent.onStatusUpdate("Next update due in: "
-									+ minutesSec + " mins and " + secondsSec
-									+ " secs. ");
-						}
-
-						Thread.sleep(TIMER_DURATION);
-					}
-				} catch (InterruptedException e) {
-					System.out
-							.println("[IndexerTimerTask] Thread Interrupted.");
-					indexerEvent.onTimerInterrupt();
-					return;
+			long offset = Math.abs(sampleTime - slotStart);
+			for (int i = 0; i < Math.min(size, conditionSB.length); i++) {
+				if (isNearer(sample.trafficSB[i], offset, conditionSB[i],
+						offsetSB[i])) {
+					conditionSB[i] = sample.trafficSB[i];
+					offsetSB[i] = offset;
+				}
+				if (isNearer(sample.trafficNB[i], offset, conditionNB[i],
+						offsetNB[i])) {
+					conditionNB[i] = sample.trafficNB[i];
+					offsetNB[i] = offset;
 				}
-			} else {
-				System.out.println("[IndexerTimerTask] Thread Started");
-				runGetTrafficDataTask();
 			}
-			System.out.println("[IndexerTimerTask] Thread Finished");
+			sampleCount++;
+		}
 
-			/* Call on TimerExpire */
-			indexerEvent.onTimerExpire();
+		public LineDataList toLineDataList() {
+			SimpleDateFormat hourFormat = new SimpleDateFormat("HH");
+			hourFormat.setTimeZone(TimeZone.getTimeZone("GMT+8"));
+
+			LineDataList dataList = new LineDataList();
+			for (int i = 0; i < conditionSB.length; i++) {
+				dataList.add(conditionSB[i], conditionNB[i]);
+			}
+			dataList.timestamp = hourFormat.format(new Date(slotStart)) + "00";
+			return dataList;
 		}
 
+		/**
+		 * Checks whether a newly sampled condition should replace the one
+		 * kept so far: any condition beats none (0), otherwise the one
+		 * sampled nearer the slot start wins
+		 */
+		private static boolean isNearer(byte condition, long offset,
+				byte keptCondition, long keptOffset) {
+			if (condition == 0) {
+				return false;
+			}
+			return (keptCondition == 0) || (offset < keptOffset);
+		}
 	}
 }
@@ -1,5 +1,7 @@
 package com.atlach.TrafficDataIndexer;
 
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
+
 /* 	Copyright (C) 2013	Francis T., Zara P.
  * 
  * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
@@ -53,4 +55,16 @@ public interface TrafficDataIndexerNotifier {
 	 *            - the timestamp to associate with the saved traffic data file
 	 */
 	public void onTrafficDataFileSaved(String filename, String timestamp);
+
+	/**
+	 * Handler for the event where the traffic data has been collected and
+	 * converted into a LineDataList. This comes before the traffic data file
+	 * is saved and allows the data to be pushed without reading the file back.
+	 * 
+	 * @param dataList
+	 *            - the LineDataList containing the collected traffic data
+	 * @param timestamp
+	 *            - the timestamp to associate with the traffic data
+	 */
+	public void onTrafficDataReady(LineDataList dataList, String timestamp);
 }
@@ -10,8 +10,10 @@ import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.Timer;
 
 import com.atlach.TrafficDataAggregator.TrafficDataAggregatorMain;
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
 
 /* 	Copyright (C) 2013	Francis T., Zara P.
  * 
@@ -49,8 +51,15 @@ public class TrafficDataIndexerUI extends JFrame implements ActionListener,
 	private JButton mStopButton = null;
 	private JLabel mLabel = null;
 	private JLabel mStatusLabel = null;
+	/*
+	 * Set from the update and save threads, so only touched while holding
+	 * our lock. The LineDataList carries its own timestamp.
+	 */
 	private String filename;
-	private String timestamp;
+	private String fileTimestamp;
+	private LineDataList dataList = null;
+	/* Refreshes the countdown to the next update every second */
+	private Timer mCountdownTimer = null;
 
 	/**
 	 * 
@@ -94,6 +103,8 @@ public class TrafficDataIndexerUI extends JFrame implements ActionListener,
 			} // windowClosing
 		});
 		this.add(mPanel);
+
+		mCountdownTimer = new Timer(1000, this);
 	}
 
 	/**
@@ -104,6 +115,7 @@ public class TrafficDataIndexerUI extends JFrame implements ActionListener,
 			trafficIndexer = new TrafficDataIndexerMain(this, true);
 		}
 		trafficIndexer.start();
+		mCountdownTimer.start();
 	}
 
 	@Override
@@ -114,11 +126,14 @@ public class TrafficDataIndexerUI extends JFrame implements ActionListener,
 
 	@Override
 	public void actionPerformed(ActionEvent e) {
-		if (e.getSource() == mStartButton) {
+		if (e.getSource() == mCountdownTimer) {
+			updateCountdown();
+		} else if (e.getSource() == mStartButton) {
 			if (trafficIndexer == null) {
 				trafficIndexer = new TrafficDataIndexerMain(this, true);
 			}
 			trafficIndexer.start();
+			mCountdownTimer.start();
 		} else if (e.getSource() == mRegenButton) {
 			if (trafficAggregator == null) {
 				trafficAggregator = new TrafficDataAggregatorMain();
@@ -129,25 +144,60 @@ public class TrafficDataIndexerUI extends JFrame implements ActionListener,
 			if (trafficIndexer == null) {
 				return;
 			}
+			mCountdownTimer.stop();
 			trafficIndexer.stop();
 			mStatusLabel.setText("---");
 		}
 	}
 
+	/**
+	 * Shows the time left until the next scheduled update. The status is left
+	 * alone while an update is running so its progress stays visible.
+	 */
+	private void updateCountdown() {
+		if ((trafficIndexer == null) || (trafficIndexer.isRunning)) {
+			return;
+		}
+
+		long nextUpdateTime = trafficIndexer.getNextUpdateTime();
+		if (nextUpdateTime < 0) {
+			return;
+		}
+
+		long secsLeft = Math.max(
+				(nextUpdateTime - System.currentTimeMillis() + 999) / 1000, 0);
+		mStatusLabel.setText("Next update due in: " + (secsLeft / 60)
+				+ " mins and " + (secsLeft % 60) + " secs. ");
+	}
+
 	@Override
-	public void onUpdateDone(String message) {
+	public synchronized void onUpdateDone(String message) {
 		if (trafficAggregator == null) {
 			trafficAggregator = new TrafficDataAggregatorMain();
 		}
 
-		trafficAggregator.runPushDataTask(filename, timestamp);
+		if (dataList != null) {
+			/* Push what we already have in memory */
+			trafficAggregator.runPushDataTask(dataList, dataList.timestamp);
+			dataList = null;
+		} else {
+			trafficAggregator.runPushDataTask(filename, fileTimestamp);
+		}
 
 	}
 
 	@Override
-	public void onTrafficDataFileSaved(String filename, String timestamp) {
+	public synchronized void onTrafficDataReady(LineDataList dataList,
+			String timestamp) {
+		dataList.timestamp = timestamp;
+		this.dataList = dataList;
+	}
+
+	@Override
+	public synchronized void onTrafficDataFileSaved(String filename,
+			String timestamp) {
 		this.filename = filename;
-		this.timestamp = timestamp;
+		this.fileTimestamp = timestamp;
 	}
 
 	/**
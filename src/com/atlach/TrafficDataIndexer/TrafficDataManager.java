@@ -4,20 +4,39 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Iterator;
+import java.util.List;
 import java.util.TimeZone;
-import java.io.BufferedReader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.io.BufferedWriter;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
-import java.net.URL;
-import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.atlach.TrafficDataAggregator.Constants;
+import com.atlach.TrafficDataAggregator.LocationIndex;
+import com.atlach.TrafficDataAggregator.SharedHttpClient;
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
 
 /* 	Copyright (C) 2013	Francis T., Zara P.
  * 
@@ -47,50 +66,177 @@ import java.nio.file.StandardOpenOption;
  */
 public class TrafficDataManager {
 	private TrafficDataIndexerNotifier eventIndexerNotif = null;
-	private boolean shouldStopReading = false;
+	private volatile boolean shouldStopReading = false;
 
 	public static final int STATUS_OK = 0;
 	public static final int STATUS_FAILED = -1;
 
+	/* Can be overridden with -Dmmda.baseUrl=... (e.g. to use a replay server) */
+	public static final String DEFAULT_BASE_URL = "http://mmdatraffic.interaksyon.com/";
+	public static final String BASE_URL_PROPERTY = "mmda.baseUrl";
+	/*
+	 * Hedged requests are turned on with -Dmmda.hedge=true. A second request
+	 * is sent once the first takes longer than this percentile of the recent
+	 * latencies of its line view.
+	 */
+	public static final String HEDGE_PROPERTY = "mmda.hedge";
+	public static final String HEDGE_PERCENTILE_PROPERTY = "mmda.hedge.percentile";
+	public static final int DEFAULT_HEDGE_PERCENTILE = 90;
+	/* Latencies needed before we trust the percentile enough to hedge */
+	private static final int MIN_HEDGE_SAMPLES = 8;
+	private static final long MIN_HEDGE_DELAY = 250;
+
+	private static final int CONNECT_TIMEOUT = 60000;
+	private static final int READ_TIMEOUT = 30000;
+	/* Upper bound on the time we give a single line view, start to finish */
+	private static final long LINE_VIEW_DEADLINE = CONNECT_TIMEOUT
+			+ READ_TIMEOUT;
+	private static final int MAX_FETCH_THREADS = 9;
+	/* Retries of a failed line view, all within its deadline */
+	private static final int MAX_FETCH_ATTEMPTS = 4;
+	private static final long INITIAL_RETRY_BACKOFF = 1000;
+	private static final long MAX_RETRY_BACKOFF = 8000;
+	/* Not worth retrying with less time than this left */
+	private static final long MIN_ATTEMPT_TIME = 5000;
+	private static final int READ_BUFFER_SIZE = 8192;
+	private static final String PAGE_DIGEST_ALGORITHM = "SHA-1";
+	private static final String LINE_VIEW_CACHE_FILE = "mmda_lineview.cache";
+	private static final String TRAFFIC_DATA_FILE = "mmda_traffic.txt";
+
+	private static final String areaName[] = { "EDSA", "COMMONWEALTH",
+			"QUEZON AVE", "ESPANA", "C5", "ORTIGAS", "MARCOS HIGHWAY",
+			"ROXAS BLVD", "SLEX" };
+	/* Keeps save threads from different updates from writing at once */
+	private static final Object saveFileLock = new Object();
+
+	private static final String lvNames[] = { "edsa", "commonwealth",
+			"quezon-ave", "espana", "c5", "ortigas", "marcos-highway",
+			"roxas-blvd", "slex" };
+
 	private ArrayList<MonitoredLocation> monitoredLocList = null;
+	private LineViewCache lineViewCache = null;
+	private SharedHttpClient httpClient = SharedHttpClient.getInstance();
+	private String baseUrl = DEFAULT_BASE_URL;
+	private LineViewStats lineViewStats = LineViewStats.getInstance();
+	private boolean isHedgingEnabled = false;
+	private int hedgePercentile = DEFAULT_HEDGE_PERCENTILE;
+	/* Runs the individual requests of a line view when hedging */
+	private ExecutorService attemptExecutor = null;
 
 	public TrafficDataManager(TrafficDataIndexerEvent evM,
 			TrafficDataIndexerNotifier evN) {
+		this(evM, evN, loadLineViewCache());
+	}
+
+	public TrafficDataManager(TrafficDataIndexerEvent evM,
+			TrafficDataIndexerNotifier evN, LineViewCache cache) {
 		System.out.println("TrafficDataManager Constructor called.");
 		monitoredLocList = new ArrayList<MonitoredLocation>();
 		eventIndexerNotif = evN;
+		lineViewCache = cache;
+		setBaseUrl(System.getProperty(BASE_URL_PROPERTY, DEFAULT_BASE_URL));
+		setHedging(Boolean.getBoolean(HEDGE_PROPERTY), Integer.getInteger(
+				HEDGE_PERCENTILE_PROPERTY, DEFAULT_HEDGE_PERCENTILE));
 	}
 
 	/*****************************************************************************************/
 	/** PUBLIC METHODS **/
 	/*****************************************************************************************/
 	/**
-	 * Obtains the traffic data for all known lines monitored by MMDA
+	 * Obtains the traffic data for all known lines monitored by MMDA. All line
+	 * views are downloaded concurrently, each one bounded by its own deadline
+	 * within which failed downloads are retried, and the results are merged
+	 * back in the canonical area order. If none of
+	 * the line views changed since the last update, the previous results are
+	 * reused as they are and the Raw Traffic Data File is not rewritten.
 	 * 
 	 * @return an ArrayList of MonitoredLocation objects containing Traffic Data
 	 * @throws Exception
 	 */
 	public ArrayList<MonitoredLocation> getAllLineTrafficData()
 			throws Exception {
-		String areaName[] = { "EDSA", "COMMONWEALTH", "QUEZON AVE", "ESPANA",
-				"C5", "ORTIGAS", "MARCOS HIGHWAY", "ROXAS BLVD", "SLEX" };
-		String lvNames[] = { "edsa", "commonwealth", "quezon-ave", "espana",
-				"c5", "ortigas", "marcos-highway", "roxas-blvd", "slex" };
-
 		monitoredLocList = new ArrayList<MonitoredLocation>();
 
 		shouldStopReading = false;
 
-		for (int i = 0; i < lvNames.length; i++) {
-			extractLineTrafficData(lvNames[i], areaName[i]);
-			if (shouldStopReading) {
-				break;
+		ExecutorService fetchExecutor = Executors.newFixedThreadPool(
+				Math.min(lvNames.length, MAX_FETCH_THREADS),
+				new LineViewThreadFactory());
+		if (isHedgingEnabled) {
+			attemptExecutor = Executors
+					.newCachedThreadPool(new LineViewThreadFactory());
+		}
+		List<ExtractLineTrafficDataTask> tasks = new ArrayList<ExtractLineTrafficDataTask>();
+		List<Future<ArrayList<MonitoredLocation>>> results = new ArrayList<Future<ArrayList<MonitoredLocation>>>();
+		int unchangedCount = 0;
+
+		try {
+			for (int i = 0; i < lvNames.length; i++) {
+				ExtractLineTrafficDataTask task = new ExtractLineTrafficDataTask(
+						lvNames[i], areaName[i]);
+				tasks.add(task);
+				results.add(fetchExecutor.submit(task));
+			}
+
+			/*
+			 * Collect the results in the same order as the lvNames array so
+			 * that the saved file keeps its canonical area ordering regardless
+			 * of which line view finished first
+			 */
+			for (int i = 0; i < results.size(); i++) {
+				if (shouldStopReading) {
+					break;
+				}
+
+				ExtractLineTrafficDataTask task = tasks.get(i);
+				Future<ArrayList<MonitoredLocation>> result = results.get(i);
+				try {
+					long remaining = task.getDeadline()
+							- System.currentTimeMillis();
+					monitoredLocList.addAll(result.get(
+							Math.max(remaining, 0), TimeUnit.MILLISECONDS));
+					if (task.isUnchanged()) {
+						unchangedCount++;
+					}
+				} catch (TimeoutException e) {
+					System.out.println("[getAllLineTrafficData] Deadline "
+							+ "exceeded for " + lvNames[i]);
+					eventIndexerNotif.onStatusUpdate("Deadline exceeded for "
+							+ lvNames[i]);
+					lineViewStats.getAreaStats(lvNames[i]).recordDeadlineMiss();
+					task.abort();
+					result.cancel(true);
+				} catch (CancellationException e) {
+					System.out.println("[getAllLineTrafficData] Cancelled: "
+							+ lvNames[i]);
+				} catch (ExecutionException e) {
+					System.out.println("[getAllLineTrafficData] Failed to "
+							+ "extract line view for " + lvNames[i]);
+					e.getCause().printStackTrace();
+				}
+			}
+		} finally {
+			fetchExecutor.shutdownNow();
+			if (attemptExecutor != null) {
+				attemptExecutor.shutdownNow();
+				attemptExecutor = null;
 			}
 		}
 
+		System.out.println("[getAllLineTrafficData] Line view stats:\n"
+				+ lineViewStats.getSummary());
+
 		if (shouldStopReading == false) {
+			boolean hasChanged = (unchangedCount < lvNames.length);
+			if (hasChanged) {
+				lineViewCache.save();
+			} else {
+				eventIndexerNotif
+						.onStatusUpdate("Line views unchanged since last update.");
+			}
+
 			/* Call Save Data To File here as well */
-			saveTrafficDataToFile();
+			saveTrafficDataToFile(hasChanged);
 		}
 
 		return monitoredLocList;
@@ -103,6 +249,87 @@ public class TrafficDataManager {
 		shouldStopReading = true;
 	}
 
+	/**
+	 * Sets the base URL from which line views are downloaded. Line views are
+	 * expected at <i>[Base URL]line-view-[Line View].php</i>
+	 * 
+	 * @param baseUrl
+	 *            - the new base URL (e.g. "http://localhost:8080/")
+	 */
+	public void setBaseUrl(String baseUrl) {
+		if (!baseUrl.endsWith("/")) {
+			baseUrl = baseUrl + "/";
+		}
+		this.baseUrl = baseUrl;
+	}
+
+	/**
+	 * Sets whether a hedged second request is sent for line views which are
+	 * slower than usual. Whichever request finishes first is used and the
+	 * other one is dropped.
+	 * 
+	 * @param isEnabled
+	 *            - true to send hedged requests
+	 * @param percentile
+	 *            - the latency percentile (of the recent downloads of the same
+	 *            line view) after which the hedged request is sent
+	 */
+	public void setHedging(boolean isEnabled, int percentile) {
+		this.isHedgingEnabled = isEnabled;
+		this.hedgePercentile = Math.min(Math.max(percentile, 1), 100);
+	}
+
+	/**
+	 * Gets the base URL from which line views are downloaded
+	 * 
+	 * @return the base URL string
+	 */
+	public String getBaseUrl() {
+		return baseUrl;
+	}
+
+	/**
+	 * Loads the Line View Cache left behind by previous updates
+	 * 
+	 * @return a LineViewCache object
+	 */
+	public static LineViewCache loadLineViewCache() {
+		LineViewCache cache = new LineViewCache(LINE_VIEW_CACHE_FILE);
+		cache.load();
+		return cache;
+	}
+
+	/**
+	 * Converts a list of MonitoredLocation objects into a LineDataList which
+	 * can be pushed directly by the TrafficDataAggregator. The LineDataList
+	 * always holds an entry for each known location, in the order given in
+	 * Constants.java; locations we have no data for are left at 0.
+	 * 
+	 * @param locList
+	 *            - a List of MonitoredLocation objects
+	 * @return the resulting LineDataList
+	 */
+	public static LineDataList createLineDataList(List<MonitoredLocation> locList) {
+		LineDataList dataList = new LineDataList();
+		dataList.size = Constants.locStr.length;
+
+		for (int i = 0; i < locList.size(); i++) {
+			MonitoredLocation loc = locList.get(i);
+			short locIdx = LocationIndex.lookup(loc.area, loc.name);
+			if (locIdx < 0) {
+				System.out
+						.println("[createLineDataList] Error: Unknown location: "
+								+ loc.area + ", " + loc.name + "!");
+				continue;
+			}
+
+			dataList.trafficSB[locIdx] = (byte) loc.conditionSB;
+			dataList.trafficNB[locIdx] = (byte) loc.conditionNB;
+		}
+
+		return dataList;
+	}
+
 	/*****************************************************************************************/
 	/** PRIVATE METHODS **/
 	/*****************************************************************************************/
@@ -113,143 +340,187 @@ public class TrafficDataManager {
 	 *            - the line view URL from which traffic data will be extracted
 	 * @param areaName
 	 *            - the name of the area to associate with traffic data obtained
-	 * @return an integer indicating the exit status for this method
+	 * @param attempt
+	 *            - the request running this extraction; used to register the
+	 *            open connection, to check the line view deadline and to tell
+	 *            whether the page was downloaded completely
+	 * @return an ArrayList of MonitoredLocation objects for this line view
 	 * @throws IOException
 	 */
-	private int extractLineTrafficData(String lineViewUrl, String areaName)
+	private ArrayList<MonitoredLocation> extractLineTrafficData(
+			String lineViewUrl, String areaName, FetchAttempt attempt)
 			throws IOException {
 		System.out
 				.println("extractLineTrafficData() called for " + lineViewUrl);
 		eventIndexerNotif.onStatusUpdate("Downloading line view for "
 				+ lineViewUrl + "...");
 
-		URL url = new URL("http://mmdatraffic.interaksyon.com/line-view-"
-				+ lineViewUrl + ".php");
-		URLConnection connection = url.openConnection();
-		connection.setConnectTimeout(60000);
-		connection.setReadTimeout(30000);
+		ArrayList<MonitoredLocation> locList = new ArrayList<MonitoredLocation>();
+		LineViewCache.Entry cached = lineViewCache.getEntry(lineViewUrl);
+
+		/* A retry only gets whatever is left of the line view deadline */
+		long remaining = Math.max(attempt.task.getDeadline()
+				- System.currentTimeMillis(), 1);
+		SharedHttpClient.Exchange exchange = httpClient.open(baseUrl
+				+ "line-view-" + lineViewUrl + ".php",
+				(int) Math.min(CONNECT_TIMEOUT, remaining),
+				(int) Math.min(READ_TIMEOUT, remaining));
+		if (cached != null) {
+			/* Let the server tell us if nothing changed since last time */
+			if (cached.eTag != null) {
+				exchange.setRequestProperty("If-None-Match", cached.eTag);
+			}
+			if (cached.lastModified != null) {
+				exchange.setRequestProperty("If-Modified-Since",
+						cached.lastModified);
+			}
+		}
+		attempt.setExchange(exchange);
 
-		BufferedReader rd = null;
+		InputStream inp = null;
+		byte buf[] = new byte[READ_BUFFER_SIZE];
+		/* The page is parsed and digested as it comes in */
+		LineViewParser parser = new LineViewParser(areaName, locList);
+		MessageDigest pageDigest = createPageDigest();
+		boolean isComplete = false;
 
 		try {
-			rd = new BufferedReader(new InputStreamReader(
-					connection.getInputStream()));
-			String line;
-			String lineName = "";
-			int lineCond = 0;
-			int lineCondSB = 0;
-			int lineCondNB = 0;
-			boolean isGettingSB = true;
-
-			while ((line = rd.readLine()) != null) {
+			int responseCode = exchange.getResponseCode();
+			if ((cached != null)
+					&& (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED)) {
+				System.out.println("[extractLineTrafficData] Not modified: "
+						+ lineViewUrl);
+				isComplete = true;
+				attempt.isComplete = true;
+				attempt.isUnchanged = true;
+				locList.addAll(cached.locations);
+				return locList;
+			}
+
+			if (responseCode != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Unexpected response " + responseCode
+						+ " for " + lineViewUrl);
+			}
+
+			inp = exchange.getInputStream();
+
+			int len;
+			while ((len = inp.read(buf)) != -1) {
 				if (shouldStopReading) {
 					System.out
 							.println("[extractLineTrafficData] Read Interrupted.");
 					break;
 				}
 
-				String pattern = new String("line-name\"><p>");
-				if ((line.contains(pattern) == true)
-						&& line.contains("<a") == true) {
-
-					int startIdx = line.indexOf("<p>") + 3;
-					int endIdx = line.indexOf("<a");
-
-					if ((endIdx >= line.length()) || (startIdx > endIdx)
-							|| (startIdx < 0) || (endIdx < 0)) {
-
-					} else {
-						// balintawak, kaingin road etc etc
-						lineName = line.substring(startIdx, endIdx)
-								.replace("��", "n").replace("ñ", "n");
-						continue;
-					}
-				}
-
-				if (line.contains("<div class=\"light\">") == true) {
-					lineCond = 1;
-				} else if (line.contains("<div class=\"mod\">") == true) {
-					lineCond = 2;
-				} else if (line.contains("<div class=\"heavy\">") == true) {
-					lineCond = 3;
-				}
-
-				if (lineCond != 0) {
-					if (isGettingSB) {
-						lineCondSB = lineCond;
-						isGettingSB = false;
-						lineCond = 0;
-					} else if (!isGettingSB) {
-						lineCondNB = lineCond;
-						isGettingSB = true;
-						lineCond = 0;
-					}
+				if (attempt.task.isPastDeadline()) {
+					System.out
+							.println("[extractLineTrafficData] Deadline exceeded for "
+									+ lineViewUrl);
+					break;
 				}
 
-				if ((lineCondSB != 0) && (lineCondNB != 0)
-						&& (lineName.equals("") == false)) {
-
-					MonitoredLocation tempmonitoredLocList = new MonitoredLocation(
-							lineName, areaName, lineCondSB, lineCondNB);
-					monitoredLocList.add(tempmonitoredLocList);
-
-					/* Nullify */
-					lineName = "";
-					lineCond = 0;
-					lineCondSB = 0;
-					lineCondNB = 0;
-				}
+				pageDigest.update(buf, 0, len);
+				parser.feed(buf, 0, len);
 			}
+			isComplete = (len == -1);
+			attempt.isComplete = isComplete;
 		} catch (SocketTimeoutException sockEx) {
 			/* This timed out unfortunately */
 			System.out.println("Connection Timed Out.");
+			attempt.isTimedOut = true;
 			eventIndexerNotif.onStatusUpdate("Connection Timed Out for "
 					+ lineViewUrl);
+		} catch (EOFException eofEx) {
+			/* Compressed page got cut off; keep what we have like a timeout */
+			System.out.println("Connection Closed Early.");
+			eventIndexerNotif.onStatusUpdate("Connection Closed Early for "
+					+ lineViewUrl);
 		} finally {
-			if (rd != null) {
-				rd.close();
+			if (isComplete) {
+				/* Hand the connection back for the next line view */
+				exchange.close();
+			} else {
+				exchange.abort();
+				exchange.close();
 			}
 		}
-		return STATUS_OK;
+
+		byte digest[] = pageDigest.digest();
+		if (isComplete && (cached != null) && cached.hasSameDigest(digest)) {
+			/*
+			 * Same content as last time even though the server did not say so;
+			 * keep the new validators and the locations parsed before
+			 */
+			System.out.println("[extractLineTrafficData] Unchanged: "
+					+ lineViewUrl);
+			lineViewCache.putEntry(lineViewUrl, new LineViewCache.Entry(
+					areaName, exchange.getHeaderField("ETag"), exchange
+							.getHeaderField("Last-Modified"), digest,
+					cached.locations));
+			attempt.isUnchanged = true;
+			locList.clear();
+			locList.addAll(cached.locations);
+			return locList;
+		}
+
+		/* Whatever we managed to download still counts */
+		parser.finish();
+
+		/* Only complete pages are worth remembering */
+		if (isComplete) {
+			lineViewCache.putEntry(lineViewUrl, new LineViewCache.Entry(
+					areaName, exchange.getHeaderField("ETag"), exchange
+							.getHeaderField("Last-Modified"), digest,
+					new ArrayList<MonitoredLocation>(locList)));
+		}
+		return locList;
 	}
 
 	/**
-	 * Saves collected traffic data to a Raw Traffic Data File. This outer
-	 * method handles exceptions resulting from the actual save operation in
-	 * SaveToFile(). </br> </br>The general format for this file is as follows:
-	 * </br><i>[Area], [Location], [Southbound Traffic], [Northbound
+	 * Creates the message digest used to tell if a line view page changed
+	 * 
+	 * @return a new MessageDigest instance
+	 * @throws IOException
+	 */
+	private MessageDigest createPageDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance(PAGE_DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("Digest algorithm unavailable: "
+					+ PAGE_DIGEST_ALGORITHM, e);
+		}
+	}
+
+	/**
+	 * Hands the collected traffic data over as a LineDataList and saves it to
+	 * a Raw Traffic Data File. The file is written on a separate thread so
+	 * that the data can be pushed right away without waiting for (or reading
+	 * back) the file. </br> </br>The general format for this file is as
+	 * follows: </br><i>[Area], [Location], [Southbound Traffic], [Northbound
 	 * Traffic]</i> </br>... </br> </br>*where 1=light traffic, 2=moderate
 	 * traffic, 3=heavy traffic
 	 * 
+	 * @param hasChanged
+	 *            - false if the traffic data is the same as what was last
+	 *            saved, in which case an existing file is left untouched
 	 * @return
 	 */
-	private int saveTrafficDataToFile() {
+	private int saveTrafficDataToFile(boolean hasChanged) {
 		System.out.println("saveTrafficDataToFile() called.");
 		eventIndexerNotif.onStatusUpdate("Saving Data to File...");
-		String timestamp = "";
-		String minuteSection = "";
-
-		timestamp = new SimpleDateFormat("yyyyMMdd_HH").format(Calendar
-				.getInstance().getTime());
-		int minute = (Calendar.getInstance(TimeZone.getTimeZone("GMT+8")).get(
-				Calendar.MINUTE) / 15) * 15;
-		minuteSection = Integer.toString(minute);
-
-		/* Save to file */
-		try {
-			saveToFile("mmda_traffic.txt", monitoredLocList);
-		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
 
 		String hourTime = new SimpleDateFormat("HH").format(Calendar
 				.getInstance(TimeZone.getTimeZone("GMT+8")).getTime());
 
-		eventIndexerNotif.onStatusUpdate("File Saved (" + timestamp
-				+ minuteSection + "_TrafficRec.txt).");
-		eventIndexerNotif.onTrafficDataFileSaved("mmda_traffic.txt",
-				(hourTime + "00"));
+		/* Let the data be pushed straight from memory */
+		eventIndexerNotif.onTrafficDataReady(
+				createLineDataList(monitoredLocList), (hourTime + "00"));
+
+		/* Save to file */
+		Thread saveThread = new Thread(new SaveTrafficDataTask(
+				new ArrayList<MonitoredLocation>(monitoredLocList), hasChanged,
+				(hourTime + "00")), "TrafficDataSave");
+		saveThread.start();
 
 		return STATUS_OK;
 	}
@@ -278,7 +549,8 @@ public class TrafficDataManager {
 
 		try {
 			fileWriter = Files.newBufferedWriter(saveFile,
-					Charset.forName("UTF-8"), StandardOpenOption.WRITE);
+					Charset.forName("UTF-8"), StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
 
 			Iterator<MonitoredLocation> iter = locList.iterator();
 
@@ -304,6 +576,369 @@ public class TrafficDataManager {
 	/*****************************************************************************************/
 	/** INTERNAL CLASSES **/
 	/*****************************************************************************************/
+	/**
+	 * Callable class for extracting the traffic data of a single line view.
+	 * </br>Each task keeps track of its own deadline and of the requests it
+	 * sent so that it can be aborted once the deadline has passed. A request
+	 * that fails or times out is retried with an exponential backoff for as
+	 * long as the deadline allows, and with hedging turned on, a slow request
+	 * gets a second one sent alongside it.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	class ExtractLineTrafficDataTask implements
+			Callable<ArrayList<MonitoredLocation>> {
+		private String lineViewUrl;
+		private String areaName;
+		private volatile long deadline;
+		private volatile boolean isUnchanged = false;
+		private volatile boolean isAborted = false;
+		private List<FetchAttempt> attempts = new ArrayList<FetchAttempt>();
+		private LineViewStats.AreaStats stats;
+
+		public ExtractLineTrafficDataTask(String lineViewUrl, String areaName) {
+			this.lineViewUrl = lineViewUrl;
+			this.areaName = areaName;
+			this.deadline = System.currentTimeMillis() + LINE_VIEW_DEADLINE;
+			this.stats = lineViewStats.getAreaStats(lineViewUrl);
+		}
+
+		@Override
+		public ArrayList<MonitoredLocation> call() throws Exception {
+			/* The deadline starts counting once the task actually runs */
+			deadline = System.currentTimeMillis() + LINE_VIEW_DEADLINE;
+
+			ArrayList<MonitoredLocation> bestResult = null;
+			IOException lastError = null;
+			long backoff = INITIAL_RETRY_BACKOFF;
+
+			for (int attemptCount = 1;; attemptCount++) {
+				FetchAttempt attempt = runAttempt();
+				if (attempt.isSuccessful()) {
+					isUnchanged = attempt.isUnchanged;
+					return attempt.result;
+				}
+
+				/* Keep the most we got out of a cut off page, just in case */
+				if ((attempt.result != null)
+						&& ((bestResult == null) || (attempt.result.size() > bestResult
+								.size()))) {
+					bestResult = attempt.result;
+				}
+				if (attempt.error != null) {
+					lastError = attempt.error;
+				}
+
+				/* Full jitter keeps the line views from retrying in lockstep */
+				long wait = (backoff / 2)
+						+ ThreadLocalRandom.current().nextLong((backoff / 2) + 1);
+				if (shouldStopReading || isAborted
+						|| (attemptCount >= MAX_FETCH_ATTEMPTS)
+						|| ((System.currentTimeMillis() + wait + MIN_ATTEMPT_TIME) > deadline)) {
+					break;
+				}
+
+				System.out.println("[ExtractLineTrafficDataTask] Retrying "
+						+ lineViewUrl + " in " + wait + " ms (attempt "
+						+ (attemptCount + 1) + ")");
+				eventIndexerNotif.onStatusUpdate("Retrying line view for "
+						+ lineViewUrl + "...");
+				stats.recordRetry();
+				Thread.sleep(wait);
+				backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF);
+			}
+
+			if (bestResult != null) {
+				/* Whatever we managed to download still gets used */
+				return bestResult;
+			}
+			if (lastError != null) {
+				throw lastError;
+			}
+			return new ArrayList<MonitoredLocation>();
+		}
+
+		public long getDeadline() {
+			return deadline;
+		}
+
+		public boolean isPastDeadline() {
+			return (System.currentTimeMillis() > deadline);
+		}
+
+		public boolean isUnchanged() {
+			return isUnchanged;
+		}
+
+		/**
+		 * Aborts this task by dropping the connections of all its requests.
+		 * Any read blocked on them will fail right away.
+		 */
+		public void abort() {
+			isAborted = true;
+			synchronized (attempts) {
+				for (int i = 0; i < attempts.size(); i++) {
+					attempts.get(i).abort();
+				}
+			}
+		}
+
+		/**
+		 * Sends a single request for this line view. With hedging turned on
+		 * and enough latencies known, a second request is sent once the first
+		 * one is slower than the hedge percentile; the first request to
+		 * download the page completely wins and the other is dropped.
+		 * 
+		 * @return the winning request, or the last one to fail
+		 * @throws InterruptedException
+		 */
+		private FetchAttempt runAttempt() throws InterruptedException {
+			FetchAttempt primary = newAttempt(false);
+			long hedgeDelay = getHedgeDelay();
+			if ((hedgeDelay < 0) || (attemptExecutor == null)) {
+				primary.run();
+				return primary;
+			}
+
+			CompletionService<FetchAttempt> completion = new ExecutorCompletionService<FetchAttempt>(
+					attemptExecutor);
+			completion.submit(primary, primary);
+			int pendingCount = 1;
+
+			Future<FetchAttempt> done = completion.poll(hedgeDelay,
+					TimeUnit.MILLISECONDS);
+			if ((done == null) && !isPastDeadline()) {
+				System.out.println("[ExtractLineTrafficDataTask] Hedging "
+						+ lineViewUrl + " after " + hedgeDelay + " ms");
+				stats.recordHedge();
+				FetchAttempt hedge = newAttempt(true);
+				completion.submit(hedge, hedge);
+				pendingCount++;
+			}
+
+			FetchAttempt lastDone = null;
+			try {
+				while (pendingCount > 0) {
+					if (done == null) {
+						done = completion.poll(Math.max(deadline
+								- System.currentTimeMillis(), 0),
+								TimeUnit.MILLISECONDS);
+						if (done == null) {
+							/* Out of time; all requests get dropped below */
+							break;
+						}
+					}
+					pendingCount--;
+
+					try {
+						lastDone = done.get();
+					} catch (ExecutionException e) {
+						/* FetchAttempt keeps its own errors; never happens */
+						e.printStackTrace();
+					}
+					done = null;
+
+					if (lastDone.isSuccessful()) {
+						if (lastDone.isHedge) {
+							stats.recordHedgeWin();
+						}
+						break;
+					}
+				}
+			} finally {
+				/* Drop whichever requests are still going */
+				synchronized (attempts) {
+					for (int i = 0; i < attempts.size(); i++) {
+						if (attempts.get(i) != lastDone) {
+							attempts.get(i).abort();
+						}
+					}
+				}
+			}
+
+			if (lastDone == null) {
+				/* Nothing came back before the deadline */
+				lastDone = new FetchAttempt(this, false);
+				lastDone.isTimedOut = true;
+			}
+			return lastDone;
+		}
+
+		/**
+		 * Creates a new request for this line view, which is aborted along
+		 * with the task
+		 */
+		private FetchAttempt newAttempt(boolean isHedge) {
+			FetchAttempt attempt = new FetchAttempt(this, isHedge);
+			synchronized (attempts) {
+				if (!isHedge) {
+					/* Requests from earlier tries are all done by now */
+					attempts.clear();
+				}
+				attempts.add(attempt);
+			}
+			return attempt;
+		}
+
+		/**
+		 * Gets how long to wait on a request before sending a hedged one
+		 * 
+		 * @return the delay in milliseconds or -1 if we should not hedge
+		 */
+		private long getHedgeDelay() {
+			if (!isHedgingEnabled
+					|| (stats.getLatencySampleCount() < MIN_HEDGE_SAMPLES)) {
+				return -1;
+			}
+			return Math.max(stats.getLatencyPercentile(hedgePercentile),
+					MIN_HEDGE_DELAY);
+		}
+	}
+
+	/**
+	 * Runnable class for a single request for a line view. </br>Holds the
+	 * outcome of the request and records it in the line view stats, unless
+	 * it was dropped in favour of another request.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	class FetchAttempt implements Runnable {
+		private ExtractLineTrafficDataTask task;
+		private boolean isHedge;
+		private volatile SharedHttpClient.Exchange exchange = null;
+		private volatile boolean isAborted = false;
+		private boolean isComplete = false;
+		private boolean isUnchanged = false;
+		private boolean isTimedOut = false;
+		private ArrayList<MonitoredLocation> result = null;
+		private IOException error = null;
+
+		public FetchAttempt(ExtractLineTrafficDataTask task, boolean isHedge) {
+			this.task = task;
+			this.isHedge = isHedge;
+		}
+
+		@Override
+		public void run() {
+			long startTime = System.currentTimeMillis();
+			try {
+				result = extractLineTrafficData(task.lineViewUrl,
+						task.areaName, this);
+			} catch (IOException e) {
+				if (!isAborted) {
+					System.out.println("[FetchAttempt] Failed to download "
+							+ task.lineViewUrl + ": " + e.getMessage());
+				}
+				error = e;
+			}
+
+			if (isAborted) {
+				/* Dropped on purpose; says nothing about the feed */
+				return;
+			}
+
+			if (isSuccessful()) {
+				task.stats.recordSuccess(System.currentTimeMillis()
+						- startTime);
+			} else if (isTimedOut) {
+				task.stats.recordTimeout();
+			} else {
+				task.stats.recordFailure();
+			}
+		}
+
+		public boolean isSuccessful() {
+			return (error == null) && isComplete;
+		}
+
+		public void setExchange(SharedHttpClient.Exchange exchange) {
+			this.exchange = exchange;
+			if (isAborted) {
+				exchange.abort();
+			}
+		}
+
+		public void abort() {
+			isAborted = true;
+			SharedHttpClient.Exchange ex = exchange;
+			if (ex != null) {
+				ex.abort();
+			}
+		}
+	}
+
+	/**
+	 * Runnable class for saving the Raw Traffic Data File in the background.
+	 * </br>Once done, the notifier is told about the saved file.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	class SaveTrafficDataTask implements Runnable {
+		private ArrayList<MonitoredLocation> locList;
+		private boolean hasChanged;
+		private String timestamp;
+
+		public SaveTrafficDataTask(ArrayList<MonitoredLocation> locList,
+				boolean hasChanged, String timestamp) {
+			this.locList = locList;
+			this.hasChanged = hasChanged;
+			this.timestamp = timestamp;
+		}
+
+		@Override
+		public void run() {
+			Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT+8"));
+			SimpleDateFormat fileTimestampFormat = new SimpleDateFormat(
+					"yyyyMMdd_HH");
+			fileTimestampFormat.setTimeZone(cal.getTimeZone());
+			String fileTimestamp = fileTimestampFormat.format(cal.getTime());
+			/*
+			 * Name by quarter hour (zero-padded) however often we poll, so
+			 * that names map onto the hourly slots of the DataFileManager
+			 */
+			int minute = (cal.get(Calendar.MINUTE) / 15) * 15;
+			String minuteSection = ((minute < 10) ? "0" : "")
+					+ Integer.toString(minute);
+
+			synchronized (saveFileLock) {
+				if (hasChanged || !Files.exists(Paths.get(TRAFFIC_DATA_FILE))) {
+					try {
+						saveToFile(TRAFFIC_DATA_FILE, locList);
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+
+			eventIndexerNotif.onStatusUpdate("File Saved (" + fileTimestamp
+					+ minuteSection + "_TrafficRec.txt).");
+			eventIndexerNotif.onTrafficDataFileSaved(TRAFFIC_DATA_FILE,
+					timestamp);
+		}
+	}
+
+	/**
+	 * Thread factory for line view downloads. Threads are marked as daemons so
+	 * that a line view stuck past its deadline can never keep the program
+	 * alive.
+	 * 
+	 * @author francis
+	 * 
+	 */
+	static class LineViewThreadFactory implements ThreadFactory {
+		private int threadCount = 0;
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "LineViewFetch-" + (threadCount++));
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
 	/**
 	 * <b>MonitoredLocation Object</b> </br>Represents locations which the MMDA
 	 * has Traffic Data for
@@ -311,7 +946,7 @@ public class TrafficDataManager {
 	 * @author francis
 	 * 
 	 */
-	public class MonitoredLocation {
+	public static class MonitoredLocation {
 		public String name = "";
 		public String area = "";
 		public int conditionSB = 0;
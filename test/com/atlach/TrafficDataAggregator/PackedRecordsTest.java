@@ -0,0 +1,187 @@
+package com.atlach.TrafficDataAggregator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.atlach.TrafficDataAggregator.DataObjects.HistData;
+import com.atlach.TrafficDataAggregator.DataObjects.HistDataFileInfo;
+import com.atlach.TrafficDataAggregator.DataObjects.LineDataList;
+import com.atlach.TrafficDataAggregator.DataObjects.LineInfo;
+
+/* 	Copyright (C) 2013	Francis T., Zara P.
+ * 
+ * 	This file is a part of the MMDA Traffic Data Indexer and Aggregator Program
+ * 
+ * 	This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ * 
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ * 
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * <b>PackedRecordsTest Class</b> </br>Checks that turning packed records off
+ * brings a Hist Data File back to text. A file is written with packing on and
+ * then updated with packing off, changing only one of its tags. The result
+ * must be identical to the same two saves done with packing off throughout,
+ * for both plain and DEFLATER compressed files. </br></br>Run with the
+ * compiled classes on the classpath; the exit status is 0 on success.
+ * 
+ * @author francis
+ * 
+ */
+public class PackedRecordsTest {
+	private static final String KEPT_TAG = "Weekday|Monday";
+	private static final String CHANGED_TAG = "Weekend|Sunday";
+	private static final long SEED = 20131001L;
+
+	/**
+	 * Runs the test
+	 * 
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int failures = 0;
+
+		try {
+			File dir = Files.createTempDirectory("mmda-packed").toFile();
+			failures += runCase(dir, false);
+			failures += runCase(dir, true);
+		} catch (IOException e) {
+			e.printStackTrace();
+			failures++;
+		}
+
+		if (failures > 0) {
+			System.out.println("[PackedRecordsTest] FAILED (" + failures
+					+ ")");
+			System.exit(1);
+		}
+		System.out.println("[PackedRecordsTest] PASSED");
+	}
+
+	/*****************************************************************************************/
+	/** PRIVATE METHODS **/
+	/*****************************************************************************************/
+	/**
+	 * Writes a Hist Data File packed and then updates it with packing off,
+	 * and compares it against the same file written as text throughout
+	 * 
+	 * @return the number of failed checks
+	 */
+	private static int runCase(File dir, boolean shouldCompress)
+			throws IOException {
+		String caseName = shouldCompress ? "compressed" : "plain";
+		File packedFile = new File(dir, "packed-" + caseName + ".hist");
+		File textFile = new File(dir, "text-" + caseName + ".hist");
+		int failures = 0;
+
+		Random random = new Random(SEED);
+		List<HistData> initialList = new ArrayList<HistData>();
+		initialList.add(createHistData(KEPT_TAG, random));
+		initialList.add(createHistData(CHANGED_TAG, random));
+		List<HistData> changedList = new ArrayList<HistData>();
+		changedList.add(createHistData(CHANGED_TAG, random));
+
+		HistDataFileInfo fileInfo = new HistDataFileInfo("20131001-20131006",
+				Arrays.asList(KEPT_TAG, CHANGED_TAG));
+
+		FileSystemInterface fsi = new FileSystemInterface();
+		fsi.setPackedRecords(true);
+		fsi.saveHistDataFile(packedFile.getPath(), fileInfo, initialList,
+				shouldCompress);
+		if (!hasPackedRecords(fsi, packedFile, shouldCompress)) {
+			System.out.println("[" + caseName
+					+ "] No packed records were written to start with");
+			failures++;
+		}
+		fsi.setPackedRecords(false);
+		fsi.saveHistDataFile(packedFile.getPath(), fileInfo, changedList,
+				shouldCompress);
+
+		FileSystemInterface textFsi = new FileSystemInterface();
+		textFsi.setPackedRecords(false);
+		textFsi.saveHistDataFile(textFile.getPath(), fileInfo, initialList,
+				shouldCompress);
+		textFsi.saveHistDataFile(textFile.getPath(), fileInfo, changedList,
+				shouldCompress);
+
+		if (hasPackedRecords(fsi, packedFile, shouldCompress)) {
+			System.out.println("[" + caseName
+					+ "] Packed records left after packing was turned off");
+			failures++;
+		}
+
+		if (!Arrays.equals(Files.readAllBytes(packedFile.toPath()),
+				Files.readAllBytes(textFile.toPath()))) {
+			System.out.println("[" + caseName
+					+ "] File differs from one written as text throughout");
+			failures++;
+		}
+
+		System.out.println("[" + caseName + "] "
+				+ ((failures == 0) ? "OK" : "FAILED"));
+		return failures;
+	}
+
+	/**
+	 * Creates a HistData object for a tag with a record for every hour. Some
+	 * locations are left without data so that packing has zero runs to work
+	 * with.
+	 */
+	private static HistData createHistData(String tagStr, Random random) {
+		HistData hd = new HistData(HistData.UNKNOWN_DATE, tagStr);
+		int locCount = LineDataCodec.LINE_DATA_LENGTH / 2;
+
+		for (int hour = 0; hour < HistData.HOUR_SLOTS; hour++) {
+			LineDataList dataList = new LineDataList();
+			for (int i = 0; i < locCount; i++) {
+				if (random.nextInt(4) == 0) {
+					dataList.add((byte) 0, (byte) 0);
+				} else {
+					dataList.add((byte) (1 + random.nextInt(3)),
+							(byte) (1 + random.nextInt(3)));
+				}
+			}
+
+			String lineDataStr = LineDataCodec.compressString(LineDataCodec
+					.createLineDataString(dataList));
+			hd.putLineInfo(new LineInfo(hour * 60, lineDataStr));
+		}
+		return hd;
+	}
+
+	/**
+	 * Checks whether any record of a Hist Data File is packed
+	 */
+	private static boolean hasPackedRecords(FileSystemInterface fsi,
+			File histDataFile, boolean isCompressed) throws IOException {
+		List<HistData> histDataList = new ArrayList<HistData>();
+		fsi.loadHistDataFile(histDataFile.getPath(), histDataList,
+				isCompressed);
+
+		for (int i = 0; i < histDataList.size(); i++) {
+			List<LineInfo> lineInfoList = histDataList.get(i).getDataList();
+			for (int j = 0; j < lineInfoList.size(); j++) {
+				String lineDataStr = lineInfoList.get(j).lineDataStr;
+				if (lineDataStr.startsWith(String
+						.valueOf(LineDataCodec.PACKED_MARKER))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}